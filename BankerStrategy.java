@@ -0,0 +1,86 @@
+import java.util.Arrays;
+/**
+ * decides the banker's offer at the end of each round from the values still
+ * in play. strategies are called in the simulation's inner loop, so they
+ * must not allocate or box, and should be small enough for the JIT to
+ * inline at a call site that only ever sees one of them
+ */
+@FunctionalInterface
+public interface BankerStrategy {
+
+  /**
+   * calculates the offer
+   * @param remaining the values still in play, including the player's box
+   * @param round the round that just ended
+   * @return the offer
+   */
+  double offer(RemainingValues remaining, int round);
+  
+  /**
+   * the standard banker, offering a share of the average remaining value
+   * that grows with each round
+   * @param multiplier the share of the average offered per round number
+   * @return the strategy
+   */
+  static BankerStrategy averageShare(double multiplier) {
+    return (remaining, round) -> remaining.averageValueOfUnopenedBoxes() * round * multiplier;
+  }
+  
+  /**
+   * a risk-averse banker, who prices the board at its mean minus a penalty
+   * for its spread, a mean-variance certainty equivalent, and offers a
+   * share of that growing with each round
+   * @param multiplier the share offered per round number
+   * @param riskAversion the penalty per unit of variance, in 1/dollars;
+   *        half of it times the variance is taken off the mean
+   * @return the strategy
+   */
+  static BankerStrategy riskAverse(double multiplier, double riskAversion) {
+    double penalty = riskAversion / 2;
+    return (remaining, round) -> {
+      double certain = remaining.averageValueOfUnopenedBoxes() - penalty * remaining.varianceOfUnopenedBoxes();
+      return Math.max(0, certain) * round * multiplier;
+    };
+  }
+  
+  /**
+   * a banker who offers a fixed share of the average in each round
+   * @param shares the share of the average offered, indexed by round
+   *        number; rounds past the end use the last share
+   * @return the strategy
+   */
+  static BankerStrategy perRound(double[] shares) {
+    double[] table = shares.clone();
+    int last = table.length - 1;
+    return (remaining, round) -> remaining.averageValueOfUnopenedBoxes() * table[Math.min(round, last)];
+  }
+  
+  /**
+   * reads a strategy from its description: average[:multiplier],
+   * risk:multiplier:riskAversion or table:share1,share2,... with the
+   * shares starting at round 1
+   * @param spec the description
+   * @param multiplier the share per round used when none is given
+   * @return the strategy
+   * @throws IllegalArgumentException if the description is not understood
+   */
+  static BankerStrategy parse(String spec, double multiplier) {
+    String[] parts = spec.trim().split(":");
+    try {
+      switch (parts[0].toLowerCase()) {
+        case "average":
+          return averageShare(parts.length > 1 ? Double.parseDouble(parts[1]) : multiplier);
+        case "risk":
+          return riskAverse(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+        case "table":
+          double[] shares = Arrays.stream(("0," + parts[1]).split(",")).mapToDouble(s -> Double.parseDouble(s.trim())).toArray();
+          return perRound(shares);
+        default:
+          throw new IllegalArgumentException("Unknown banker " + parts[0]);
+      }
+    }
+    catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Malformed banker " + spec, e);
+    }
+  }
+}
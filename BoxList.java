@@ -1,33 +1,213 @@
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 import java.io.*;
+import java.nio.ByteBuffer;
 /**
- * creates an array of box objects
+ * holds the briefcases of a game as a flat array of values, with the open
+ * state of every box packed into a bitmask. every query about the unopened
+ * boxes is O(1) or O(log n), so boards of any size stay fast
  * @author Carl Cutler
  */
-public class BoxList {
+public class BoxList implements RemainingValues {
 
-  /** array of box objects */
-  private Box[] boxes;
+  /** This is the number of bitmask words above which closed boxes are also counted per word in a tree */
+  private static final int INDEXED_WORDS = 8;
+
+  /** the monetary value held in each box */
+  private double[] values;
+  
+  /** one bit per box, set when the box has been opened */
+  private long[] openMask;
+  
+  /** the position of each box's value in sortedValues */
+  private int[] ranks;
+  
+  /** every value in the list in ascending order */
+  private double[] sortedValues;
+  
+  /** fenwick tree over sortedValues counting the unopened boxes at each rank */
+  private int[] rankTree;
+  
+  /** fenwick tree counting the unopened boxes in each bitmask word, or null on small boards */
+  private int[] wordTree;
+  
+  /** running count, sum and sum of squares of the unopened values */
+  private int unopenedCount;
+  private double unopenedSum, unopenedSumOfSquares;
+  
+  /** the rounding error of the running sums, so removing many values does not drift */
+  private double sumError, sumOfSquaresError;
+  
+  /** whether values, ranks and sortedValues are shared with a fork, so must be copied before they change */
+  private boolean sharedLayout;
+  
+  /** scratch space for offersIfOpened's subset sums, created on first use and never shared with a fork */
+  private double[] subsetSums;
 
   /**
    * constructor for the array of briefcases
    * @param monetaryAmounts a constant array of given monetary values
    */
   public BoxList(double[] monetaryAmounts) {
-    boxes = new Box[monetaryAmounts.length];
-    for (int i = 0; i < boxes.length; ++i) {
-      Box box = new Box(monetaryAmounts[i]);
-      boxes[i] = box;
+    values = monetaryAmounts.clone();
+    openMask = new long[(values.length + 63) >>> 6];
+    ranks = new int[values.length];
+    sortedValues = new double[values.length];
+    rankTree = new int[values.length + 1];
+    if (openMask.length > INDEXED_WORDS)
+      wordTree = new int[openMask.length + 1];
+    
+    System.arraycopy(values, 0, sortedValues, 0, values.length);
+    Arrays.sort(sortedValues);
+    // equal values take consecutive ranks in box order
+    int[] taken = new int[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      int first = lowerBound(values[i]);
+      ranks[i] = first + taken[first]++;
+    }
+    reset();
+  }
+  
+  /**
+   * creates a list sharing another's values and copying its open state
+   * @param other the list to copy
+   */
+  private BoxList(BoxList other) {
+    openMask = new long[other.openMask.length];
+    rankTree = new int[other.rankTree.length];
+    if (other.wordTree != null)
+      wordTree = new int[other.wordTree.length];
+    copyFrom(other);
+  }
+  
+  /**
+   * creates an independent copy of this list. the values are shared until
+   * either list is shuffled or read into, so only the open state is copied
+   * @return the copy
+   */
+  public BoxList fork() {
+    return new BoxList(this);
+  }
+  
+  /**
+   * makes this list a copy of another of the same size without allocating,
+   * sharing its values as fork does
+   * @param other the list to copy
+   * @throws IllegalArgumentException if the lists differ in size
+   */
+  public void copyFrom(BoxList other) {
+    if (other.rankTree.length != rankTree.length)
+      throw new IllegalArgumentException("Cannot copy a list of " + other.size() + " boxes into one of " + (rankTree.length - 1));
+    other.sharedLayout = true;
+    sharedLayout = true;
+    values = other.values;
+    ranks = other.ranks;
+    sortedValues = other.sortedValues;
+    
+    System.arraycopy(other.openMask, 0, openMask, 0, openMask.length);
+    System.arraycopy(other.rankTree, 0, rankTree, 0, rankTree.length);
+    if (wordTree != null)
+      System.arraycopy(other.wordTree, 0, wordTree, 0, wordTree.length);
+    unopenedCount = other.unopenedCount;
+    unopenedSum = other.unopenedSum;
+    unopenedSumOfSquares = other.unopenedSumOfSquares;
+    sumError = other.sumError;
+    sumOfSquaresError = other.sumOfSquaresError;
+  }
+  
+  /** copies the values and ranks if they are shared, before they are changed */
+  private void ownLayout() {
+    if (sharedLayout) {
+      values = values.clone();
+      ranks = ranks.clone();
+      sharedLayout = false;
     }
   }
   
+  /**
+   * finds the first rank whose value is not less than a given amount
+   * @param amount the amount
+   * @return the rank, or size() if every value is less
+   */
+  private int lowerBound(double amount) {
+    int lo = 0, hi = sortedValues.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sortedValues[mid] < amount)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+  
+  /** closes every box again, keeping the current order of values */
+  public void reset() {
+    Arrays.fill(openMask, 0);
+    Arrays.fill(rankTree, 0);
+    for (int i = 1; i < rankTree.length; ++i) {
+      // each rank starts with a count of one, so build the tree in linear time
+      rankTree[i] += 1;
+      int parent = i + (i & -i);
+      if (parent < rankTree.length)
+        rankTree[parent] += rankTree[i];
+    }
+    
+    if (wordTree != null) {
+      Arrays.fill(wordTree, 0);
+      for (int i = 1; i < wordTree.length; ++i) {
+        wordTree[i] += Math.min(64, values.length - ((i - 1) << 6));
+        int parent = i + (i & -i);
+        if (parent < wordTree.length)
+          wordTree[parent] += wordTree[i];
+      }
+    }
+    
+    unopenedCount = values.length;
+    unopenedSum = 0;
+    unopenedSumOfSquares = 0;
+    sumError = 0;
+    sumOfSquaresError = 0;
+    for (int i = 0; i < values.length; ++i)
+      addToSums(values[i], 1);
+  }
+  
+  /**
+   * adds a value to the running sums with Neumaier compensation, which
+   * keeps the rounding error of every addition
+   * @param box the value of the box
+   * @param sign 1 to add the box, -1 to remove it
+   */
+  private void addToSums(double box, double sign) {
+    double value = sign * box;
+    double square = sign * box * box;
+    
+    double sum = unopenedSum + value;
+    sumError += Math.abs(unopenedSum) >= Math.abs(value) ? (unopenedSum - sum) + value : (value - sum) + unopenedSum;
+    unopenedSum = sum;
+    
+    sum = unopenedSumOfSquares + square;
+    sumOfSquaresError += Math.abs(unopenedSumOfSquares) >= Math.abs(square)
+      ? (unopenedSumOfSquares - sum) + square : (square - sum) + unopenedSumOfSquares;
+    unopenedSumOfSquares = sum;
+  }
+  
+  /**
+   * gets the number of boxes in the list
+   * @return number of boxes
+   */
+  public int size() {
+    return values.length;
+  }
+  
   /**
    * getter method for the value of a box of a given index
    * @param index the position in the boxes array
    * @return the value
    */
   public double getValue(int index) {
-    return boxes[index].getValue();
+    return values[index];
   }
   
   /**
@@ -36,7 +216,7 @@ public class BoxList {
    * @return whethee the box is open
    */
   public boolean isOpen(int index) {
-    return boxes[index].isOpen();
+    return (openMask[index >>> 6] & (1L << index)) != 0;
   }
   
   /**
@@ -44,7 +224,152 @@ public class BoxList {
    * @param index
    */
   public void open(int index) {
-    boxes[index].open();
+    long bit = 1L << index;
+    if ((openMask[index >>> 6] & bit) != 0)
+      return;
+    openMask[index >>> 6] |= bit;
+    
+    if (--unopenedCount == 0) {
+      unopenedSum = 0;
+      unopenedSumOfSquares = 0;
+      sumError = 0;
+      sumOfSquaresError = 0;
+    }
+    else {
+      addToSums(values[index], -1);
+    }
+    for (int i = ranks[index] + 1; i < rankTree.length; i += i & -i)
+      --rankTree[i];
+    if (wordTree != null) {
+      for (int i = (index >>> 6) + 1; i < wordTree.length; i += i & -i)
+        --wordTree[i];
+    }
+  }
+  
+  /**
+   * closes an opened box again, undoing open
+   * @param index
+   */
+  public void close(int index) {
+    long bit = 1L << index;
+    if ((openMask[index >>> 6] & bit) == 0)
+      return;
+    openMask[index >>> 6] &= ~bit;
+    
+    ++unopenedCount;
+    addToSums(values[index], 1);
+    for (int i = ranks[index] + 1; i < rankTree.length; i += i & -i)
+      ++rankTree[i];
+    if (wordTree != null) {
+      for (int i = (index >>> 6) + 1; i < wordTree.length; i += i & -i)
+        ++wordTree[i];
+    }
+  }
+  
+  /**
+   * finds the first unopened box at or after a given index
+   * @param fromIndex the index to start searching from
+   * @return index of the next unopened box, or -1 if there is none
+   */
+  public int nextUnopened(int fromIndex) {
+    if (fromIndex >= values.length)
+      return -1;
+    int word = fromIndex >>> 6;
+    long closed = ~openMask[word] & (-1L << fromIndex);
+    
+    if (wordTree != null && closed == 0) {
+      // count the closed boxes up to the end of this word and take the next one
+      int before = 0;
+      for (int i = word + 1; i > 0; i -= i & -i)
+        before += wordTree[i];
+      return before < unopenedCount ? unopenedIndexAt(before) : -1;
+    }
+    
+    while (true) {
+      if (closed != 0) {
+        int index = (word << 6) + Long.numberOfTrailingZeros(closed);
+        return index < values.length ? index : -1;
+      }
+      if (++word == openMask.length)
+        return -1;
+      closed = ~openMask[word];
+    }
+  }
+  
+  /**
+   * finds the index of the k-th unopened box in ascending index order
+   * @param k position among the unopened boxes, starting at 0
+   * @return index of that box
+   */
+  public int unopenedIndexAt(int k) {
+    if (k < 0 || k >= unopenedCount)
+      throw new IllegalArgumentException("k must be between 0 and " + (unopenedCount - 1));
+    
+    if (wordTree != null) {
+      // descend the tree to the word holding the box, then count within it
+      int word = 0;
+      for (int step = Integer.highestOneBit(openMask.length); step > 0; step >>= 1) {
+        if (word + step < wordTree.length && wordTree[word + step] <= k) {
+          word += step;
+          k -= wordTree[word];
+        }
+      }
+      long closed = ~openMask[word];
+      for (; k > 0; --k)
+        closed &= closed - 1;
+      return (word << 6) + Long.numberOfTrailingZeros(closed);
+    }
+    
+    for (int word = 0; ; ++word) {
+      long closed = ~openMask[word];
+      if (word == openMask.length - 1 && (values.length & 63) != 0)
+        closed &= (1L << values.length) - 1;
+      int inWord = Long.bitCount(closed);
+      if (k < inWord) {
+        for (; k > 0; --k)
+          closed &= closed - 1;
+        return (word << 6) + Long.numberOfTrailingZeros(closed);
+      }
+      k -= inWord;
+    }
+  }
+  
+  /**
+   * iterates over the indices of the unopened boxes in ascending order
+   * @return iterator of unopened indices
+   */
+  public PrimitiveIterator.OfInt unopenedIndices() {
+    return new PrimitiveIterator.OfInt() {
+      private int next = nextUnopened(0);
+      
+      public boolean hasNext() {
+        return next >= 0;
+      }
+      
+      public int nextInt() {
+        if (next < 0)
+          throw new NoSuchElementException();
+        int index = next;
+        next = nextUnopened(index + 1);
+        return index;
+      }
+    };
+  }
+  
+  /**
+   * gets the number of boxes that are still closed
+   * @return unopened count
+   */
+  public int countOfUnopenedBoxes() {
+    return unopenedCount;
+  }
+  
+  /**
+   * gets the total value of all currently unopened boxes
+   * @return sum of unopened values
+   */
+  public double sumOfUnopenedBoxes() {
+    return unopenedSum + sumError;
   }
   
   /**
@@ -52,33 +377,240 @@ public class BoxList {
    * @return average
    */
   public double averageValueOfUnopenedBoxes() {
-    int c = 0;
-    double average = 0;
+    return (unopenedSum + sumError) / unopenedCount;
+  }
+  
+  /**
+   * calculates the population variance of the values of all unopened boxes
+   * @return variance
+   */
+  public double varianceOfUnopenedBoxes() {
+    double mean = (unopenedSum + sumError) / unopenedCount;
+    return Math.max(0, (unopenedSumOfSquares + sumOfSquaresError) / unopenedCount - mean * mean);
+  }
+  
+  /**
+   * finds the k-th smallest value among the unopened boxes
+   * @param k position in ascending order, starting at 1
+   * @return the value
+   */
+  public double kthSmallestUnopenedValue(int k) {
+    if (k < 1 || k > unopenedCount)
+      throw new IllegalArgumentException("k must be between 1 and " + unopenedCount);
     
-    for (int i = 0; i < boxes.length; ++i) {
-      if (boxes[i].isOpen() == false) {
-        average += boxes[i].getValue();
-        ++c;
+    int pos = 0;
+    for (int step = Integer.highestOneBit(values.length); step > 0; step >>= 1) {
+      if (pos + step < rankTree.length && rankTree[pos + step] < k) {
+        pos += step;
+        k -= rankTree[pos];
       }
     }
+    return sortedValues[pos];
+  }
+  
+  /**
+   * gets the smallest value still in play
+   * @return minimum unopened value
+   */
+  public double minUnopenedValue() {
+    return kthSmallestUnopenedValue(1);
+  }
+  
+  /**
+   * gets the largest value still in play
+   * @return maximum unopened value
+   */
+  public double maxUnopenedValue() {
+    return kthSmallestUnopenedValue(unopenedCount);
+  }
+  
+  /**
+   * gets the median of the unopened values, averaging the middle two
+   * when an even number of boxes remain
+   * @return median unopened value
+   */
+  public double medianUnopenedValue() {
+    double lower = kthSmallestUnopenedValue((unopenedCount + 1) / 2);
+    if (unopenedCount % 2 == 1)
+      return lower;
+    return (lower + kthSmallestUnopenedValue(unopenedCount / 2 + 1)) / 2;
+  }
+  
+  /**
+   * counts the unopened boxes holding more than a given amount
+   * @param amount the threshold
+   * @return number of unopened boxes with a value above amount
+   */
+  public int countOfUnopenedAbove(double amount) {
+    // first rank whose value is greater than amount
+    int lo = 0, hi = sortedValues.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sortedValues[mid] <= amount)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
     
-    return average / c;
+    int atOrBelow = 0;
+    for (int i = lo; i > 0; i -= i & -i)
+      atOrBelow += rankTree[i];
+    return unopenedCount - atOrBelow;
   }
   
   /**
-   * shuffles the boxes array
-   * @param numberOfSwaps
+   * shuffles the boxes array by swapping randomly chosen pairs of boxes,
+   * using the calling thread's random generator. shuffle(RandomGenerator)
+   * gives every ordering the same chance in a single pass
+   * @param numberOfSwaps the number of pairs swapped
    */
   public void shuffle(int numberOfSwaps) {
-    Random rand = new Random();
+    RandomGenerator rand = ThreadLocalRandom.current();
+    ownLayout();
+    for (int i = 0; i < numberOfSwaps; ++i)
+      swap(rand.nextInt(values.length), rand.nextInt(values.length));
+  }
+  
+  /**
+   * shuffles the boxes array with a Fisher-Yates pass, so every ordering
+   * is equally likely and the same generator state gives the same board
+   * @param rand the source of randomness
+   */
+  public void shuffle(RandomGenerator rand) {
+    ownLayout();
+    for (int i = values.length - 1; i > 0; --i)
+      swap(i, rand.nextInt(i + 1));
+  }
+  
+  /**
+   * swaps the values of two boxes
+   * @param i one box
+   * @param j the other box
+   */
+  private void swap(int i, int j) {
+    double temp = values[i];
+    values[i]   = values[j];
+    values[j]   = temp;
     
-    for (int i = 0; i < numberOfSwaps; ++i) {
-      int first = rand.nextInt(boxes.length - 1);
-      int second = rand.nextInt(boxes.length - 1);      
-      
-      Box temp      = boxes[first];
-      boxes[first]  = boxes[second];
-      boxes[second] = temp;
+    int tempRank = ranks[i];
+    ranks[i]     = ranks[j];
+    ranks[j]     = tempRank;
+  }
+  
+  /**
+   * gets the position of a box's value among all the values in ascending order
+   * @param index the position in the boxes array
+   * @return the rank of the value
+   */
+  public int getRank(int index) {
+    return ranks[index];
+  }
+  
+  /**
+   * gets the ranks of the values still in play as a bitmask, for lists of
+   * at most 64 boxes
+   * @return mask with bit r set while the value of rank r is unopened
+   */
+  public long unopenedRankMask() {
+    long mask = 0;
+    for (int i = nextUnopened(0); i >= 0; i = nextUnopened(i + 1))
+      mask |= 1L << ranks[i];
+    return mask;
+  }
+  
+  /**
+   * recomputes the count, sum and sum of squares of the unopened values
+   * from the open mask in one pass, rather than reading the running totals
+   * @param sums receives the totals at MaskedSums.COUNT, MaskedSums.SUM and
+   *        MaskedSums.SUM_OF_SQUARES
+   */
+  public void scanUnopened(double[] sums) {
+    MaskedSums.closedSums(values, openMask, sums);
+  }
+  
+  /**
+   * prices many candidate sets of boxes to open next in one pass, for lists
+   * of at most 64 boxes
+   * @param candidates bit i of each set while the candidate opens box i;
+   *        boxes already open are ignored
+   * @param variant the rules the offers are made by
+   * @param round the round the offers are made in
+   * @param offers receives the offer each candidate would bring, or 0 for
+   *        one that opens every box
+   */
+  public void offersIfOpened(long[] candidates, GameVariant variant, int round, double[] offers) {
+    if (values.length > 64)
+      throw new IllegalStateException("Candidate masks only cover lists of at most 64 boxes");
+    long closed = ~openMask[0] & (-1L >>> (64 - values.length));
+    if (subsetSums == null)
+      subsetSums = new double[MaskedSums.subsetTableSize(values.length)];
+    MaskedSums.offers(values, closed, candidates, variant.calculateOffer(1, round), offers, subsetSums);
+  }
+  
+  /**
+   * gets the number of bytes writeTo uses for this list
+   * @return snapshot size in bytes
+   */
+  public int snapshotSize() {
+    return values.length * rankWidth() + openMask.length * Long.BYTES;
+  }
+  
+  /** @return bytes used for each rank in a snapshot */
+  private int rankWidth() {
+    return values.length <= 256 ? 1 : Integer.BYTES;
+  }
+  
+  /**
+   * writes the order of the values and the open boxes into a buffer,
+   * as one rank per box followed by the open bitmask
+   * @param buffer the buffer, advanced by snapshotSize bytes
+   */
+  public void writeTo(ByteBuffer buffer) {
+    boolean bytes = rankWidth() == 1;
+    for (int i = 0; i < ranks.length; ++i) {
+      if (bytes)
+        buffer.put((byte) ranks[i]);
+      else
+        buffer.putInt(ranks[i]);
+    }
+    for (int w = 0; w < openMask.length; ++w)
+      buffer.putLong(openMask[w]);
+  }
+  
+  /**
+   * replaces the order of the values and the open boxes with ones written
+   * by writeTo for a list of the same values
+   * @param buffer the buffer, advanced by snapshotSize bytes
+   * @throws IOException if the ranks are not a permutation of this list's or
+   *         a box past the end is open; the list is left unchanged
+   */
+  public void readFrom(ByteBuffer buffer) throws IOException {
+    boolean bytes = rankWidth() == 1;
+    if (buffer.remaining() < snapshotSize())
+      throw new IOException("Snapshot needs " + snapshotSize() + " bytes but has " + buffer.remaining());
+    int start = buffer.position();
+    long[] seen = new long[openMask.length];
+    for (int i = 0; i < ranks.length; ++i) {
+      int rank = bytes ? buffer.get(start + i) & 0xff : buffer.getInt(start + i * Integer.BYTES);
+      if (rank < 0 || rank >= ranks.length || (seen[rank >>> 6] & 1L << rank) != 0)
+        throw new IOException("Snapshot rank " + rank + " of box " + i + " is out of range or repeated");
+      seen[rank >>> 6] |= 1L << rank;
+    }
+    int spare = (openMask.length << 6) - values.length;
+    long last = buffer.getLong(start + ranks.length * rankWidth() + (openMask.length - 1) * Long.BYTES);
+    if (spare > 0 && last >>> (64 - spare) != 0)
+      throw new IOException("Snapshot opens a box past the last of " + values.length);
+    
+    ownLayout();
+    for (int i = 0; i < ranks.length; ++i) {
+      ranks[i] = bytes ? buffer.get() & 0xff : buffer.getInt();
+      values[i] = sortedValues[ranks[i]];
+    }
+    
+    reset();
+    for (int w = 0; w < openMask.length; ++w) {
+      for (long open = buffer.getLong(); open != 0; open &= open - 1)
+        open((w << 6) + Long.numberOfTrailingZeros(open));
     }
   }
   
@@ -89,8 +621,8 @@ public class BoxList {
   public String toString() {
       StringBuilder sb = new StringBuilder();
       
-      for (int i = 0; i < boxes.length; ++i) 
-        sb.append(boxes[i].toString() + "\n");
+      for (int i = 0; i < values.length; ++i) 
+        sb.append("Open: ").append(isOpen(i)).append(" Value: ").append(values[i]).append("\n");
         
       return sb.toString();
   }
@@ -1,12 +1,20 @@
 import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+import java.util.stream.Stream;
 import java.io.*;
+import java.nio.ByteBuffer;
 /**
  * provides methods for the functioning of the game
  * @author Carl Cutler
  */
 public class DealGame {
 
-  /** This is the number of boxes in the game */
+  /** This is the number of boxes in the standard game */
   public static final int NUM_BOXES = 26;
   
   /** These are the values that will be used in the game */
@@ -18,12 +26,40 @@ public class DealGame {
   /** This is the number of rounds in the game */
   public static final int NUM_ROUNDS = 10;
   
-  /** This is the number of times boxes are swapped during the set up */
-  private static final int BOX_SWAPS = 500;
+  /** This is the splittable generator algorithm used to hand out independent boards */
+  public static final String SPLITTABLE_ALGORITHM = "L64X128MixRandom";
+  
+  /** the factory for SPLITTABLE_ALGORITHM, looked up once since the lookup scans the service loader */
+  private static final RandomGeneratorFactory<RandomGenerator> SPLITTABLE_FACTORY =
+    RandomGeneratorFactory.of(SPLITTABLE_ALGORITHM);
   
   /** This is the name of the file that contains the high score */
   public static final String HIGH_SCORE_FILE = "highscore.txt";
   
+  /** This is the name of the directory games played in the GUI are journaled to */
+  public static final String JOURNAL_DIRECTORY = "journal";
+  
+  /** This is the name of the memory-mapped leaderboard of the best scores */
+  public static final String LEADERBOARD_FILE = "leaderboard.dat";
+  
+  /** This is the name of the memory-mapped record of the high score */
+  public static final String HIGH_SCORE_RECORD_FILE = "highscore.dat";
+  
+  /** This is the most events buffered for each subscriber before it is behind */
+  public static final int EVENT_BUFFER_SIZE = Flow.defaultBufferSize();
+  
+  /** This is how long the game waits for a subscriber that is behind to make room before cutting it off */
+  public static final long EVENT_OFFER_TIMEOUT_MILLIS = 100;
+  
+  /** the rules this game is played by */
+  private GameVariant variant;
+  
+  /** decides the offer at the end of each round */
+  private BankerStrategy banker;
+  
+  /** the id this game is recorded under on the leaderboard */
+  private long gameId;
+  
   /** whether or not the player has chosen a box */
   private boolean chosenBox;
   
@@ -36,37 +72,375 @@ public class DealGame {
   /** the number of boxes open in the current round, the number of boxes opened in all rounds */
   private int openInRound, totalOpen;
   
-  /** the highscore of all games played */
-  private double highScore;
+  /** where the highscore of all games played is kept */
+  private HighScoreStore highScores;
+  
+  /** the journal this game's moves are recorded in, or null */
+  private GameJournal journal;
+  
+  /** publishes this game's events, or null until something asks for them */
+  private SubmissionPublisher<GameEvent> events;
+  
+  /** the events not delivered to a subscriber that fell behind */
+  private long droppedEvents;
+  
+  /** this game's instance of the BoxList class, passed the variant's values */
+  private BoxList list;
   
-  /** instance of the BoxList class, passed BOX_VALUES */
-  private static BoxList list;
+  /** the boxes opened by apply, most recent last, as index << 1 with the low bit set if the box began a round */
+  private int[] moves;
+  
+  /** the number of moves that can be undone */
+  private int moveCount;
   
   public static void main(String[] args) {
     // tests
-    list = new BoxList(BOX_VALUES);
-    System.out.println(list);
+    System.out.println(new BoxList(BOX_VALUES));
   }
   
   /**
    * constructs the beginning of the game
-   * @param testing whether the current game is a test
+   * @param testing whether the current game is a test, which also reads
+   *        and writes the high score file directly on every call
    */
   public DealGame(boolean testing) {
-    Scanner input;
-    list = new BoxList(BOX_VALUES);
+    this(testing ? null : ThreadLocalRandom.current(),
+         testing ? new FileHighScoreStore(HIGH_SCORE_FILE) : HighScoreStore.shared());
+  }
+  
+  /**
+   * constructs a game whose board is shuffled from a fixed seed, so the
+   * same seed always deals the same board
+   * @param seed the seed for the shuffle
+   */
+  public DealGame(long seed) {
+    this(seed, HighScoreStore.shared());
+  }
+  
+  /**
+   * constructs a game whose board is shuffled from a fixed seed, recording
+   * its score in a store of its own
+   * @param seed the seed for the shuffle
+   * @param highScores where the high score is read from and recorded
+   */
+  public DealGame(long seed, HighScoreStore highScores) {
+    this(SPLITTABLE_FACTORY.create(seed), highScores);
+  }
+  
+  /**
+   * constructs a game whose board is shuffled by the given generator
+   * @param rand the source of randomness, or null to keep the values in order
+   */
+  public DealGame(RandomGenerator rand) {
+    this(rand, HighScoreStore.shared());
+  }
+  
+  /**
+   * constructs a game with its own board shuffle and high score store
+   * @param rand the source of randomness, or null to keep the values in order
+   * @param highScores where the high score is read from and recorded
+   */
+  public DealGame(RandomGenerator rand, HighScoreStore highScores) {
+    this(GameVariant.current(), rand, highScores);
+  }
+  
+  /**
+   * constructs a game of a given variant
+   * @param variant the rules of the game
+   * @param rand the source of randomness, or null to keep the values in order
+   * @param highScores where the high score is read from and recorded
+   */
+  public DealGame(GameVariant variant, RandomGenerator rand, HighScoreStore highScores) {
+    this.variant = variant;
+    this.highScores = highScores;
+    banker = variant.getBanker();
+    gameId = ThreadLocalRandom.current().nextLong();
+    list = variant.newBoxList();
     roundNumber = 1;
     openInRound = 0;
     totalOpen   = 0;
     
-    if (!testing)
-      list.shuffle(BOX_SWAPS);
+    if (rand != null)
+      list.shuffle(rand);
+  }
+  
+  /**
+   * counts this game as started and subscribes the metrics to its events,
+   * when metrics are enabled. only games played live are instrumented, so
+   * replays of a journal do not count towards the metrics
+   */
+  public void instrument() {
+    if (GameMetrics.ENABLED) {
+      GameMetrics.gameStarted();
+      getEvents().subscribe(GameMetrics.subscriber());
+    }
+  }
+  
+  /**
+   * creates a copy of another game for lookahead
+   * @param other the game to copy
+   */
+  private DealGame(DealGame other) {
+    list = other.list.fork();
+    copyFrom(other);
+  }
+  
+  /**
+   * creates an independent copy of this game to explore moves on. the copy
+   * shares the board's values and copies only the open boxes and counters.
+   * it records nothing in the journal or metrics, publishes no events until
+   * asked for them, and starts with no moves to undo
+   * @return the copy
+   */
+  public DealGame fork() {
+    return new DealGame(this);
+  }
+  
+  /**
+   * makes this game a copy of another with a board of the same size, without
+   * allocating, so a search can reuse one game per depth
+   * @param other the game to copy
+   */
+  public void copyFrom(DealGame other) {
+    list.copyFrom(other.list);
+    variant = other.variant;
+    banker = other.banker;
+    gameId = other.gameId;
+    chosenBox = other.chosenBox;
+    playerIndex = other.playerIndex;
+    roundNumber = other.roundNumber;
+    openInRound = other.openInRound;
+    totalOpen = other.totalOpen;
+    highScores = other.highScores;
+    journal = null;
+    moveCount = 0;
+  }
+  
+  /**
+   * opens a box to look ahead, without the journal or metrics. if the round
+   * is over the box begins the next one, as if the offer had been refused.
+   * undo takes the move back
+   * @param index an unopened box other than the player's
+   * @throws IllegalStateException if the last round is over
+   */
+  public void apply(int index) {
+    boolean beginsRound = isEndOfRound();
+    if (beginsRound) {
+      if (roundNumber >= variant.getNumRounds() - 1)
+        throw new IllegalStateException("There are no more boxes to open after round " + roundNumber);
+      ++roundNumber;
+      openInRound = 0;
+    }
+    if (moves == null)
+      moves = new int[list.size()];
     
-    input = getInputScanner();
-    if (input == null)
-      highScore = 0;
-    else
-      highScore = input.nextDouble();
+    list.open(index);
+    ++openInRound;
+    ++totalOpen;
+    moves[moveCount++] = index << 1 | (beginsRound ? 1 : 0);
+  }
+  
+  /**
+   * takes back the last move made by apply
+   * @throws IllegalStateException if there is no move to take back
+   */
+  public void undo() {
+    if (moveCount == 0)
+      throw new IllegalStateException("There is no move to undo");
+    int move = moves[--moveCount];
+    list.close(move >>> 1);
+    --openInRound;
+    --totalOpen;
+    if ((move & 1) != 0) {
+      --roundNumber;
+      openInRound = variant.getBoxesInRound(roundNumber);
+    }
+  }
+  
+  /**
+   * creates an endless stream of statistically independent generators
+   * split from one seed, so parallel workers can each deal their own
+   * reproducible boards without sharing a generator
+   * @param seed the root seed
+   * @return stream of independent generators
+   */
+  public static Stream<RandomGenerator> independentGenerators(long seed) {
+    RandomGenerator.SplittableGenerator root =
+      (RandomGenerator.SplittableGenerator) SPLITTABLE_FACTORY.create(seed);
+    return root.splits().map(g -> (RandomGenerator) g);
+  }
+  
+  /**
+   * starts recording this game's moves in a journal, beginning with a
+   * snapshot of its current state. each move is written as it is made, on
+   * the calling thread; GameJournal.subscribe records from the event stream
+   * instead, off the game's thread
+   * @param journal the journal, or null to stop recording
+   */
+  public void setJournal(GameJournal journal) {
+    this.journal = journal;
+    if (journal != null)
+      journal.recordStart(this);
+  }
+  
+  /**
+   * gets the stream of this game's events. each game has its own publisher,
+   * delivering on the common pool, or a thread per delivery when the pool
+   * has only one thread, so a slow subscriber of one game never holds up
+   * another. each subscriber has its own buffer of EVENT_BUFFER_SIZE events,
+   * filled as the game is played and drained as the subscriber asks for
+   * more. a subscriber whose buffer is full is given EVENT_OFFER_TIMEOUT_MILLIS
+   * to make room; after that the event is dropped for it alone, counted in
+   * getDroppedEvents, and a GameEvent.Subscriber is cut off, so it costs the
+   * game that wait at most once
+   * @return the publisher, created on first use
+   */
+  public Flow.Publisher<GameEvent> getEvents() {
+    if (events == null)
+      events = new SubmissionPublisher<>();
+    return events;
+  }
+  
+  /**
+   * ends the event stream once the events already published are delivered,
+   * after which each subscriber's onComplete is called
+   */
+  public void closeEvents() {
+    if (events != null)
+      events.close();
+  }
+  
+  /** @return the events dropped for subscribers that fell behind */
+  public long getDroppedEvents() {
+    return droppedEvents;
+  }
+  
+  /** @return whether anything is subscribed to this game's events */
+  private boolean publishing() {
+    return events != null && events.hasSubscribers();
+  }
+  
+  /**
+   * publishes an event about the current round, waiting only for a
+   * subscriber that is behind, and only as long as the lag policy allows.
+   * the value of the player's box is left out until the game is over, so
+   * for the box just chosen and a deal turned down, as the player does not
+   * know it yet
+   * @param type the event type
+   * @param box the box the event is about, or -1
+   * @param amount the offer or score, or 0
+   * @param accepted whether the deal was taken or the boxes swapped
+   */
+  private void publish(byte type, int box, double amount, boolean accepted) {
+    boolean revealed = box >= 0 && type != GameEvent.BOX_CHOSEN && (type != GameEvent.DEAL_DECIDED || accepted);
+    GameEvent event = new GameEvent(type, gameId, roundNumber, box, revealed ? list.getRank(box) : -1,
+                                    revealed ? list.getValue(box) : 0, amount, accepted,
+                                    getBoxesRemainingToOpenThisRound());
+    events.offer(event, EVENT_OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, this::dropped);
+  }
+  
+  /**
+   * counts an event a subscriber had no room for in time and cuts the
+   * subscriber off, so the game does not wait for it again
+   * @param subscriber the subscriber that fell behind
+   * @param event the event it missed
+   * @return false, as the event is not offered again
+   */
+  private boolean dropped(Flow.Subscriber<? super GameEvent> subscriber, GameEvent event) {
+    ++droppedEvents;
+    if (subscriber instanceof GameEvent.Subscriber)
+      ((GameEvent.Subscriber) subscriber).fellBehind();
+    return false;
+  }
+  
+  /** publishes the end of the round with its offer, if the last box of the round was just opened */
+  private void publishIfEndOfRound() {
+    if (isEndOfRound())
+      publish(GameEvent.ROUND_ENDED, -1, getCurrentOffer(), false);
+  }
+  
+  /**
+   * records that the current offer has been shown to the player
+   * @param offer the offer shown
+   */
+  public void offerShown(double offer) {
+    if (journal != null)
+      journal.recordOffer(gameId, offer);
+    if (publishing())
+      publish(GameEvent.OFFER_MADE, -1, offer, false);
+  }
+  
+  /**
+   * records the player's answer to the current offer. a deal taken ends the
+   * game, so only then does the event carry the value of the player's box
+   * @param accepted whether the player took the deal
+   */
+  public void dealDecided(boolean accepted) {
+    if (journal != null)
+      journal.recordDeal(gameId, accepted);
+    if (publishing())
+      publish(GameEvent.DEAL_DECIDED, playerIndex, getCurrentOffer(), accepted);
+  }
+  
+  /**
+   * records the player's final choice to keep their box or swap it
+   * @param swapped whether the player swapped boxes
+   */
+  public void swapDecided(boolean swapped) {
+    if (journal != null)
+      journal.recordSwap(gameId, swapped);
+    if (publishing()) {
+      int taken = swapped ? getLastBoxIndex() : playerIndex;
+      publish(GameEvent.SWAP_DECIDED, taken, list.getValue(taken), swapped);
+    }
+  }
+  
+  /**
+   * gets the number of bytes a snapshot of a game takes
+   * @return snapshot size in bytes
+   */
+  public int snapshotSize() {
+    return list.snapshotSize() + Long.BYTES + 4 * Integer.BYTES + 1;
+  }
+  
+  /**
+   * writes the full state of the game into a buffer in a fixed-size binary
+   * form, without creating any objects, so the buffer can go straight to a
+   * file channel
+   * @param buffer the buffer, advanced by snapshotSize bytes
+   */
+  public void writeTo(ByteBuffer buffer) {
+    list.writeTo(buffer);
+    buffer.putLong(gameId);
+    buffer.putInt(playerIndex);
+    buffer.putInt(roundNumber);
+    buffer.putInt(openInRound);
+    buffer.putInt(totalOpen);
+    buffer.put((byte) (chosenBox ? 1 : 0));
+  }
+  
+  /**
+   * replaces the state of this game with a snapshot written by writeTo.
+   * the high score store is kept
+   * @param buffer the buffer, advanced by snapshotSize bytes
+   * @throws IOException if the board in the snapshot is damaged
+   */
+  public void readFrom(ByteBuffer buffer) throws IOException {
+    list.readFrom(buffer);
+    gameId      = buffer.getLong();
+    playerIndex = buffer.getInt();
+    roundNumber = buffer.getInt();
+    openInRound = buffer.getInt();
+    totalOpen   = buffer.getInt();
+    chosenBox   = buffer.get() != 0;
+  }
+  
+  /**
+   * gets the id this game is recorded under on the leaderboard
+   * @return gameId
+   */
+  public long getGameId() {
+    return gameId;
   }
   
   /**
@@ -82,6 +456,7 @@ public class DealGame {
    * @param index
    */
   public void selectBox(int index) {
+    boolean opening = chosenBox;
     if (!chosenBox) {
       playerIndex = index;
       chosenBox = true;
@@ -91,6 +466,88 @@ public class DealGame {
       ++openInRound;
       ++totalOpen;
     }
+    if (journal != null)
+      journal.recordSelect(gameId, index);
+    if (publishing()) {
+      publish(opening ? GameEvent.BOX_OPENED : GameEvent.BOX_CHOSEN, index, 0, false);
+      if (opening)
+        publishIfEndOfRound();
+    }
+  }
+  
+  /**
+   * opens several boxes of the current round in one step. every index is
+   * checked before any box is opened, so a bad index leaves the game as it was
+   * @param indices the boxes to open, at most the number left to open this round
+   * @param revealed receives the value of each box opened, in the order of
+   *        indices, or null if the values are not wanted
+   * @return the offer if this ends the round, otherwise NaN
+   * @throws IllegalStateException if the player has not chosen a box
+   * @throws IllegalArgumentException if an index is out of range, repeated,
+   *         already open or the player's box, or there are too many
+   */
+  public double openBoxes(int[] indices, double[] revealed) {
+    if (!chosenBox)
+      throw new IllegalStateException("The player must choose a box before opening any");
+    if (indices.length > getBoxesRemainingToOpenThisRound())
+      throw new IllegalArgumentException("Cannot open " + indices.length + " boxes with " +
+                                         getBoxesRemainingToOpenThisRound() + " left to open this round");
+    int[] sorted = indices.clone();
+    Arrays.sort(sorted);
+    for (int i = 0; i < sorted.length; ++i) {
+      int index = sorted[i];
+      if (index < 0 || index >= list.size())
+        throw new IllegalArgumentException("Box " + index + " does not exist");
+      if (index == playerIndex || list.isOpen(index) || (i > 0 && sorted[i - 1] == index))
+        throw new IllegalArgumentException("Box " + index + " cannot be opened");
+    }
+    
+    boolean publishing = publishing();
+    for (int i = 0; i < indices.length; ++i) {
+      list.open(indices[i]);
+      ++openInRound;
+      if (revealed != null)
+        revealed[i] = list.getValue(indices[i]);
+      if (publishing)
+        publish(GameEvent.BOX_OPENED, indices[i], 0, false);
+    }
+    totalOpen += indices.length;
+    if (journal != null)
+      journal.recordSelects(gameId, indices);
+    if (publishing)
+      publishIfEndOfRound();
+    return isEndOfRound() ? getCurrentOffer() : Double.NaN;
+  }
+  
+  /**
+   * opens every box left to open in the current round in one step
+   * @param indices the boxes to open, exactly as many as are left this round
+   * @param revealed receives the value of each box opened, or null
+   * @return the offer that ends the round
+   * @throws IllegalArgumentException if the indices do not finish the round
+   *         or one cannot be opened
+   */
+  public double playRound(int[] indices, double[] revealed) {
+    if (indices.length != getBoxesRemainingToOpenThisRound())
+      throw new IllegalArgumentException("Round " + roundNumber + " needs " +
+                                         getBoxesRemainingToOpenThisRound() + " more boxes, not " + indices.length);
+    return openBoxes(indices, revealed);
+  }
+  
+  /**
+   * gets the index of the player's box
+   * @return playerIndex
+   */
+  public int getPlayerIndex() {
+    return playerIndex;
+  }
+  
+  /**
+   * gets the number of boxes opened in all rounds
+   * @return totalOpen
+   */
+  public int getTotalBoxesOpened() {
+    return totalOpen;
   }
   
   /**
@@ -98,7 +555,7 @@ public class DealGame {
    * @return closed boxes in round
    */
   public int getBoxesRemainingToOpenThisRound() {
-    return BOXES_IN_ROUND[roundNumber] - openInRound;
+    return variant.getBoxesInRound(roundNumber) - openInRound;
   }
   
   /**
@@ -109,6 +566,25 @@ public class DealGame {
     return openInRound;
   }
   
+  /** @return the rules this game is played by */
+  public GameVariant getVariant() {
+    return variant;
+  }
+  
+  /** @return the strategy deciding the banker's offers */
+  public BankerStrategy getBanker() {
+    return banker;
+  }
+  
+  /**
+   * changes how the banker decides offers for the rest of the game. a game
+   * with a banker other than the variant's is kept off the high score
+   * @param banker the strategy
+   */
+  public void setBanker(BankerStrategy banker) {
+    this.banker = banker;
+  }
+  
   /**
    * gets the round number
    * @return roundNumber
@@ -121,6 +597,10 @@ public class DealGame {
   public void startNextRound() {
     ++roundNumber;
     openInRound = 0;
+    if (journal != null)
+      journal.recordNextRound(gameId);
+    if (publishing())
+      publish(GameEvent.ROUND_STARTED, -1, 0, false);
   }
   
   /**
@@ -128,7 +608,7 @@ public class DealGame {
    * @return the difference between the total to be opened and the number opened
    */
   public boolean isEndOfRound() {
-    return BOXES_IN_ROUND[roundNumber] == openInRound;
+    return variant.getBoxesInRound(roundNumber) == openInRound;
   }
   
   /**
@@ -157,62 +637,135 @@ public class DealGame {
     return list.getValue(index);
   }
   
+  /**
+   * gets the ordinal of the value in a given box, its position in
+   * the variant's values sorted in ascending order
+   * @param index
+   * @return the value ordinal
+   */
+  public int getOrdinalInBox(int index) {
+    return list.getRank(index);
+  }
+  
+  /**
+   * finds the first unopened box other than the player's box, which
+   * after the last round is the only one left
+   * @return index of the box, or -1 if every other box is open
+   */
+  public int getLastBoxIndex() {
+    int index = list.nextUnopened(0);
+    if (index == playerIndex)
+      index = list.nextUnopened(playerIndex + 1);
+    return index;
+  }
+  
   /** @return current bank offer */
   public double getCurrentOffer() {
-    return list.averageValueOfUnopenedBoxes() * roundNumber / 10;
+    return banker.offer(list, roundNumber);
   }
-  /** @return highScore the high score of the game */
-  public double getHighScore() {
-    return highScore;
+  
+  /**
+   * calculates the banker's offer for a board of the standard game in a given round
+   * @param boxes the board
+   * @param round the round number
+   * @return the offer
+   */
+  public static double calculateOffer(BoxList boxes, int round) {
+    return calculateOffer(boxes.averageValueOfUnopenedBoxes(), round);
   }
   
   /**
-   * writes to high score file if score is a high score
-   * @param value the score of the game
-   * @return whether score was a high score
+   * calculates the banker's offer of the standard game from the average value still in play
+   * @param average the average value of the unopened boxes
+   * @param round the round number
+   * @return the offer
    */
-  public boolean isNewHighScore(double value) {
-    PrintStream out;
-    
-    if (value > highScore) {
-      out = getOutputPrintStream();
-      out.println(value);
-      highScore = value;
-      return true;
-    }
-    else
-      return false;
+  public static double calculateOffer(double average, int round) {
+    return average * round / 10;
   }
   
   /**
-   * gets a printstream to write to the high score file
-   * @return out
+   * works out the exact distribution of the next round's offer, treating
+   * every set of boxes the player could open next round as equally likely.
+   * the player's box is counted among the candidates, since the player
+   * does not know its value. only the variant's own banker is supported,
+   * since its offer grows in step with the remaining sum
+   * @return the distribution
+   * @throws IllegalStateException if the round is not over, it is the last
+   *         round or the game has another banker
    */
-  public PrintStream getOutputPrintStream() {
-    PrintStream out = null;
+  public OfferDistribution getNextOfferDistribution() {
+    if (!isEndOfRound() || roundNumber >= variant.getNumRounds() - 1)
+      throw new IllegalStateException("There is no next offer in round " + roundNumber);
+    requireVariantBanker();
     
-    try {
-      out = new PrintStream(new File(HIGH_SCORE_FILE));
-    }
-    catch (FileNotFoundException e) {
-    }
-    
-    return out;  	
+    double[] remaining = new double[list.countOfUnopenedBoxes()];
+    for (int i = list.nextUnopened(0), n = 0; i >= 0; i = list.nextUnopened(i + 1))
+      remaining[n++] = list.getValue(i);
+    return new OfferDistribution(remaining, variant.getBoxesInRound(roundNumber + 1), roundNumber + 1,
+                                 getCurrentOffer(), variant.getOfferMultiplier());
+  }
+  
+  /**
+   * prices many choices of the boxes to open next round at once, which is
+   * the inner loop of searching for the best play
+   * @param candidates bit i of each set while the choice opens box i, for
+   *        variants of at most 64 boxes
+   * @param offers receives the offer next round would bring for each choice
+   * @throws IllegalStateException if the game has a banker other than the variant's
+   */
+  public void getNextOffers(long[] candidates, double[] offers) {
+    requireVariantBanker();
+    list.offersIfOpened(candidates, variant, roundNumber + 1, offers);
+  }
+  
+  /** checks the offers come from the variant's own banker, which the offer kernels assume */
+  private void requireVariantBanker() {
+    if (banker != variant.getBanker())
+      throw new IllegalStateException("Next offers can only be worked out for the " + variant.getName() + " banker");
   }
   
   /**
-   * gets an input scanner for the high score file
-   * @return in
+   * gets the set of values still in play as a bitmask over BOX_VALUES,
+   * with bit i set while the box holding BOX_VALUES[i] is closed. only
+   * meaningful for variants of at most 32 boxes
+   * @return the remaining value mask
    */
-  public Scanner getInputScanner() {
-    Scanner in = null;
+  public int getRemainingValueMask() {
+    return (int) list.unopenedRankMask();
+  }
+  
+  /** @return the high score of the game */
+  public double getHighScore() {
+    if (!GameMetrics.ENABLED)
+      return highScores.getHighScore();
     
-    try {
-      in = new Scanner(new File(HIGH_SCORE_FILE));
-    }
-    catch (FileNotFoundException e) {
+    long start = System.nanoTime();
+    double highScore = highScores.getHighScore();
+    GameMetrics.highScoreRead(System.nanoTime() - start);
+    return highScore;
+  }
+  
+  /**
+   * records the score if it is a high score. only games whose offers came
+   * from the variant's own banker are recorded, so a banker chosen by the
+   * player cannot inflate the high score
+   * @param value the score of the game
+   * @return whether score was a high score
+   */
+  public boolean isNewHighScore(double value) {
+    if (banker != variant.getBanker())
+      return false;
+    boolean newHighScore;
+    if (!GameMetrics.ENABLED)
+      newHighScore = highScores.submit(value, gameId);
+    else {
+      long start = System.nanoTime();
+      newHighScore = highScores.submit(value, gameId);
+      GameMetrics.highScoreWritten(System.nanoTime() - start);
     }
-    
-    return in;	
+    if (newHighScore && publishing())
+      publish(GameEvent.NEW_HIGH_SCORE, -1, value, false);
+    return newHighScore;
   }
 }
@@ -37,6 +37,16 @@ public class DealGameGUI extends JFrame implements ActionListener
    Formatting object for monetary values 
    */
   private static final NumberFormat CURRENCY_FORMAT = NumberFormat.getCurrencyInstance();
+  
+  /** 
+   The most boxes laid out five to a row before the grid is made square
+   */
+  private static final int MAX_FIVE_COLUMN_BOXES = 60;
+  
+  /** 
+   Every box value with its currency text formatted once, indexed by ordinal
+   */
+  private ValueCatalog values;
 
   /** 
    Deal game  
@@ -49,7 +59,8 @@ public class DealGameGUI extends JFrame implements ActionListener
   private JButton[] boxBtns;
   
   /** 
-   * Labels that will show the player which monetary values are left in the game 
+   * Labels that will show the player which monetary values are left in the game,
+   * indexed by value ordinal
    */
   private JLabel[] valueLbls;
   
@@ -58,6 +69,16 @@ public class DealGameGUI extends JFrame implements ActionListener
    */
   private JLabel statusLbl;
   
+  /** 
+   * Label that shows the high score 
+   */
+  private JLabel highScoreLbl;
+  
+  /** 
+   * Records the game in the journal from its events, or null if it is not journaled 
+   */
+  private GameEvent.Subscriber journalSubscriber;
+  
   /** 
    * Container for all of the box buttons 
    */
@@ -90,17 +111,30 @@ public class DealGameGUI extends JFrame implements ActionListener
     Container c = getContentPane();
 
     game = new DealGame(testing);
+    game.instrument();
+    try {
+      journalSubscriber = new GameJournal(DealGame.JOURNAL_DIRECTORY).subscribe(game);
+    }
+    catch (java.io.UncheckedIOException e) {
+      System.out.println("Game will not be journaled: " + e.getMessage());
+    }
     statusLbl = new JLabel("Select Your Box By Clicking On It");
 
-    boxBtns = new JButton[DealGame.NUM_BOXES];
-    valueLbls = new JLabel[DealGame.NUM_BOXES];
+    GameVariant variant = game.getVariant();
+    int numBoxes = variant.getNumBoxes();
+    values = new ValueCatalog(variant.getValues(), CURRENCY_FORMAT);
+    boxBtns = new JButton[numBoxes];
+    valueLbls = new JLabel[numBoxes];
 
+    // the boxes plus the high score row, five to a row unless the board is large
+    int columns = numBoxes <= MAX_FIVE_COLUMN_BOXES ? 5 : (int) Math.ceil(Math.sqrt(numBoxes + 3));
     boxPanel = new JPanel();
-    boxPanel.setLayout(new GridLayout(6,5));
+    boxPanel.setLayout(new GridLayout((numBoxes + 3 + columns - 1) / columns, columns));
 
 
+    int half = (numBoxes + 1) / 2;
     valuePanel = new JPanel();
-    valuePanel.setLayout(new GridLayout(13,2));
+    valuePanel.setLayout(new GridLayout(half,2));
     Border b = BorderFactory.createLineBorder(Color.black);
     valuePanel.setBorder(new TitledBorder(b, "Remaining Values", TitledBorder.CENTER, TitledBorder.ABOVE_TOP));
 
@@ -110,30 +144,37 @@ public class DealGameGUI extends JFrame implements ActionListener
     attributes.put(TextAttribute.STRIKETHROUGH, TextAttribute.STRIKETHROUGH_ON);
     STRIKE_FONT = new Font(attributes);
 
-    for(int i = 0; i < DealGame.NUM_BOXES; i++) {
+    for(int i = 0; i < numBoxes; i++) {
       boxBtns[i] = new JButton("Box " + (i+1));
       boxBtns[i].addActionListener(this);
       boxPanel.add(boxBtns[i]);
-      valueLbls[i] = new JLabel(CURRENCY_FORMAT.format(DealGame.BOX_VALUES[i]));
+      valueLbls[i] = new JLabel(values.getLabel(i));
     }
 
     // add a blank spot in the box Panel as a divider for the high score label
     boxPanel.add(new JLabel(""));
     boxPanel.add(new JLabel("High Score:", JLabel.RIGHT));
-    boxPanel.add(new JLabel(CURRENCY_FORMAT.format(game.getHighScore()), JLabel.CENTER));
+    highScoreLbl = new JLabel(CURRENCY_FORMAT.format(game.getHighScore()), JLabel.CENTER);
+    boxPanel.add(highScoreLbl);
 
     // stagger the values so that they appear in two columns in the GUI
     int lblCount = 0;
     int nextPosition = 0;
-    while(lblCount < DealGame.NUM_BOXES) {
+    while(lblCount < numBoxes) {
       valuePanel.add(valueLbls[nextPosition]);
       lblCount++;
 
       if(lblCount % 2 == 1) {
-	nextPosition += 13;
+	nextPosition += half;
       }
       else {
-	nextPosition -= 12;
+	nextPosition -= half - 1;
+      }
+      if(nextPosition >= numBoxes) {
+	// an odd number of values leaves the last row of the right column empty
+	valuePanel.add(new JLabel(""));
+	lblCount++;
+	nextPosition -= half - 1;
       }
     }
 
@@ -141,9 +182,63 @@ public class DealGameGUI extends JFrame implements ActionListener
     c.add(boxPanel, BorderLayout.CENTER);
     c.add(valuePanel, BorderLayout.EAST);
 
+    game.getEvents().subscribe(new GameEvent.Subscriber() {
+      protected void onEvent(GameEvent event) {
+        SwingUtilities.invokeLater(() -> show(event));
+      }
+    });
     setVisible(true);
   }
 
+  /**
+   * Updates the boxes, values and status to show something that happened in the game.
+   * Called on the event dispatch thread for each of the game's events, in order
+   *
+   * @param event The event to show
+   */
+  private void show(GameEvent event) {
+    switch (event.getType()) {
+      case GameEvent.BOX_CHOSEN:
+        boxBtns[event.getBox()].setText("Your Box");
+        statusLbl.setText(event.getBoxesLeft() + " boxes left to open this round.");
+        break;
+      case GameEvent.BOX_OPENED:
+        String strValue = values.getLabel(event.getOrdinal());
+        boxBtns[event.getBox()].setText(strValue);
+        // we need to cross out this value from the list
+        valueLbls[event.getOrdinal()].setFont(STRIKE_FONT);
+        statusLbl.setText("Player opens Box " + (event.getBox() + 1) + 
+                          ", which contains " + strValue + 
+                          ".  " + event.getBoxesLeft() + 
+                          " boxes left to open this round.");
+        break;
+      case GameEvent.ROUND_STARTED:
+        statusLbl.setText(event.getBoxesLeft() + " boxes left to open this round.");
+        break;
+      case GameEvent.NEW_HIGH_SCORE:
+        highScoreLbl.setText(CURRENCY_FORMAT.format(event.getAmount()));
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Ends the game's events, waits for the journal to record them and exits.
+   */
+  private void exit() {
+    game.closeEvents();
+    if (journalSubscriber != null) {
+      try {
+        journalSubscriber.awaitCompletion(5, java.util.concurrent.TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    System.exit(0);
+  }
+
   /**
    * Responds to the user clicking on buttons in the GUI
    *
@@ -155,49 +250,35 @@ public class DealGameGUI extends JFrame implements ActionListener
 	
 	
 	boxBtns[i].setEnabled(false);
-
-	if(game.hasPlayerChosenBox()){
-          game.selectBox(i);
-	  double value = game.getValueInBox(i);
-	  boxBtns[i].setText(CURRENCY_FORMAT.format(value));
-	  // we need to cross out this value from the list
-	  int labelNum = findLabelWithValue(value);
-	  valueLbls[labelNum].setFont(STRIKE_FONT);
-          statusLbl.setText("Player opens Box " + (i + 1) + 
-                            ", which contains " +
-                            CURRENCY_FORMAT.format(game.getValueInBox(i)) + 
-                            ".  " + game.getBoxesRemainingToOpenThisRound() + 
-                            " boxes left to open this round.");
-	}
-	else {
-          game.selectBox(i);
-	  boxBtns[i].setText("Your Box");
-	  statusLbl.setText(game.getBoxesRemainingToOpenThisRound() +
-                            " boxes left to open this round.");
-	}
+	// the box and status labels are updated by show as the game's events arrive
+	game.selectBox(i);
 
 	if(game.isEndOfRound()) {
 	  // prompt to make a deal
 	  double offer = game.getCurrentOffer();
 	  String strOffer = CURRENCY_FORMAT.format(offer);
+	  game.offerShown(offer);
 	  int response = JOptionPane.showConfirmDialog(null, 
                          "The Banker is offering you " + strOffer + 
                          " for your box.  Do you accept?", "Deal or No Deal?", 
                          JOptionPane.YES_NO_OPTION);
+	  game.dealDecided(response != JOptionPane.NO_OPTION);
 
 	  if(response == JOptionPane.NO_OPTION) {
 	    // the user has selected "No"
-	    if(game.getRound() == DealGame.NUM_ROUNDS - 1) {
+	    if(game.getRound() == game.getVariant().getNumRounds() - 1) {
 	      int choice = JOptionPane.showConfirmDialog(null, 
                            "It is the last round!  Do you want to keep your box (YES), or swap it for the last one remaining (NO)?", 
                            "Deal or No Deal?", JOptionPane.YES_NO_OPTION);
+	      game.swapDecided(choice != JOptionPane.YES_OPTION);
 
 	      // the game is over, display the results of the user opening their box
 	      double value = game.getPlayerBoxValue();
-	      String strValue = CURRENCY_FORMAT.format(value);
+	      String strValue = values.getLabel(game.getOrdinalInBox(game.getPlayerIndex()));
 
-	      double otherValue = getValueOfLastBox();
-	      String strOtherValue = CURRENCY_FORMAT.format(otherValue);
+	      int otherIndex = game.getLastBoxIndex();
+	      double otherValue = game.getValueInBox(otherIndex);
+	      String strOtherValue = values.getLabel(game.getOrdinalInBox(otherIndex));
 
 	      if(choice == JOptionPane.YES_OPTION) {
 	        if(value >= otherValue) {
@@ -243,12 +324,10 @@ public class DealGameGUI extends JFrame implements ActionListener
 	        }
 	      }
 
-	      System.exit(0);
+	      exit();
 	    }
 	    else {
 	    game.startNextRound();
-	    statusLbl.setText(game.getBoxesRemainingToOpenThisRound() +
-                              " boxes left to open this round.");
 	    }
 	  }
 	  else {
@@ -256,7 +335,7 @@ public class DealGameGUI extends JFrame implements ActionListener
 	    // the game is over, display what their case contained and 
             // tell if it was a good deal or not
 	    double value = game.getPlayerBoxValue();
-	    String strValue = CURRENCY_FORMAT.format(value);
+	    String strValue = values.getLabel(game.getOrdinalInBox(game.getPlayerIndex()));
 
 	    if(offer < value) {
 	      JOptionPane.showMessageDialog(null, 
@@ -278,50 +357,13 @@ public class DealGameGUI extends JFrame implements ActionListener
                           "You have set a new high score!!!  " + 
                           strOffer, "New High Score!", JOptionPane.INFORMATION_MESSAGE);
 	    }
-	    System.exit(0);
+	    exit();
 	  }
         }
       }
     }
   }
 
-  /**
-   * Searches through the array of labels and returns the index
-   * of the label that displays the given value
-   *
-   * @param value The monetary value displayed on the label we are looking for
-   * @return The index number of the label in the array that displays the given value
-   */
-  private int findLabelWithValue(double value) {
-    String textVal = CURRENCY_FORMAT.format(value);
-
-    for(int i = 0; i < valueLbls.length; i++) {
-      if(valueLbls[i].getText().equals(textVal)) {
-	return i;
-      }
-    }
-
-    return 0;
-  }
-  
-  /**
-   * Returns value of the first unopened box other than the player's box
-   * If all other boxes have been opened, this will be the last box
-   * @return value of first unopened box other than the player's box or 
-   *         0.0 if all boxes other than the player's box are open
-   */
-  private double getValueOfLastBox() {
-    double playerBoxValue = game.getPlayerBoxValue();
-    for (int i = 0; i < DealGame.NUM_BOXES; i++) {
-      double value = game.getValueInBox(i);
-      if (value != playerBoxValue && !game.isBoxOpen(i)) {
-        return value;
-      }
-    }
-    return 0.0;
-  } 
-      
-  
 
   /**
    * Creates a new DealGameGUI object to begin a game.
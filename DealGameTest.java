@@ -1,6 +1,23 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * White box testing program for DealGame.
@@ -127,11 +144,13 @@ public class DealGameTest {
 		}
 		System.out.printf("   Expected: %d\t\tActual: %d\n", expected, actual);
 		
-		//TODO write test case here
 		//Test that if a certain box is opened, that the game
-		//knows it is open.  A for loop is NOT the best test
-		//here because you want to ensure the specific box you
-		//open (via selectBox) is the one that is open.
+		//knows it is open and its neighbours are still closed.
+		game.selectBox(0);
+		game.selectBox(7);
+		System.out.printf("   Expected: %s\tActual: %s\n", true, game.isBoxOpen(7));
+		System.out.printf("   Expected: %s\tActual: %s\n", false, game.isBoxOpen(6));
+		System.out.printf("   Expected: %s\tActual: %s\n", false, game.isBoxOpen(8));
 	}
 	
 	//Test the getCurrentOffer method and Javadoc
@@ -149,13 +168,14 @@ public class DealGameTest {
 		double actual = game.getCurrentOffer();
 		System.out.printf("   Expected: %.2f\tActual: %.2f\n", expected, actual);
 		
-		//TODO write test case here
 		//Test that if the Player's box and the first box
-		//is selected, that the current offer changes.  You'll
-		//want to calculate the expected value by hand before you
-		//run the test case (you should figure out the expected
-		//values BEFORE running your tests - your code may not
-		//be right).
+		//is selected, that the current offer changes.  Opening
+		//the $1 box leaves 3418414.01 across 25 boxes.
+		game.selectBox(0);
+		game.selectBox(1);
+		expected = 13673.66;
+		actual = game.getCurrentOffer();
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", expected, actual);
 	}
 	
 	//Test the getHighScore method and Javadoc
@@ -190,6 +210,25 @@ public class DealGameTest {
 		System.out.printf("   Expected: %.2f\tActual: %.2f\n", expected, actual);
 	}
 	
+	//Test the getOrdinalInBox and getLastBoxIndex methods and Javadoc
+	public void testGetLastBoxIndex() {
+		setUp();
+		System.out.println("testGetLastBoxIndex()");
+		
+		//In test mode box i holds the value with ordinal i
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 25, game.getOrdinalInBox(25));
+		
+		//Choose box 0 and open every box but box 12, which is
+		//then the last box left besides the player's
+		game.selectBox(0);
+		for (int i = 1; i < DealGame.NUM_BOXES; i++) {
+			if (i != 12) {
+				game.selectBox(i);
+			}
+		}
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 12, game.getLastBoxIndex());
+	}
+	
 	//Test the isNewHighScore method and Javadoc
 	public void testIsNewHighScore() {
 		//Start with no high score - do before starting game
@@ -201,14 +240,1029 @@ public class DealGameTest {
 			boolean expected = true;
 			boolean actual = game.isNewHighScore(10.0);
 			System.out.printf("   Expected: %s\tActual: %s\n", expected, actual);
+			
+			//Test that a higher score is set and a lower one is not,
+			//and that the file keeps the higher score for the next game
+			actual = game.isNewHighScore(20.0);
+			System.out.printf("   Expected: %s\tActual: %s\n", true, actual);
+			actual = game.isNewHighScore(15.0);
+			System.out.printf("   Expected: %s\tActual: %s\n", false, actual);
+			setUp();
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", 20.0, game.getHighScore());
 		} else {
 			System.out.println("   Setting a new high score test failed");
 		}
+	}
+	
+	//Test the BoxList shuffle methods
+	public void testShuffle() {
+		System.out.println("testShuffle()");
 		
-		//TODO write test case here
-		//Test either that a new, higher, score is set, or
-		//that a lower score is NOT set.  The best idea, 
-		//would be to test both paths.
+		//No swaps keep the values in order, and any number of swaps
+		//still holds every value once
+		BoxList list = new BoxList(DealGame.BOX_VALUES);
+		list.shuffle(0);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 1000000.0, list.getValue(25));
+		list.shuffle(500);
+		boolean[] seen = new boolean[list.size()];
+		for (int i = 0; i < list.size(); i++) {
+			seen[list.getRank(i)] = true;
+		}
+		boolean all = true;
+		for (boolean s : seen) {
+			all &= s;
+		}
+		System.out.printf("   Expected: %s\tActual: %s\n", true, all);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", new BoxList(DealGame.BOX_VALUES).averageValueOfUnopenedBoxes(),
+		                  list.averageValueOfUnopenedBoxes());
+	}
+	
+	//Test the writeTo and readFrom methods and Javadoc
+	public void testSnapshot() {
+		System.out.println("testSnapshot()");
+		
+		//Play part of a shuffled game, then restore a snapshot
+		//of it into a fresh game and check the state carried over
+		DealGame original = new DealGame(42L);
+		original.selectBox(3);
+		original.selectBox(0);
+		original.selectBox(10);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(original.snapshotSize());
+		original.writeTo(buffer);
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 0, buffer.remaining());
+		
+		buffer.flip();
+		setUp();
+		try {
+			game.readFrom(buffer);
+		} catch (IOException e) {
+			System.out.println("   Error reading a snapshot " + e);
+		}
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", original.getPlayerBoxValue(), game.getPlayerBoxValue());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", original.getValueInBox(25), game.getValueInBox(25));
+		System.out.printf("   Expected: %s\tActual: %s\n", true, game.isBoxOpen(10));
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 4, game.getBoxesRemainingToOpenThisRound());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", original.getCurrentOffer(), game.getCurrentOffer());
+		
+		//A snapshot with a repeated rank, a rank past the end or a box
+		//past the last one open is refused and leaves the game alone
+		int masks = DealGame.NUM_BOXES;
+		for (int corruption = 0; corruption < 3; corruption++) {
+			ByteBuffer corrupt = ByteBuffer.allocate(original.snapshotSize());
+			original.writeTo(corrupt);
+			switch (corruption) {
+				case 0 -> corrupt.put(1, corrupt.get(0));
+				case 1 -> corrupt.put(0, (byte) DealGame.NUM_BOXES);
+				default -> corrupt.put(masks, (byte) 0x80);
+			}
+			corrupt.flip();
+			String refused = "none";
+			try {
+				game.readFrom(corrupt);
+			} catch (IOException e) {
+				refused = "damaged";
+			}
+			System.out.printf("   Expected: %s\tActual: %s\n", "damaged", refused);
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", original.getValueInBox(25), game.getValueInBox(25));
+		}
+	}
+	
+	//Test journaling a game of a variant with 20,000 boxes
+	public void testLargeVariantJournal() {
+		System.out.println("testLargeVariantJournal()");
+		
+		//The first round opens every box but the player's and two others
+		int boxes = 20000;
+		double[] values = new double[boxes];
+		for (int i = 0; i < boxes; i++) {
+			values[i] = i + 1;
+		}
+		GameVariant variant = new GameVariant("large", values, new int[] {0, boxes - 3, 1, 1}, 0.1);
+		DealGame large = new DealGame(variant, null, new MemoryHighScoreStore());
+		int[] opened = new int[boxes - 3];
+		for (int i = 0; i < opened.length; i++) {
+			opened[i] = i + 1;
+		}
+		
+		try {
+			Path directory = Files.createTempDirectory("journal");
+			GameJournal journal = new GameJournal(directory.toString());
+			large.setJournal(journal);
+			large.selectBox(0);
+			large.openBoxes(opened, null);
+			large.offerShown(large.getCurrentOffer());
+			journal.close();
+			
+			//The snapshot is over 64KB, and replaying it rebuilds the game
+			System.out.printf("   Expected: %s\tActual: %s\n", true, large.snapshotSize() > 65535);
+			DealGame replayed;
+			try (JournalReader reader = new JournalReader(directory.toString(), variant)) {
+				replayed = reader.replayGame(0);
+			}
+			System.out.printf("   Expected: %d\tActual: %d\n", boxes - 3, replayed.getTotalBoxesOpened());
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", 1.0, replayed.getPlayerBoxValue());
+			System.out.printf("   Expected: %s\tActual: %s\n", false, replayed.isBoxOpen(boxes - 1));
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", large.getCurrentOffer(), replayed.getCurrentOffer());
+			
+			try (var files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		} catch (IOException e) {
+			System.out.println("   Error journaling a large game " + e);
+		}
+	}
+	
+	//Test a journal's damaged tail is found, and unfinished games reported
+	public void testJournalDamage() {
+		System.out.println("testJournalDamage()");
+		
+		try {
+			//One game ends with a deal, the other stops after its choice
+			Path directory = Files.createTempDirectory("journal");
+			GameJournal journal = new GameJournal(directory.toString());
+			DealGame dealt = new DealGame(GameVariant.STANDARD, null, new MemoryHighScoreStore());
+			dealt.setJournal(journal);
+			dealt.selectBox(0);
+			dealt.openBoxes(new int[] {1, 2, 3, 4, 5, 6}, null);
+			dealt.offerShown(dealt.getCurrentOffer());
+			dealt.dealDecided(true);
+			DealGame left = new DealGame(GameVariant.STANDARD, null, new MemoryHighScoreStore());
+			left.setJournal(journal);
+			left.selectBox(3);
+			journal.close();
+			
+			int[] games = new int[2];
+			long records;
+			int lastRecord = 0;
+			try (JournalReader reader = new JournalReader(directory.toString(), GameVariant.STANDARD)) {
+				records = reader.replayAll(game -> games[0]++, game -> games[1]++);
+				System.out.printf("   Expected: %s\tActual: %s\n", false, reader.isDamaged());
+				lastRecord = reader.getPosition() - GameJournal.CHECKSUM_SIZE - Integer.BYTES;
+			}
+			System.out.printf("   Expected: %d\tActual: %d\n", 12, records);
+			System.out.printf("   Expected: %d\tActual: %d\n", 1, games[0]);
+			System.out.printf("   Expected: %d\tActual: %d\n", 1, games[1]);
+			
+			//A torn last record is not replayed
+			try (FileChannel segment = FileChannel.open(directory.resolve("segment-000000.jnl"),
+			                                            StandardOpenOption.WRITE)) {
+				segment.write(ByteBuffer.wrap(new byte[] {(byte) 0xff}), lastRecord);
+			}
+			try (JournalReader reader = new JournalReader(directory.toString(), GameVariant.STANDARD)) {
+				records = reader.replayAll(game -> { }, game -> { });
+				System.out.printf("   Expected: %s\tActual: %s\n", true, reader.isDamaged());
+			}
+			System.out.printf("   Expected: %d\tActual: %d\n", 11, records);
+			
+			//A journal opened again writes over the torn record
+			journal = new GameJournal(directory.toString());
+			DealGame next = new DealGame(GameVariant.STANDARD, null, new MemoryHighScoreStore());
+			next.setJournal(journal);
+			next.selectBox(2);
+			journal.close();
+			try (JournalReader reader = new JournalReader(directory.toString(), GameVariant.STANDARD)) {
+				games[1] = 0;
+				records = reader.replayAll(game -> { }, game -> games[1]++);
+				System.out.printf("   Expected: %s\tActual: %s\n", false, reader.isDamaged());
+			}
+			System.out.printf("   Expected: %d\tActual: %d\n", 13, records);
+			System.out.printf("   Expected: %d\tActual: %d\n", 2, games[1]);
+			
+			try (var files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		} catch (IOException e) {
+			System.out.println("   Error damaging a journal " + e);
+		}
+	}
+	
+	//Test the GameVariant rules and that a policy table refuses other variants
+	public void testGameVariant() {
+		System.out.println("testGameVariant()");
+		
+		double[] values = new double[30];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (i + 1) * 100;
+		}
+		GameVariant thirty = new GameVariant("thirty", values, new int[] {0, 10, 8, 6, 4, 1}, 0.1);
+		System.out.printf("   Expected: %s\tActual: %s\n", true, GameVariant.STANDARD.isStandard());
+		System.out.printf("   Expected: %s\tActual: %s\n", false, thirty.isStandard());
+		System.out.printf("   Expected: %d\tActual: %d\n", 30, thirty.getNumBoxes());
+		
+		//The first offer is a tenth of the average of the boxes left
+		DealGame large = new DealGame(thirty, null, new MemoryHighScoreStore());
+		large.selectBox(0);
+		int[] opened = new int[10];
+		for (int i = 0; i < opened.length; i++) {
+			opened[i] = i + 1;
+		}
+		large.openBoxes(opened, null);
+		double left = 0;
+		for (int i = 11; i < values.length; i++) {
+			left += values[i];
+		}
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", (left + values[0]) / 20 * 0.1, large.getCurrentOffer());
+		
+		//Rounds that leave other than two boxes are refused
+		String refused = "none";
+		try {
+			new GameVariant("short", values, new int[] {0, 10, 8, 1}, 0.1);
+		} catch (IllegalArgumentException e) {
+			refused = "rounds";
+		}
+		System.out.printf("   Expected: %s\tActual: %s\n", "rounds", refused);
+		
+		//A policy table is of the standard game only
+		refused = "none";
+		try {
+			PlayerPolicy.optimal(null, thirty);
+		} catch (IllegalArgumentException e) {
+			refused = "policy";
+		}
+		System.out.printf("   Expected: %s\tActual: %s\n", "policy", refused);
+		
+		//A variant file without boxes, or with values that are negative,
+		//not numbers or repeated, is refused with the file's name
+		String[] bad = {"name=empty", "values=-1,2,3", "values=1,NaN,3", "values=1,2,2", "boxes=-5"};
+		try {
+			Path file = Files.createTempFile("variant", ".properties");
+			for (String contents : bad) {
+				Files.writeString(file, contents);
+				refused = "loaded";
+				try {
+					GameVariant.load(file.toString());
+				} catch (IllegalArgumentException e) {
+					refused = e.getMessage().contains(file.toString()) ? "refused" : e.getMessage();
+				}
+				System.out.printf("   Expected: %s\tActual: %s\n", "refused", refused);
+			}
+			
+			//A ladder of many boxes steps past values rounding would repeat
+			Files.writeString(file, "boxes=100000");
+			GameVariant ladder = GameVariant.load(file.toString());
+			System.out.printf("   Expected: %d\tActual: %d\n", 100000, ladder.getNumBoxes());
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", 0.02, ladder.getValues()[1]);
+			Files.delete(file);
+		} catch (IOException e) {
+			System.out.println("   Error loading a variant " + e);
+		}
+	}
+	
+	//Test sending simulation results to a coordinator and a sweep played by a worker
+	public void testSimulationCoordinator() {
+		System.out.println("testSimulationCoordinator()");
+		
+		//A result read back matches the one written
+		SimulationResult result = new SimulationEngine(PlayerPolicy.threshold(0.8)).run(2000, 7);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			result.writeTo(new DataOutputStream(bytes));
+			SimulationResult read = SimulationResult.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			System.out.printf("   Expected: %d\tActual: %d\n", result.getGames(), read.getGames());
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", result.getAverageWinnings(), read.getAverageWinnings());
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", result.getWinningsQuantile(0.5), read.getWinningsQuantile(0.5));
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", result.getStandardDeviation(), read.getStandardDeviation());
+		} catch (IOException e) {
+			System.out.println("   Error reading a result " + e);
+		}
+		
+		//A result claiming an absurd number of rounds is refused before allocating them
+		byte[] corrupt = bytes.toByteArray();
+		ByteBuffer.wrap(corrupt).putInt(7 * Long.BYTES, Integer.MAX_VALUE);
+		String refused = "none";
+		try {
+			SimulationResult.readFrom(new DataInputStream(new ByteArrayInputStream(corrupt)));
+		} catch (IOException e) {
+			refused = "length";
+		}
+		System.out.printf("   Expected: %s\tActual: %s\n", "length", refused);
+		
+		//A banker no worker could read is refused up front
+		refused = "none";
+		try {
+			new SimulationCoordinator(0, new String[] {"nonsense"}, new double[] {0.8}, 1000, 1000, 1).close();
+		} catch (IllegalArgumentException e) {
+			refused = "banker";
+		} catch (IOException e) {
+			System.out.println("   Error starting a coordinator " + e);
+		}
+		System.out.printf("   Expected: %s\tActual: %s\n", "banker", refused);
+		
+		//A worker in this process plays every shard of a small sweep
+		try (SimulationCoordinator coordinator = new SimulationCoordinator(0, new String[] {"average"},
+		                                                                   new double[] {0.8}, 3000, 1000, 11)) {
+			Thread worker = new Thread(() -> {
+				try {
+					SimulationWorker.serve("127.0.0.1", coordinator.getPort());
+				} catch (IOException e) {
+					System.out.println("   Worker failed " + e);
+				}
+			});
+			worker.setDaemon(true);
+			worker.start();
+			System.out.printf("   Expected: %s\tActual: %s\n", true, coordinator.await(60, TimeUnit.SECONDS));
+			System.out.printf("   Expected: %d\tActual: %d\n", 3000, coordinator.getResult(0, 0).getGames());
+		} catch (IOException | InterruptedException e) {
+			System.out.println("   Error running a sweep " + e);
+		}
+	}
+	
+	//Test the PolicySolver against brute force and its table header
+	public void testPolicySolver() {
+		System.out.println("testPolicySolver()");
+		
+		//Four boxes are left after round 7, and each round after opens one
+		int[] bits = {0, 10, 20, 25};
+		int mask = 0;
+		double[] values = new double[bits.length];
+		for (int i = 0; i < bits.length; i++) {
+			mask |= 1 << bits[i];
+			values[i] = DealGame.BOX_VALUES[bits[i]];
+		}
+		try {
+			Path directory = Files.createTempDirectory("policy");
+			String table = directory.resolve("policy.tbl").toString();
+			
+			//A player with log utility values playing on at the certainty
+			//equivalent brute force finds
+			try (PolicySolver solver = new PolicySolver(table, 1)) {
+				System.out.printf("   Expected: %.0f\tActual: %.0f\n", continuationByBruteForce(values, 7),
+				                  solver.continuationValue(mask));
+			}
+			
+			//A table opened for another risk aversion is solved again, for
+			//an expected value player who plays on for the mean
+			try (PolicySolver solver = new PolicySolver(table, 0)) {
+				System.out.printf("   Expected: %.0f\tActual: %.0f\n", Arrays.stream(values).average().getAsDouble(),
+				                  solver.continuationValue(mask));
+			}
+			try (PolicySolver solver = new PolicySolver(table, 1)) {
+				System.out.printf("   Expected: %.0f\tActual: %.0f\n", continuationByBruteForce(values, 7),
+				                  solver.continuationValue(mask));
+			}
+			Files.delete(Paths.get(table));
+			Files.delete(directory);
+		} catch (IOException e) {
+			System.out.println("   Error solving a policy table " + e);
+		}
+	}
+	
+	/**
+	 * works out the certainty equivalent of refusing the offer for a player
+	 * with log utility in the last rounds, where each round opens one box
+	 * @param values the values still in play
+	 * @param round the round that just ended
+	 * @return the certainty equivalent of playing on
+	 */
+	private static double continuationByBruteForce(double[] values, int round) {
+		double expected = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (round == DealGame.NUM_ROUNDS - 1) {
+				expected += Math.log(values[i]);
+				continue;
+			}
+			double[] rest = new double[values.length - 1];
+			for (int j = 0, k = 0; j < values.length; j++) {
+				if (j != i) {
+					rest[k++] = values[j];
+				}
+			}
+			double offer = DealGame.calculateOffer(Arrays.stream(rest).average().getAsDouble(), round + 1);
+			expected += Math.log(Math.max(offer, continuationByBruteForce(rest, round + 1)));
+		}
+		return Math.exp(expected / values.length);
+	}
+	
+	//Test the Leaderboard keeps the best scores in order and its threshold
+	public void testLeaderboard() {
+		System.out.println("testLeaderboard()");
+		
+		try {
+			Path directory = Files.createTempDirectory("leaderboard");
+			String board = directory.resolve("board.dat").toString();
+			String record = directory.resolve("record.dat").toString();
+			String seed = directory.resolve("none.txt").toString();
+			
+			//Only a score above every other one is a new high score
+			Leaderboard leaderboard = new Leaderboard(board, record, 3, seed);
+			System.out.printf("   Expected: %s\tActual: %s\n", true, leaderboard.submit(5, 1));
+			System.out.printf("   Expected: %s\tActual: %s\n", true, leaderboard.submit(10, 2));
+			System.out.printf("   Expected: %s\tActual: %s\n", false, leaderboard.submit(7, 3));
+			
+			//A full board turns away a score below its lowest entry
+			System.out.printf("   Expected: %s\tActual: %s\n", false, leaderboard.wouldQualify(4));
+			System.out.printf("   Expected: %s\tActual: %s\n", false, leaderboard.submit(4, 4));
+			System.out.printf("   Expected: %d\tActual: %d\n", 3, leaderboard.size());
+			
+			//A score that makes the board pushes the lowest one off it
+			System.out.printf("   Expected: %s\tActual: %s\n", false, leaderboard.submit(8, 5));
+			System.out.printf("   Expected: %s\tActual: %s\n", true, leaderboard.submit(12, 6));
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", 12.0, leaderboard.getScore(0));
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", 10.0, leaderboard.getScore(1));
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", 8.0, leaderboard.getScore(2));
+			System.out.printf("   Expected: %d\tActual: %d\n", 6, leaderboard.getGameId(0));
+			System.out.printf("   Expected: %s\tActual: %s\n", false, leaderboard.wouldQualify(8));
+			System.out.printf("   Expected: %s\tActual: %s\n", true, leaderboard.wouldQualify(9));
+			leaderboard.close();
+			
+			//A board opened again keeps its capacity, entries and high score
+			leaderboard = new Leaderboard(board, record, 5, seed);
+			System.out.printf("   Expected: %d\tActual: %d\n", 3, leaderboard.getCapacity());
+			System.out.printf("   Expected: %d\tActual: %d\n", 3, leaderboard.size());
+			System.out.printf("   Expected: %.2f\tActual: %.2f\n", 12.0, leaderboard.getHighScore());
+			leaderboard.close();
+			
+			try (var files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		} catch (IOException e) {
+			System.out.println("   Error using a leaderboard " + e);
+		}
+	}
+	
+	//Test trajectories written by a simulation and a journal read back as written
+	public void testTrajectories() {
+		System.out.println("testTrajectories()");
+		
+		try {
+			//Two runs from one seed write the same games in the same order,
+			//however the tasks were scheduled
+			Path first = Files.createTempDirectory("trajectories");
+			Path second = Files.createTempDirectory("trajectories");
+			SimulationResult result = null;
+			for (Path directory : new Path[] {first, second}) {
+				SimulationEngine engine = new SimulationEngine(PlayerPolicy.threshold(0.8));
+				try (TrajectoryWriter writer = new TrajectoryWriter(directory.toString(), 1 << 16)) {
+					engine.setTrajectoryWriter(writer);
+					result = engine.run(25000, 3);
+				}
+			}
+			try (TrajectoryReader a = new TrajectoryReader(first.toString());
+			     TrajectoryReader b = new TrajectoryReader(second.toString())) {
+				System.out.printf("   Expected: %d\tActual: %d\n", 25000, a.getGameCount());
+				System.out.printf("   Expected: %d\tActual: %d\n", a.getRowCount(), b.getRowCount());
+				boolean same = a.getSegmentCount() == b.getSegmentCount();
+				boolean ordered = true;
+				long finals = 0, previous = 0;
+				double winnings = 0;
+				for (int seg = 0; seg < a.getSegmentCount() && same; seg++) {
+					same = a.column(seg, TrajectoryWriter.AMOUNT).equals(b.column(seg, TrajectoryWriter.AMOUNT));
+					ByteBuffer events = a.column(seg, TrajectoryWriter.EVENT);
+					for (int row = 0; row < a.getRowCount(seg); row++) {
+						long number = a.column(seg, TrajectoryWriter.GAME).asLongBuffer().get(row);
+						ordered &= number == previous || number == previous + 1;
+						previous = number;
+						if (events.get(row) == TrajectoryWriter.FINAL) {
+							finals++;
+							winnings += a.column(seg, TrajectoryWriter.AMOUNT).asDoubleBuffer().get(row);
+						}
+					}
+				}
+				System.out.printf("   Expected: %s\tActual: %s\n", true, same);
+				System.out.printf("   Expected: %s\tActual: %s\n", true, ordered);
+				System.out.printf("   Expected: %d\tActual: %d\n", 25000, finals);
+				System.out.printf("   Expected: %.2f\tActual: %.2f\n", result.getAverageWinnings(), winnings / finals);
+			}
+			
+			//A journaled deal keeps the offer actually made, whatever the banker
+			Path journal = Files.createTempDirectory("journal");
+			Path converted = Files.createTempDirectory("trajectories");
+			GameJournal gameJournal = new GameJournal(journal.toString());
+			DealGame dealt = new DealGame(GameVariant.STANDARD, null, new MemoryHighScoreStore());
+			dealt.setBanker(BankerStrategy.parse("table:0.5", 0.1));
+			dealt.setJournal(gameJournal);
+			dealt.selectBox(0);
+			dealt.openBoxes(new int[] {1, 2, 3, 4, 5, 6}, null);
+			dealt.offerShown(dealt.getCurrentOffer());
+			dealt.dealDecided(true);
+			gameJournal.close();
+			try (TrajectoryWriter writer = new TrajectoryWriter(converted.toString())) {
+				System.out.printf("   Expected: %d\tActual: %d\n", 1, writer.appendJournal(journal.toString()));
+			}
+			try (TrajectoryReader reader = new TrajectoryReader(converted.toString())) {
+				ByteBuffer events = reader.column(0, TrajectoryWriter.EVENT);
+				double deal = 0, winnings = 0;
+				for (int row = 0; row < reader.getRowCount(0); row++) {
+					double amount = reader.column(0, TrajectoryWriter.AMOUNT).asDoubleBuffer().get(row);
+					if (events.get(row) == TrajectoryWriter.DEAL) {
+						deal = amount;
+					} else if (events.get(row) == TrajectoryWriter.FINAL) {
+						winnings = amount;
+					}
+				}
+				System.out.printf("   Expected: %.2f\tActual: %.2f\n", 85456.25, deal);
+				System.out.printf("   Expected: %.2f\tActual: %.2f\n", 85456.25, winnings);
+			}
+			
+			//A variant with more rounds than a trajectory row can hold is refused
+			double[] values = new double[GameTrajectory.MAX_ROUND + 3];
+			int[] rounds = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = i + 1;
+				rounds[i] = i == 0 ? 0 : 1;
+			}
+			SimulationEngine longGame = new SimulationEngine(PlayerPolicy.threshold(0.8),
+			                                                 new GameVariant("long", values, rounds, 0.1));
+			String refused = "recorded";
+			try (TrajectoryWriter writer = new TrajectoryWriter(converted.toString())) {
+				longGame.setTrajectoryWriter(writer);
+			} catch (IllegalArgumentException e) {
+				refused = "refused";
+			}
+			System.out.printf("   Expected: %s\tActual: %s\n", "refused", refused);
+			
+			for (Path directory : new Path[] {first, second, journal, converted}) {
+				try (var files = Files.list(directory)) {
+					for (Path file : (Iterable<Path>) files::iterator) {
+						Files.delete(file);
+					}
+				}
+				Files.delete(directory);
+			}
+		} catch (IOException e) {
+			System.out.println("   Error writing trajectories " + e);
+		}
+	}
+	
+	//Test the StrategyTournament ranks strategies by their paired comparisons
+	public void testStrategyTournament() {
+		System.out.println("testStrategyTournament()");
+		
+		//0.5 is never separated from its twin, so it plays every game and
+		//averages over far more of them than the two it loses to
+		StrategyTournament tournament = new StrategyTournament(GameVariant.STANDARD);
+		for (double threshold : new double[] {0.5, 0.5, 1.2, 0.9}) {
+			tournament.addEntrant(Double.toString(threshold), PlayerPolicy.threshold(threshold),
+			                      GameVariant.STANDARD.getBanker());
+		}
+		tournament.run(100000, 5, StrategyTournament.DEFAULT_ALPHA);
+		System.out.printf("   Expected: %d\tActual: %d\n", 3, tournament.getWins(2));
+		System.out.printf("   Expected: %d\tActual: %d\n", 2, tournament.getWins(3));
+		System.out.printf("   Expected: %d\tActual: %d\n", 0, tournament.getWins(0));
+		System.out.printf("   Expected: %d\tActual: %d\n", 0, tournament.getDecidedAt(0, 1));
+		String[] standings = tournament.toString().split("\n");
+		System.out.printf("   Expected: %s\tActual: %s\n", "1.2", standings[1].split("\\s+")[1]);
+		System.out.printf("   Expected: %s\tActual: %s\n", "0.9", standings[2].split("\\s+")[1]);
+	}
+	
+	//Test the QuantileSketch accuracy, merging and empty sketches
+	public void testQuantileSketch() {
+		System.out.println("testQuantileSketch()");
+		
+		//Every quantile is within the relative accuracy of the exact one
+		SplittableRandom rand = new SplittableRandom(21);
+		QuantileSketch sketch = new QuantileSketch();
+		double[] exact = new double[100000];
+		for (int i = 0; i < exact.length; i++) {
+			exact[i] = Math.exp(rand.nextDouble() * 14);
+			sketch.record(exact[i]);
+		}
+		Arrays.sort(exact);
+		boolean accurate = true;
+		for (double q : new double[] {0.01, 0.25, 0.5, 0.9, 0.99, 0.999}) {
+			double expected = exact[(int) Math.ceil(q * exact.length) - 1];
+			accurate &= Math.abs(sketch.getQuantile(q) - expected) <= QuantileSketch.RELATIVE_ACCURACY * expected;
+		}
+		System.out.printf("   Expected: %s\tActual: %s\n", true, accurate);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", exact[exact.length - 1], sketch.getQuantile(1));
+		
+		//Sketches with no buckets in common merge either way round into
+		//the sketch of all their values
+		QuantileSketch low = new QuantileSketch(), high = new QuantileSketch(), all = new QuantileSketch();
+		for (int i = 1; i <= 1000; i++) {
+			low.record(i);
+			high.record(i * 1000000.0);
+			all.record(i);
+			all.record(i * 1000000.0);
+		}
+		low.record(0);
+		all.record(0);
+		QuantileSketch lowFirst = copy(low).merge(high), highFirst = copy(high).merge(low);
+		boolean same = lowFirst.getCount() == all.getCount() && highFirst.getCount() == all.getCount();
+		for (double q : new double[] {0, 0.001, 0.25, 0.5, 0.75, 1}) {
+			same &= lowFirst.getQuantile(q) == all.getQuantile(q) && highFirst.getQuantile(q) == all.getQuantile(q);
+		}
+		System.out.printf("   Expected: %s\tActual: %s\n", true, same);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 0.0, highFirst.getMin());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 1.0e9, highFirst.getMax());
+		
+		//An empty sketch has no quantiles and changes nothing it is merged with
+		QuantileSketch empty = new QuantileSketch();
+		System.out.printf("   Expected: %s\tActual: %s\n", true, Double.isNaN(empty.getQuantile(0.5)));
+		System.out.printf("   Expected: %s\tActual: %s\n", true, Double.isNaN(copy(empty).merge(empty).getQuantile(0.5)));
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", low.getQuantile(0.5), copy(low).merge(empty).getQuantile(0.5));
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", low.getQuantile(0.5), copy(empty).merge(low).getQuantile(0.5));
+		System.out.printf("   Expected: %d\tActual: %d\n", 0, copy(empty).getBucketCount());
+	}
+	
+	/**
+	 * copies a sketch through writeTo and readFrom
+	 * @param sketch the sketch
+	 * @return the copy
+	 */
+	private static QuantileSketch copy(QuantileSketch sketch) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			sketch.writeTo(new DataOutputStream(bytes));
+			return QuantileSketch.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	//Test SimulationResult only reads back sketches that match its rounds
+	public void testSimulationResult() {
+		System.out.println("testSimulationResult()");
+		
+		//A result read back as written merges into another
+		SimulationResult merged = new SimulationResult();
+		try {
+			merged.merge(SimulationResult.readFrom(resultStream(DealGame.NUM_ROUNDS, DealGame.NUM_ROUNDS,
+			                                                    SimulationResult.BOX_VALUE_DECADES)));
+			System.out.printf("   Expected: %d\tActual: %d\n", 1, merged.getGames());
+		} catch (IOException e) {
+			System.out.println("   Error reading a result " + e);
+		}
+		
+		//Too many deal round or box value sketches are refused on reading
+		int[][] lengths = {{DealGame.NUM_ROUNDS + 1, SimulationResult.BOX_VALUE_DECADES},
+		                   {DealGame.NUM_ROUNDS, SimulationResult.BOX_VALUE_DECADES + 1}};
+		for (int[] length : lengths) {
+			String outcome = "read";
+			try {
+				SimulationResult.readFrom(resultStream(DealGame.NUM_ROUNDS, length[0], length[1]));
+			} catch (IOException e) {
+				outcome = "refused";
+			}
+			System.out.printf("   Expected: %s\tActual: %s\n", "refused", outcome);
+		}
+		System.out.printf("   Expected: %d\tActual: %d\n", 1, merged.getGames());
+	}
+	
+	/**
+	 * writes a result of one game with the given array lengths, as writeTo would
+	 * @param rounds the number of rounds counted
+	 * @param dealSketches the number of deal round sketches
+	 * @param decades the number of box value sketches
+	 * @return the stream to read it from
+	 */
+	private static DataInputStream resultStream(int rounds, int dealSketches, int decades) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeLong(1);
+			out.writeDouble(10);
+			out.writeDouble(100);
+			out.writeDouble(10);
+			out.writeDouble(10);
+			out.writeLong(0);
+			out.writeLong(1);
+			out.writeInt(rounds);
+			for (int i = 0; i < rounds; i++) {
+				out.writeLong(i == 0 ? 1 : 0);
+			}
+			QuantileSketch winnings = new QuantileSketch();
+			winnings.record(10);
+			winnings.writeTo(out);
+			for (int length : new int[] {dealSketches, decades}) {
+				out.writeInt(length);
+				for (int i = 0; i < length; i++) {
+					out.writeBoolean(i == 0);
+					if (i == 0) {
+						winnings.writeTo(out);
+					}
+				}
+			}
+			return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	//Test the getNextOffers method and Javadoc
+	public void testGetNextOffers() {
+		setUp();
+		System.out.println("testGetNextOffers()");
+		
+		//Finish the first round by opening boxes 1 to 6, then price
+		//opening the five values after them or the five largest next round
+		game.selectBox(0);
+		for (int i = 1; i <= 6; i++) {
+			game.selectBox(i);
+		}
+		long[] candidates = {0x1fL << 7, 0x1fL << 21};
+		double[] offers = new double[candidates.length];
+		game.getNextOffers(candidates, offers);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 45556.67, offers[0]);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 6243.33, offers[1]);
+		
+		//A batch big enough for the subset tables prices the same two
+		//candidates alike, also the second time the tables are built
+		long[] batch = new long[512];
+		for (int i = 0; i < batch.length; i++) {
+			batch[i] = candidates[i % 2];
+		}
+		double[] batchOffers = new double[batch.length];
+		game.getNextOffers(batch, batchOffers);
+		game.getNextOffers(batch, batchOffers);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 45556.67, batchOffers[510]);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 6243.33, batchOffers[511]);
+	}
+	
+	//Test that the scalar, unrolled and vector API kernels of MaskedSums agree
+	public void testMaskedSums() {
+		System.out.println("testMaskedSums()");
+		
+		//Whole dollar values below 10,000 keep every sum exact, so the
+		//kernels must agree to the bit whatever order they add in
+		SplittableRandom rand = new SplittableRandom(17);
+		double[] values = new double[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = rand.nextInt(10000);
+		}
+		boolean vector = true;
+		for (int percentOpen : new int[] {10, 50, 90}) {
+			long[] openMask = new long[(values.length + 63) / 64];
+			for (int i = 0; i < values.length; i++) {
+				if (rand.nextInt(100) < percentOpen) {
+					openMask[i / 64] |= 1L << i;
+				}
+			}
+			double[] scalar = new double[3], other = new double[3];
+			MaskedSums.closedSumsScalar(values, openMask, scalar);
+			MaskedSums.closedSumsUnrolled(values, openMask, other);
+			System.out.printf("   Expected: %s\tActual: %s\n", true, Arrays.equals(scalar, other));
+			try {
+				MaskedSums.closedSumsVector(values, openMask, other);
+				System.out.printf("   Expected: %s\tActual: %s\n", true, Arrays.equals(scalar, other));
+			} catch (UnsupportedOperationException e) {
+				vector = false;
+			}
+		}
+		
+		//Price a batch that does not fill the last vector on a board
+		//with some boxes already open, which every candidate ignores
+		double[] board = Arrays.copyOf(values, DealGame.NUM_BOXES);
+		long closed = ~(1L << 3 | 1L << 11) & ((1L << board.length) - 1);
+		long[] candidates = new long[1001];
+		for (int c = 0; c < candidates.length; c++) {
+			candidates[c] = rand.nextLong() & rand.nextLong();
+		}
+		candidates[0] = -1L;
+		double[] scalar = new double[candidates.length], other = new double[candidates.length];
+		MaskedSums.offersScalar(board, closed, candidates, 0.4, scalar);
+		MaskedSums.offersUnrolled(board, closed, candidates, 0.4, other,
+		                          new double[MaskedSums.subsetTableSize(board.length)]);
+		System.out.printf("   Expected: %s\tActual: %s\n", true, Arrays.equals(scalar, other));
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 0.0, other[0]);
+		try {
+			Arrays.fill(other, -1);
+			MaskedSums.offersVector(board, closed, candidates, 0.4, other);
+			System.out.printf("   Expected: %s\tActual: %s\n", true, Arrays.equals(scalar, other));
+		} catch (UnsupportedOperationException e) {
+			vector = false;
+		}
+		if (!vector) {
+			System.out.println("   The vector kernels need the Maven build and --add-modules jdk.incubator.vector");
+		}
+	}
+	
+	//Test the getNextOfferDistribution method and Javadoc
+	public void testGetNextOfferDistribution() {
+		setUp();
+		System.out.println("testGetNextOfferDistribution()");
+		
+		//Finish the first round, then check the next round's offers
+		//against every set of five of the 20 boxes left, found by brute force
+		game.selectBox(0);
+		game.openBoxes(new int[] {1, 2, 3, 4, 5, 6}, null);
+		OfferDistribution distribution = game.getNextOfferDistribution();
+		double[] remaining = new double[20];
+		remaining[0] = DealGame.BOX_VALUES[0];
+		System.arraycopy(DealGame.BOX_VALUES, 7, remaining, 1, 19);
+		double total = 0;
+		for (double value : remaining) {
+			total += value;
+		}
+		long count = 0, rises = 0;
+		double sum = 0;
+		for (int mask = 0; mask < 1 << remaining.length; mask++) {
+			if (Integer.bitCount(mask) != 5) {
+				continue;
+			}
+			double left = total;
+			for (int i = 0; i < remaining.length; i++) {
+				if ((mask & 1 << i) != 0) {
+					left -= remaining[i];
+				}
+			}
+			double offer = DealGame.calculateOffer(left / 15, 2);
+			count++;
+			sum += offer;
+			if (offer > game.getCurrentOffer()) {
+				rises++;
+			}
+		}
+		System.out.printf("   Expected: %d\tActual: %d\n", count, distribution.getOutcomes());
+		System.out.printf("   Expected: %.4f\tActual: %.4f\n", sum / count, distribution.getMean());
+		System.out.printf("   Expected: %.6f\tActual: %.6f\n", (double) rises / count,
+		                  distribution.getProbabilityOfRise());
+		
+		//A board with too many subsets to enumerate is refused, even
+		//when the count does not fit in a long
+		for (int boxes : new int[] {40, 200}) {
+			try {
+				new OfferDistribution(new double[boxes], boxes / 2, 2, 0);
+				System.out.printf("   Expected: %s\tActual: %s\n", "refused", "enumerated");
+			} catch (IllegalArgumentException e) {
+				System.out.printf("   Expected: %s\tActual: %s\n", "refused", "refused");
+			}
+		}
+	}
+	
+	//Test the openBoxes and playRound methods and Javadoc
+	public void testOpenBoxes() {
+		setUp();
+		System.out.println("testOpenBoxes()");
+		
+		//Open two boxes, then finish the round with the other four,
+		//which returns the offer that testGetCurrentOffer expects
+		game.selectBox(0);
+		double[] revealed = new double[4];
+		double offer = game.openBoxes(new int[] {1, 2}, revealed);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 5.0, revealed[1]);
+		System.out.printf("   Expected: %s\tActual: %s\n", true, Double.isNaN(offer));
+		offer = game.playRound(new int[] {6, 5, 4, 3}, revealed);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 75.0, revealed[0]);
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 6, game.getTotalBoxesOpened());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 17091.25, offer);
+		
+		//Opening the player's box is refused and opens nothing
+		game.startNextRound();
+		try {
+			game.openBoxes(new int[] {7, 0}, null);
+			System.out.println("   Opening the player's box was allowed");
+		} catch (IllegalArgumentException e) {
+			System.out.printf("   Expected: %s\tActual: %s\n", false, game.isBoxOpen(7));
+		}
+	}
+	
+	//Test the fork, apply and undo methods and Javadoc
+	public void testFork() {
+		setUp();
+		System.out.println("testFork()");
+		
+		//Finish the first round, then look ahead on a fork by opening
+		//the $1,000,000 box, which begins round 2
+		game.selectBox(0);
+		for (int i = 1; i <= 6; i++) {
+			game.selectBox(i);
+		}
+		DealGame fork = game.fork();
+		fork.apply(25);
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 2, fork.getRound());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 25455.26, fork.getCurrentOffer());
+		
+		//The original game is unchanged, and undoing the move restores the fork
+		System.out.printf("   Expected: %s\tActual: %s\n", false, game.isBoxOpen(25));
+		fork.undo();
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 1, fork.getRound());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", game.getCurrentOffer(), fork.getCurrentOffer());
+	}
+	
+	//Test the getEvents method and Javadoc
+	public void testEvents() {
+		setUp();
+		System.out.println("testEvents()");
+		
+		//Collect every event of the first round, with the offer turned down
+		List<GameEvent> events = new ArrayList<GameEvent>();
+		GameEvent.Subscriber subscriber = new GameEvent.Subscriber() {
+			protected void onEvent(GameEvent event) {
+				events.add(event);
+			}
+		};
+		game.getEvents().subscribe(subscriber);
+		game.selectBox(0);
+		game.openBoxes(new int[] {1, 2, 3, 4, 5, 6}, null);
+		game.offerShown(game.getCurrentOffer());
+		game.dealDecided(false);
+		game.startNextRound();
+		game.closeEvents();
+		try {
+			subscriber.awaitCompletion(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			System.out.println("   Interrupted waiting for events");
+		}
+		
+		//The choice, six boxes, the end of the round, the offer, the
+		//answer and the start of round 2
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 11, events.size());
+		System.out.printf("   Expected: %d\t\tActual: %d\n", GameEvent.BOX_CHOSEN, events.get(0).getType());
+		
+		//The chosen box does not give away its value
+		System.out.printf("   Expected: %d\t\tActual: %d\n", -1, events.get(0).getOrdinal());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 0.0, events.get(0).getValue());
+		
+		//The opened box carries its value and the boxes left in the round
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 1.0, events.get(1).getValue());
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 5, events.get(1).getBoxesLeft());
+		
+		//The end of the round carries the offer, and round 2 has 5 boxes
+		System.out.printf("   Expected: %d\t\tActual: %d\n", GameEvent.ROUND_ENDED, events.get(7).getType());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 17091.25, events.get(7).getAmount());
+		System.out.printf("   Expected: %d\t\tActual: %d\n", GameEvent.ROUND_STARTED, events.get(10).getType());
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 5, events.get(10).getBoxesLeft());
+		
+		//A deal turned down does not give away the player's box either
+		System.out.printf("   Expected: %d\t\tActual: %d\n", GameEvent.DEAL_DECIDED, events.get(9).getType());
+		System.out.printf("   Expected: %d\t\tActual: %d\n", -1, events.get(9).getOrdinal());
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 0.0, events.get(9).getValue());
+		
+		//A subscriber that stalls is cut off once its buffer is full, and
+		//neither its game nor another game waits on it after that
+		double[] values = new double[2000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i + 1;
+		}
+		GameVariant variant = new GameVariant("slow", values, new int[] {0, values.length - 2, 1}, 0.1);
+		int[] opened = new int[values.length - 2];
+		for (int i = 0; i < opened.length; i++) {
+			opened[i] = i + 1;
+		}
+		CountDownLatch stall = new CountDownLatch(1);
+		GameEvent.Subscriber stalled = new GameEvent.Subscriber() {
+			protected void onEvent(GameEvent event) {
+				try {
+					stall.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		DealGame stalledGame = new DealGame(variant, null, new MemoryHighScoreStore());
+		stalledGame.getEvents().subscribe(stalled);
+		long start = System.nanoTime();
+		stalledGame.selectBox(0);
+		stalledGame.openBoxes(opened, null);
+		long millis = (System.nanoTime() - start) / 1000000;
+		stalledGame.closeEvents();
+		System.out.printf("   Expected: %s\tActual: %s\n", true, stalled.hasFallenBehind());
+		System.out.printf("   Expected: %s\tActual: %s\n", true, stalledGame.getDroppedEvents() > 0);
+		System.out.printf("   Expected: %s\tActual: %s\n", true, millis < 10 * DealGame.EVENT_OFFER_TIMEOUT_MILLIS);
+		
+		DealGame other = new DealGame(variant, null, new MemoryHighScoreStore());
+		long[] received = new long[1];
+		GameEvent.Subscriber counting = new GameEvent.Subscriber() {
+			protected void onEvent(GameEvent event) {
+				received[0]++;
+			}
+		};
+		other.getEvents().subscribe(counting);
+		other.selectBox(0);
+		other.openBoxes(opened, null);
+		other.closeEvents();
+		try {
+			counting.awaitCompletion(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			System.out.println("   Interrupted waiting for events");
+		}
+		stall.countDown();
+		System.out.printf("   Expected: %d\tActual: %d\n", values.length, received[0]);
+		System.out.printf("   Expected: %d\t\tActual: %d\n", 0, other.getDroppedEvents());
+	}
+	
+	//Test the setBanker method and Javadoc
+	public void testSetBanker() {
+		setUp();
+		System.out.println("testSetBanker()");
+		
+		//Finish the first round, then switch to a banker offering
+		//half the average in every round
+		game.selectBox(0);
+		game.openBoxes(new int[] {1, 2, 3, 4, 5, 6}, null);
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 17091.25, game.getCurrentOffer());
+		game.setBanker(BankerStrategy.parse("table:0.5", 0.1));
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 85456.25, game.getCurrentOffer());
+		
+		//A banker with no risk aversion offers what the standard one does
+		game.setBanker(BankerStrategy.riskAverse(0.1, 0));
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 17091.25, game.getCurrentOffer());
+		
+		//A game with a banker of its own is kept off the high score
+		DealGame generous = new DealGame(null, new MemoryHighScoreStore());
+		generous.setBanker(BankerStrategy.parse("average:1000", 0.1));
+		System.out.printf("   Expected: %s\tActual: %s\n", false, generous.isNewHighScore(1e12));
+		System.out.printf("   Expected: %.2f\tActual: %.2f\n", 0.0, generous.getHighScore());
 	}
 	
 	/**
@@ -226,7 +1280,27 @@ public class DealGameTest {
 		test.testGetCurrentOffer();
 		test.testGetHighScore();
 		test.testGetValueInBox();
+		test.testGetLastBoxIndex();
 		test.testIsNewHighScore();
+		test.testShuffle();
+		test.testSnapshot();
+		test.testLargeVariantJournal();
+		test.testJournalDamage();
+		test.testGameVariant();
+		test.testPolicySolver();
+		test.testSimulationCoordinator();
+		test.testLeaderboard();
+		test.testTrajectories();
+		test.testStrategyTournament();
+		test.testQuantileSketch();
+		test.testSimulationResult();
+		test.testGetNextOffers();
+		test.testMaskedSums();
+		test.testGetNextOfferDistribution();
+		test.testOpenBoxes();
+		test.testFork();
+		test.testSetBanker();
+		test.testEvents();
 	}
 
 }
@@ -0,0 +1,79 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+/**
+ * keeps the high score in a text file, reading and writing it on every call.
+ * writes go to a temporary file that is synced and renamed over the old one,
+ * so a crash never leaves a half written score behind
+ */
+public class FileHighScoreStore implements HighScoreStore {
+
+  /** the high score file */
+  private final Path file;
+  
+  /**
+   * creates a store for a given file
+   * @param fileName name of the high score file
+   */
+  public FileHighScoreStore(String fileName) {
+    file = Paths.get(fileName);
+  }
+  
+  /** @return the high score in the file, or 0 if there is none */
+  public double getHighScore() {
+    return read(file);
+  }
+  
+  /**
+   * writes the score to the file if it beats the one stored there
+   * @param score the score of a finished game
+   * @return whether the score was a new high score
+   */
+  public synchronized boolean submit(double score) {
+    if (score <= read(file))
+      return false;
+    write(file, score);
+    return true;
+  }
+  
+  /**
+   * reads a high score file
+   * @param file the file
+   * @return the score in it, or 0 if the file is missing or unreadable
+   */
+  static double read(Path file) {
+    try {
+      return Double.parseDouble(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim());
+    }
+    catch (IOException | NumberFormatException e) {
+      return 0;
+    }
+  }
+  
+  /**
+   * replaces the contents of a high score file, syncing the new contents
+   * before atomically renaming them into place
+   * @param file the file
+   * @param score the score to write
+   */
+  static void write(Path file, double score) {
+    Path dir = file.toAbsolutePath().getParent();
+    Path temp = dir.resolve(file.getFileName() + ".tmp");
+    
+    try {
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                              StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer bytes = ByteBuffer.wrap((score + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII));
+        while (bytes.hasRemaining())
+          out.write(bytes);
+        out.force(true);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not write high score file " + file, e);
+    }
+  }
+}
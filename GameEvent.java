@@ -0,0 +1,205 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+/**
+ * something that happened in a DealGame, as published to the subscribers
+ * of DealGame.getEvents. an event is immutable and carries what a
+ * subscriber needs to show or record it without calling back into the game,
+ * which may have moved on by the time the event arrives
+ */
+public class GameEvent {
+
+  /** These are the event types */
+  public static final byte BOX_CHOSEN = 1, BOX_OPENED = 2, ROUND_ENDED = 3, ROUND_STARTED = 4, OFFER_MADE = 5,
+                           DEAL_DECIDED = 6, SWAP_DECIDED = 7, NEW_HIGH_SCORE = 8;
+
+  /** This is how many events a Subscriber asks for at a time */
+  public static final int REQUEST_BATCH = 64;
+
+  /** the event type */
+  private final byte type;
+
+  /** the game the event happened in */
+  private final long gameId;
+
+  /** the round the event happened in */
+  private final int round;
+
+  /** the box chosen, opened or taken home, or -1 */
+  private final int box;
+
+  /** the ordinal of the box's value, or -1 for the player's box while the game goes on */
+  private final int ordinal;
+
+  /** the value in the box, or 0 for the player's box while the game goes on */
+  private final double value;
+
+  /** the offer or score, or 0 */
+  private final double amount;
+
+  /** whether the deal was taken or the boxes swapped */
+  private final boolean accepted;
+
+  /** the boxes left to open in the round after the event */
+  private final int boxesLeft;
+
+  /**
+   * creates an event
+   * @param type the event type
+   * @param gameId the game
+   * @param round the round
+   * @param box the box, or -1
+   * @param ordinal the ordinal of the box's value, or -1
+   * @param value the value in the box, or 0
+   * @param amount the offer or score, or 0
+   * @param accepted whether the deal was taken or the boxes swapped
+   * @param boxesLeft the boxes left to open in the round
+   */
+  GameEvent(byte type, long gameId, int round, int box, int ordinal, double value, double amount, boolean accepted,
+            int boxesLeft) {
+    this.type = type;
+    this.gameId = gameId;
+    this.round = round;
+    this.box = box;
+    this.ordinal = ordinal;
+    this.value = value;
+    this.amount = amount;
+    this.accepted = accepted;
+    this.boxesLeft = boxesLeft;
+  }
+
+  /** @return the event type */
+  public byte getType() {
+    return type;
+  }
+
+  /** @return the game the event happened in */
+  public long getGameId() {
+    return gameId;
+  }
+
+  /** @return the round the event happened in */
+  public int getRound() {
+    return round;
+  }
+
+  /** @return the box chosen, opened or taken home, the player's box for a deal, or -1 */
+  public int getBox() {
+    return box;
+  }
+
+  /** @return the ordinal of the box's value, or -1, as for the player's box before the game is over */
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  /** @return the value in the box, or 0, as for the player's box before the game is over */
+  public double getValue() {
+    return value;
+  }
+
+  /** @return the offer for a round, offer or deal, the score for a high score, or 0 */
+  public double getAmount() {
+    return amount;
+  }
+
+  /** @return whether the deal was taken or the boxes swapped */
+  public boolean isAccepted() {
+    return accepted;
+  }
+
+  /** @return the boxes left to open in the round after the event */
+  public int getBoxesLeft() {
+    return boxesLeft;
+  }
+
+  /** @return a description of the event */
+  public String toString() {
+    return "GameEvent[type " + type + ", round " + round + ", box " + box + ", value " + value + ", amount " + amount +
+      ", accepted " + accepted + ", left " + boxesLeft + "]";
+  }
+
+  /**
+   * a subscriber that takes events a batch at a time, so the publisher's
+   * buffer for it stays bounded, and hands them to onEvent one by one on
+   * the publisher's thread. awaitCompletion waits until the game's events
+   * are closed and every one has been handled. a subscriber that falls too
+   * far behind is cut off by the game and misses the rest of its events
+   */
+  public abstract static class Subscriber implements Flow.Subscriber<GameEvent> {
+
+    /** the subscription, once subscribed */
+    private volatile Flow.Subscription subscription;
+
+    /** whether the game cut this subscriber off for falling behind */
+    private volatile boolean fellBehind;
+
+    /** the events handled since the last request */
+    private int handled;
+
+    /** released when the stream ends */
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    /**
+     * handles one event
+     * @param event the event
+     */
+    protected abstract void onEvent(GameEvent event);
+
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (fellBehind)
+        subscription.cancel();
+      else
+        subscription.request(REQUEST_BATCH);
+    }
+
+    public void onNext(GameEvent event) {
+      onEvent(event);
+      // ask for more halfway through a batch, so the publisher does not wait on us
+      if (++handled == REQUEST_BATCH / 2) {
+        handled = 0;
+        subscription.request(REQUEST_BATCH / 2);
+      }
+    }
+
+    public void onError(Throwable throwable) {
+      System.err.println("Game event subscriber failed " + throwable);
+      completed.countDown();
+    }
+
+    public void onComplete() {
+      completed.countDown();
+    }
+
+    /** stops taking events */
+    public void cancel() {
+      Flow.Subscription s = subscription;
+      if (s != null)
+        s.cancel();
+      completed.countDown();
+    }
+
+    /** cuts this subscriber off after the game had to drop an event for it */
+    void fellBehind() {
+      fellBehind = true;
+      cancel();
+    }
+
+    /** @return whether the game cut this subscriber off, so it missed events */
+    public boolean hasFallenBehind() {
+      return fellBehind;
+    }
+
+    /**
+     * waits for every event to be handled after the game's events are closed
+     * @param timeout how long to wait
+     * @param unit the unit of timeout
+     * @return whether the stream ended in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+      return completed.await(timeout, unit);
+    }
+  }
+}
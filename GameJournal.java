@@ -0,0 +1,329 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+/**
+ * appends every state change of every game to memory-mapped segment files
+ * in a directory, as compact binary records. each game starts with a full
+ * snapshot, and every CHECKPOINT_INTERVAL games the position of the game's
+ * start is written to an index file, so a reader can jump close to any
+ * game without replaying the journal from the beginning. each record ends
+ * with a checksum, so a record torn by a crash is found rather than
+ * replayed, and a journal opened again continues from the last whole record.
+ * only one process may write to a journal directory at a time
+ */
+public class GameJournal implements Closeable {
+
+  /** These are the record types */
+  public static final byte START = 1, SELECT = 2, NEXT_ROUND = 3, OFFER = 4, DEAL = 5, SWAP = 6;
+  
+  /**
+   * This is the size of a record header: an int length, so a snapshot of a
+   * board of any size fits in one record, the type, the flag, two spare
+   * bytes and the game id
+   */
+  public static final int HEADER_SIZE = 16;
+  
+  /** This is the size of the CRC-32C that ends every record, taken over the rest of the record */
+  public static final int CHECKSUM_SIZE = 4;
+  
+  /** This is the size of a new segment file in bytes */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+  
+  /** This is the number of games between checkpoints in the index */
+  public static final int CHECKPOINT_INTERVAL = 1024;
+  
+  /** This is the size of a checkpoint: game number, segment number and offset */
+  public static final int CHECKPOINT_SIZE = 16;
+  
+  /** This is the name of the checkpoint index file */
+  public static final String INDEX_FILE = "checkpoints.idx";
+  
+  /** the journal directory */
+  private final Path directory;
+  
+  /** the size of each segment file */
+  private final int segmentSize;
+  
+  /** the segment being appended to */
+  private MappedByteBuffer segment;
+  
+  /** a view of the segment to checksum records through */
+  private ByteBuffer checksummed;
+  
+  /** the checksum of the record being written */
+  private final CRC32C checksum = new CRC32C();
+  
+  /** the offset of the record being written */
+  private int recordStart;
+  
+  /** the number of the segment being appended to */
+  private int segmentNumber;
+  
+  /** the number of games started in the journal */
+  private long gamesStarted;
+  
+  /** the checkpoint index */
+  private final FileChannel index;
+  
+  /** scratch space for writing a checkpoint */
+  private final ByteBuffer checkpoint = ByteBuffer.allocate(CHECKPOINT_SIZE).order(ByteOrder.nativeOrder());
+  
+  /**
+   * opens a journal directory for appending, creating it if needed
+   * @param directoryName the journal directory
+   */
+  public GameJournal(String directoryName) {
+    this(directoryName, DEFAULT_SEGMENT_SIZE);
+  }
+  
+  /**
+   * opens a journal directory for appending, creating it if needed, and
+   * continues after the last record already in it
+   * @param directoryName the journal directory
+   * @param segmentSize the size of new segment files
+   */
+  public GameJournal(String directoryName, int segmentSize) {
+    directory = Paths.get(directoryName);
+    this.segmentSize = segmentSize;
+    try {
+      Files.createDirectories(directory);
+      index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+      
+      // count the games after the last checkpoint to find where to continue, after the last whole record
+      try (JournalReader reader = new JournalReader(directoryName)) {
+        gamesStarted = reader.seekToCheckpoint(Long.MAX_VALUE);
+        while (reader.next()) {
+          if (reader.getType() == START)
+            ++gamesStarted;
+        }
+        segmentNumber = Math.max(0, reader.getSegmentNumber());
+        openSegment(reader.getSegmentNumber() < 0 ? 0 : reader.getPosition(), segmentSize);
+      }
+      index.position(index.size());
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not open journal " + directoryName, e);
+    }
+  }
+  
+  /**
+   * gets the path of a segment file
+   * @param directory the journal directory
+   * @param number the segment number
+   * @return the path
+   */
+  static Path segmentPath(Path directory, int number) {
+    return directory.resolve(String.format("segment-%06d.jnl", number));
+  }
+  
+  /**
+   * maps the current segment for appending
+   * @param position where the next record goes
+   * @param size the least size of the segment
+   * @throws IOException if the segment cannot be mapped
+   */
+  private void openSegment(int position, int size) throws IOException {
+    try (FileChannel channel = FileChannel.open(segmentPath(directory, segmentNumber), StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+    }
+    segment.order(ByteOrder.nativeOrder());
+    segment.position(position);
+    checksummed = segment.duplicate();
+  }
+  
+  /**
+   * makes room for a record, rolling to a new segment if the current one
+   * is full, and writes its header. the record's data follows, then endRecord
+   * @param dataSize the size of the record's data
+   * @param type the record type
+   * @param flag the record's one byte argument
+   * @param gameId the game the record belongs to
+   */
+  private void beginRecord(int dataSize, byte type, int flag, long gameId) {
+    int length = HEADER_SIZE + dataSize + CHECKSUM_SIZE;
+    // keep room for the zero length that marks the end of the segment
+    if (segment.remaining() < length + Integer.BYTES) {
+      try {
+        segment.force();
+        ++segmentNumber;
+        // a snapshot of a huge board gets a segment big enough to hold it
+        openSegment(0, Math.max(segmentSize, length + Integer.BYTES));
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException("Could not roll journal segment", e);
+      }
+    }
+    recordStart = segment.position();
+    segment.putInt(length);
+    segment.put(type);
+    segment.put((byte) flag);
+    segment.putShort((short) 0);
+    segment.putLong(gameId);
+  }
+  
+  /** ends the record being written with its checksum, and marks the end of the segment after it */
+  private void endRecord() {
+    checksummed.limit(segment.position()).position(recordStart);
+    checksum.reset();
+    checksum.update(checksummed);
+    segment.putInt((int) checksum.getValue());
+    // a zero length ends the segment, even over what is left of a record torn before a restart
+    segment.putInt(segment.position(), 0);
+  }
+  
+  /**
+   * records the start of a game with a snapshot of its state
+   * @param game the game
+   */
+  public synchronized void recordStart(DealGame game) {
+    beginRecord(game.snapshotSize(), START, 0, game.getGameId());
+    int position = recordStart;
+    game.writeTo(segment);
+    endRecord();
+    
+    if (gamesStarted % CHECKPOINT_INTERVAL == 0) {
+      checkpoint.clear();
+      checkpoint.putLong(gamesStarted).putInt(segmentNumber).putInt(position).flip();
+      try {
+        while (checkpoint.hasRemaining())
+          index.write(checkpoint);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException("Could not write journal checkpoint", e);
+      }
+    }
+    ++gamesStarted;
+  }
+  
+  /**
+   * records a box being chosen or opened
+   * @param gameId the game
+   * @param index the box index
+   */
+  public synchronized void recordSelect(long gameId, int index) {
+    beginRecord(Integer.BYTES, SELECT, 0, gameId);
+    segment.putInt(index);
+    endRecord();
+  }
+  
+  /**
+   * records several boxes being opened at once, as consecutive records
+   * @param gameId the game
+   * @param indices the box indices
+   */
+  public synchronized void recordSelects(long gameId, int[] indices) {
+    for (int index : indices) {
+      beginRecord(Integer.BYTES, SELECT, 0, gameId);
+      segment.putInt(index);
+      endRecord();
+    }
+  }
+  
+  /**
+   * records the start of the next round
+   * @param gameId the game
+   */
+  public synchronized void recordNextRound(long gameId) {
+    beginRecord(0, NEXT_ROUND, 0, gameId);
+    endRecord();
+  }
+  
+  /**
+   * records an offer being shown to the player
+   * @param gameId the game
+   * @param offer the offer
+   */
+  public synchronized void recordOffer(long gameId, double offer) {
+    beginRecord(Double.BYTES, OFFER, 0, gameId);
+    segment.putDouble(offer);
+    endRecord();
+  }
+  
+  /**
+   * records the player's answer to an offer
+   * @param gameId the game
+   * @param accepted whether the offer was accepted
+   */
+  public synchronized void recordDeal(long gameId, boolean accepted) {
+    beginRecord(0, DEAL, accepted ? 1 : 0, gameId);
+    endRecord();
+  }
+  
+  /**
+   * records the player's final keep or swap decision
+   * @param gameId the game
+   * @param swapped whether the player swapped boxes
+   */
+  public synchronized void recordSwap(long gameId, boolean swapped) {
+    beginRecord(0, SWAP, swapped ? 1 : 0, gameId);
+    endRecord();
+  }
+  
+  /**
+   * records a game from its event stream rather than from the game's own
+   * thread. the snapshot is written now, before subscribing, and every move
+   * after it is written as its event arrives. await the subscriber after
+   * DealGame.closeEvents before relying on the journal. a journal that
+   * falls behind is cut off, leaving the game without its end rather than
+   * with a gap in its moves
+   * @param game the game, which must not also have setJournal called
+   * @return the subscriber, to await or cancel
+   */
+  public GameEvent.Subscriber subscribe(DealGame game) {
+    recordStart(game);
+    GameEvent.Subscriber subscriber = new GameEvent.Subscriber() {
+      protected void onEvent(GameEvent event) {
+        switch (event.getType()) {
+          case GameEvent.BOX_CHOSEN:
+          case GameEvent.BOX_OPENED:
+            recordSelect(event.getGameId(), event.getBox());
+            break;
+          case GameEvent.ROUND_STARTED:
+            recordNextRound(event.getGameId());
+            break;
+          case GameEvent.OFFER_MADE:
+            recordOffer(event.getGameId(), event.getAmount());
+            break;
+          case GameEvent.DEAL_DECIDED:
+            recordDeal(event.getGameId(), event.isAccepted());
+            break;
+          case GameEvent.SWAP_DECIDED:
+            recordSwap(event.getGameId(), event.isAccepted());
+            break;
+          default:
+            break;
+        }
+      }
+    };
+    game.getEvents().subscribe(subscriber);
+    return subscriber;
+  }
+  
+  /** @return the number of games started in the journal */
+  public synchronized long getGamesStarted() {
+    return gamesStarted;
+  }
+  
+  /** writes the current segment and the index to disk */
+  public synchronized void flush() {
+    segment.force();
+    try {
+      index.force(false);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not flush journal index", e);
+    }
+  }
+  
+  /** flushes the journal and closes the index */
+  public synchronized void close() throws IOException {
+    flush();
+    index.close();
+  }
+}
@@ -0,0 +1,215 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+/**
+ * counters and latency histograms for game operations. metrics are only
+ * collected when the JVM is started with -Ddealgame.metrics=true; callers
+ * check ENABLED first, and since it is a constant the JIT removes the
+ * disabled path entirely. when enabled, every game played live subscribes a
+ * metrics subscriber to its events through DealGame.instrument, and the
+ * metrics are registered as the MBean
+ * dealgame:type=GameMetrics and can be pulled with snapshot
+ */
+public class GameMetrics implements GameMetricsMBean {
+
+  /** This is whether metrics are collected */
+  public static final boolean ENABLED = Boolean.getBoolean("dealgame.metrics");
+  
+  /** This is the JMX name the metrics are registered under */
+  public static final String OBJECT_NAME = "dealgame:type=GameMetrics";
+  
+  /** the metrics of this JVM */
+  public static final GameMetrics INSTANCE = new GameMetrics();
+  
+  static {
+    if (ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+      }
+      catch (Exception e) {
+        System.err.println("Could not register game metrics " + e);
+      }
+    }
+  }
+  
+  /** the event counters */
+  private final LongAdder gamesStarted = new LongAdder(), boxesOpened = new LongAdder(), offersMade = new LongAdder(),
+                          goodDeals = new LongAdder(), badDeals = new LongAdder();
+  
+  /** deals accepted in each round */
+  private final LongAdder[] dealsAccepted = new LongAdder[GameVariant.current().getNumRounds()];
+  
+  /** accepted offers as a percentage of the player's box value */
+  private final Log2Histogram offerToBoxPercent = new Log2Histogram();
+  
+  /** high score read and write times in nanoseconds */
+  private final Log2Histogram highScoreReads = new Log2Histogram(), highScoreWrites = new Log2Histogram();
+  
+  /** creates empty metrics */
+  private GameMetrics() {
+    for (int i = 0; i < dealsAccepted.length; ++i)
+      dealsAccepted[i] = new LongAdder();
+  }
+  
+  /** records a game starting */
+  public static void gameStarted() {
+    INSTANCE.gamesStarted.increment();
+  }
+  
+  /** records a box being opened */
+  public static void boxOpened() {
+    INSTANCE.boxesOpened.increment();
+  }
+  
+  /**
+   * records several boxes being opened at once
+   * @param count the number of boxes
+   */
+  public static void boxesOpened(int count) {
+    INSTANCE.boxesOpened.add(count);
+  }
+  
+  /** records an offer being shown to a player */
+  public static void offerMade() {
+    INSTANCE.offersMade.increment();
+  }
+  
+  /**
+   * records a deal being accepted
+   * @param round the round the deal was made in
+   * @param offer the accepted offer
+   * @param boxValue the value of the player's box
+   */
+  public static void dealAccepted(int round, double offer, double boxValue) {
+    INSTANCE.dealsAccepted[Math.min(round, INSTANCE.dealsAccepted.length - 1)].increment();
+    (offer >= boxValue ? INSTANCE.goodDeals : INSTANCE.badDeals).increment();
+    // an offer for an empty box has no percentage
+    if (boxValue > 0)
+      INSTANCE.offerToBoxPercent.record(Math.round(offer / boxValue * 100));
+  }
+  
+  /**
+   * creates a subscriber that counts a game's boxes, offers and deals from
+   * its events, off the game's thread. the player's box value only comes
+   * with a deal taken, as that ends the game
+   * @return the subscriber
+   */
+  public static GameEvent.Subscriber subscriber() {
+    return new GameEvent.Subscriber() {
+      protected void onEvent(GameEvent event) {
+        switch (event.getType()) {
+          case GameEvent.BOX_OPENED:
+            boxOpened();
+            break;
+          case GameEvent.OFFER_MADE:
+            offerMade();
+            break;
+          case GameEvent.DEAL_DECIDED:
+            if (event.isAccepted())
+              dealAccepted(event.getRound(), event.getAmount(), event.getValue());
+            break;
+          default:
+            break;
+        }
+      }
+    };
+  }
+  
+  /**
+   * records a high score read
+   * @param nanos how long it took
+   */
+  public static void highScoreRead(long nanos) {
+    INSTANCE.highScoreReads.record(nanos);
+  }
+  
+  /**
+   * records a high score write
+   * @param nanos how long it took
+   */
+  public static void highScoreWritten(long nanos) {
+    INSTANCE.highScoreWrites.record(nanos);
+  }
+  
+  public long getGamesStarted() {
+    return gamesStarted.sum();
+  }
+  
+  public long getBoxesOpened() {
+    return boxesOpened.sum();
+  }
+  
+  public long getOffersMade() {
+    return offersMade.sum();
+  }
+  
+  public long[] getDealsAcceptedByRound() {
+    long[] deals = new long[dealsAccepted.length];
+    for (int i = 0; i < deals.length; ++i)
+      deals[i] = dealsAccepted[i].sum();
+    return deals;
+  }
+  
+  public long getGoodDeals() {
+    return goodDeals.sum();
+  }
+  
+  public long getBadDeals() {
+    return badDeals.sum();
+  }
+  
+  public long getMedianOfferToBoxPercent() {
+    return offerToBoxPercent.getPercentile(0.5);
+  }
+  
+  public long getHighScoreReads() {
+    return highScoreReads.getCount();
+  }
+  
+  public double getHighScoreReadMeanNanos() {
+    return highScoreReads.getMean();
+  }
+  
+  public long getHighScoreReadP99Nanos() {
+    return highScoreReads.getPercentile(0.99);
+  }
+  
+  public long getHighScoreWrites() {
+    return highScoreWrites.getCount();
+  }
+  
+  public double getHighScoreWriteMeanNanos() {
+    return highScoreWrites.getMean();
+  }
+  
+  public long getHighScoreWriteP99Nanos() {
+    return highScoreWrites.getPercentile(0.99);
+  }
+  
+  /**
+   * reads every metric at once
+   * @return metric values by name
+   */
+  public static Map<String, Number> snapshot() {
+    GameMetrics m = INSTANCE;
+    Map<String, Number> values = new LinkedHashMap<>();
+    values.put("gamesStarted", m.getGamesStarted());
+    values.put("boxesOpened", m.getBoxesOpened());
+    values.put("offersMade", m.getOffersMade());
+    long[] deals = m.getDealsAcceptedByRound();
+    for (int i = 1; i < deals.length; ++i)
+      values.put("dealsAccepted.round" + i, deals[i]);
+    values.put("goodDeals", m.getGoodDeals());
+    values.put("badDeals", m.getBadDeals());
+    values.put("offerToBoxPercent.p50", m.getMedianOfferToBoxPercent());
+    values.put("highScoreReads", m.getHighScoreReads());
+    values.put("highScoreReads.meanNanos", m.getHighScoreReadMeanNanos());
+    values.put("highScoreReads.p99Nanos", m.getHighScoreReadP99Nanos());
+    values.put("highScoreWrites", m.getHighScoreWrites());
+    values.put("highScoreWrites.meanNanos", m.getHighScoreWriteMeanNanos());
+    values.put("highScoreWrites.p99Nanos", m.getHighScoreWriteP99Nanos());
+    return values;
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * the game metrics exposed over JMX
+ */
+public interface GameMetricsMBean {
+
+  /** @return number of games started */
+  long getGamesStarted();
+  
+  /** @return number of boxes opened */
+  long getBoxesOpened();
+  
+  /** @return number of offers shown to players */
+  long getOffersMade();
+  
+  /** @return number of deals accepted, indexed by round */
+  long[] getDealsAcceptedByRound();
+  
+  /** @return number of accepted offers worth more than the player's box */
+  long getGoodDeals();
+  
+  /** @return number of accepted offers worth less than the player's box */
+  long getBadDeals();
+  
+  /** @return median accepted offer as a percentage of the player's box value */
+  long getMedianOfferToBoxPercent();
+  
+  /** @return number of high score reads */
+  long getHighScoreReads();
+  
+  /** @return mean high score read time in nanoseconds */
+  double getHighScoreReadMeanNanos();
+  
+  /** @return 99th percentile high score read time in nanoseconds */
+  long getHighScoreReadP99Nanos();
+  
+  /** @return number of high score writes */
+  long getHighScoreWrites();
+  
+  /** @return mean high score write time in nanoseconds */
+  double getHighScoreWriteMeanNanos();
+  
+  /** @return 99th percentile high score write time in nanoseconds */
+  long getHighScoreWriteP99Nanos();
+}
@@ -0,0 +1,254 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.*;
+/**
+ * hosts many concurrent games over a simple line protocol on a local socket.
+ * each connection is served by its own thread (a virtual thread when the
+ * runtime supports them), and sessions that go unused are dropped.
+ *
+ * commands, one per line, each answered with a line starting OK or ERR:
+ * NEW [seed], ATTACH id, SELECT box, OPEN box..., BANKER spec, DEAL, NODEAL,
+ * KEEP, SWAP, STATE, HIGHSCORE, METRICS and QUIT. a session id is a random
+ * token, so only a player who was told it can ATTACH. a game dealt from a
+ * seed can be replayed, so its score goes to a store of its own rather than
+ * the shared high score. boxes are numbered from 0,
+ * OPEN opens several boxes of the round at once and BANKER picks how the
+ * session's offers are made, as read by BankerStrategy.parse, which keeps
+ * the session's winnings off the high score
+ */
+public class GameServer implements Closeable {
+
+  /** This is the port the server listens on by default */
+  public static final int DEFAULT_PORT = 7116;
+  
+  /** This is how long a session or connection may go unused, in milliseconds */
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+  
+  /** the listening socket */
+  private final ServerSocket serverSocket;
+  
+  /** This is the number of random bytes in a session id */
+  public static final int SESSION_ID_BYTES = 16;
+  
+  /** every live session by id */
+  private final ConcurrentHashMap<String, GameSession> sessions = new ConcurrentHashMap<>();
+  
+  /** the source of session ids */
+  private final SecureRandom sessionIds = new SecureRandom();
+  
+  /** runs one task per connection */
+  private final ExecutorService connections;
+  
+  /** drops idle sessions */
+  private final ScheduledExecutorService reaper;
+  
+  /** how long a session or connection may go unused */
+  private final long idleTimeoutMillis;
+  
+  /** the journal every session's moves are recorded in, or null */
+  private final GameJournal journal;
+  
+  /**
+   * starts a server on the loopback interface
+   * @param port the port to listen on, or 0 for any free port
+   * @param idleTimeoutMillis how long a session or connection may go unused
+   * @param journal the journal to record every session's moves in, or null
+   * @throws IOException if the port cannot be opened
+   */
+  public GameServer(int port, long idleTimeoutMillis, GameJournal journal) throws IOException {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.journal = journal;
+    serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    connections = newConnectionExecutor();
+    reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "session-reaper");
+      t.setDaemon(true);
+      return t;
+    });
+    long period = Math.max(1, idleTimeoutMillis / 4);
+    reaper.scheduleAtFixedRate(this::dropIdleSessions, period, period, TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * creates an executor with a virtual thread per task if the runtime has
+   * them, or a pool of daemon threads that grows with the connections
+   * @return the executor
+   */
+  private static ExecutorService newConnectionExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(null, r, "game-connection", 256 * 1024);
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+  
+  /** @return the port the server is listening on */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+  
+  /** @return the number of live sessions */
+  public int getSessionCount() {
+    return sessions.size();
+  }
+  
+  /** accepts connections until the server is closed */
+  public void serve() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        connections.execute(() -> handle(socket));
+      }
+      catch (IOException e) {
+        if (!serverSocket.isClosed())
+          System.err.println("Error accepting connection " + e);
+      }
+    }
+  }
+  
+  /**
+   * reads commands from one connection until it quits, goes idle or drops
+   * @param socket the connection
+   */
+  private void handle(Socket socket) {
+    try (socket;
+         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+         PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), true)) {
+      socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, idleTimeoutMillis));
+      GameSession session = null;
+      
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] words = line.trim().split("\\s+");
+        String command = words[0].toUpperCase();
+        if (command.equals("QUIT"))
+          break;
+        
+        String reply;
+        try {
+          if (command.equals("NEW")) {
+            DealGame game = words.length > 1 ? new DealGame(Long.parseLong(words[1]), new MemoryHighScoreStore())
+                                             : new DealGame(false);
+            game.instrument();
+            game.setJournal(journal);
+            session = new GameSession(newSessionId(), game);
+            sessions.put(session.getId(), session);
+            reply = "OK SESSION " + session.getId();
+          }
+          else if (command.equals("ATTACH")) {
+            session = sessions.get(words[1]);
+            reply = session == null ? "ERR no such session" : "OK SESSION " + session.getId();
+          }
+          else if (command.equals("HIGHSCORE"))
+            reply = "OK HIGHSCORE " + HighScoreStore.shared().getHighScore();
+          else if (command.equals("METRICS"))
+            reply = GameMetrics.ENABLED ? "OK METRICS " + GameMetrics.snapshot() : "ERR metrics are disabled";
+          else if (session == null)
+            reply = "ERR start a game with NEW or ATTACH first";
+          else
+            reply = apply(session, command, words);
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+          reply = "ERR malformed command";
+        }
+        
+        if (session != null) {
+          session.touch();
+          if (session.isFinished())
+            sessions.remove(session.getId());
+        }
+        out.println(reply);
+      }
+    }
+    catch (SocketTimeoutException e) {
+      // the connection went idle, the session stays available to ATTACH until it is reaped
+    }
+    catch (IOException e) {
+      // the client went away
+    }
+  }
+  
+  /**
+   * creates a session id no one can guess from the ids handed out before it
+   * @return the id, as hex
+   */
+  private String newSessionId() {
+    byte[] id = new byte[SESSION_ID_BYTES];
+    sessionIds.nextBytes(id);
+    return HexFormat.of().formatHex(id);
+  }
+  
+  /**
+   * runs a game command on a session
+   * @param session the session
+   * @param command the command name
+   * @param words the command and its arguments
+   * @return the reply to send
+   */
+  private String apply(GameSession session, String command, String[] words) {
+    switch (command) {
+      case "SELECT":
+        return session.select(Integer.parseInt(words[1]));
+      case "OPEN":
+        int[] indices = new int[words.length - 1];
+        for (int i = 0; i < indices.length; ++i)
+          indices[i] = Integer.parseInt(words[i + 1]);
+        return session.open(indices);
+      case "BANKER":
+        return session.banker(words[1]);
+      case "DEAL":
+        return session.deal();
+      case "NODEAL":
+        return session.noDeal();
+      case "KEEP":
+        return session.keepOrSwap(false);
+      case "SWAP":
+        return session.keepOrSwap(true);
+      case "STATE":
+        return session.state();
+      default:
+        return "ERR unknown command " + command;
+    }
+  }
+  
+  /** removes every session that has been unused for longer than the idle timeout */
+  private void dropIdleSessions() {
+    long now = System.nanoTime();
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    sessions.values().removeIf(s -> s.isIdle(now, timeoutNanos));
+  }
+  
+  /** stops accepting connections and drops every session */
+  public void close() throws IOException {
+    serverSocket.close();
+    reaper.shutdownNow();
+    connections.shutdownNow();
+    sessions.clear();
+    if (journal != null)
+      journal.close();
+  }
+  
+  /**
+   * starts a server from the command line
+   * @param args optional port, idle timeout in seconds and journal directory
+   * @throws IOException if the port cannot be opened
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    long idleMillis = args.length > 1 ? Long.parseLong(args[1]) * 1000 : DEFAULT_IDLE_TIMEOUT_MILLIS;
+    
+    GameJournal journal = args.length > 2 ? new GameJournal(args[2]) : null;
+    
+    GameServer server = new GameServer(port, idleMillis, journal);
+    System.out.println("Deal or No Deal server listening on port " + server.getPort());
+    server.serve();
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * one player's game hosted by the GameServer. every command on a session is
+ * applied while holding the session's lock, so a session can be attached
+ * from more than one connection
+ */
+public class GameSession {
+
+  /** the id players use to attach to the session */
+  private final String id;
+  
+  /** the game being played */
+  private final DealGame game;
+  
+  /** when the session was last used, in nanoseconds from System.nanoTime */
+  private volatile long lastActive;
+  
+  /** whether the round's offer has been refused in the last round, so the player must keep or swap */
+  private boolean awaitingSwap;
+  
+  /** whether the game is over */
+  private boolean finished;
+  
+  /**
+   * creates a session around a new game
+   * @param id the session id
+   * @param game the game
+   */
+  public GameSession(String id, DealGame game) {
+    this.id = id;
+    this.game = game;
+    touch();
+  }
+  
+  /** @return the session id */
+  public String getId() {
+    return id;
+  }
+  
+  /** @return the game being played */
+  public DealGame getGame() {
+    return game;
+  }
+  
+  /** marks the session as used now */
+  public void touch() {
+    lastActive = System.nanoTime();
+  }
+  
+  /**
+   * checks whether the session has been unused for longer than a timeout
+   * @param now the current System.nanoTime
+   * @param timeoutNanos the idle timeout
+   * @return whether the session is idle
+   */
+  public boolean isIdle(long now, long timeoutNanos) {
+    return now - lastActive > timeoutNanos;
+  }
+  
+  /** @return whether the game is over */
+  public synchronized boolean isFinished() {
+    return finished;
+  }
+  
+  /**
+   * chooses the player's box or opens another box
+   * @param index the box index
+   * @return the reply to send
+   */
+  public synchronized String select(int index) {
+    if (finished || awaitingSwap)
+      return "ERR game is not accepting boxes";
+    int boxes = game.getVariant().getNumBoxes();
+    if (index < 0 || index >= boxes)
+      return "ERR box must be between 0 and " + (boxes - 1);
+    
+    if (!game.hasPlayerChosenBox()) {
+      game.selectBox(index);
+      return "OK CHOSEN " + index + " " + game.getBoxesRemainingToOpenThisRound();
+    }
+    if (game.isEndOfRound())
+      return "ERR round is over, answer the offer with DEAL or NODEAL";
+    if (index == game.getPlayerIndex() || game.isBoxOpen(index))
+      return "ERR box " + index + " cannot be opened";
+    
+    game.selectBox(index);
+    String reply = "OK OPENED " + index + " " + game.getValueInBox(index) + " " + game.getBoxesRemainingToOpenThisRound();
+    if (game.isEndOfRound()) {
+      double offer = game.getCurrentOffer();
+      game.offerShown(offer);
+      reply += " OFFER " + offer;
+    }
+    return reply;
+  }
+  
+  /**
+   * opens several boxes of the current round at once, under one hold of
+   * the session's lock
+   * @param indices the boxes to open
+   * @return the reply to send, listing each box with its value
+   */
+  public synchronized String open(int[] indices) {
+    if (finished || awaitingSwap || !game.hasPlayerChosenBox())
+      return "ERR game is not accepting boxes";
+    if (game.isEndOfRound())
+      return "ERR round is over, answer the offer with DEAL or NODEAL";
+    
+    double[] revealed = new double[indices.length];
+    double offer;
+    try {
+      offer = game.openBoxes(indices, revealed);
+    }
+    catch (IllegalArgumentException e) {
+      return "ERR " + e.getMessage();
+    }
+    
+    StringBuilder reply = new StringBuilder("OK OPENED");
+    for (int i = 0; i < indices.length; ++i)
+      reply.append(' ').append(indices[i]).append(' ').append(revealed[i]);
+    reply.append(' ').append(game.getBoxesRemainingToOpenThisRound());
+    if (!Double.isNaN(offer)) {
+      game.offerShown(offer);
+      reply.append(" OFFER ").append(offer);
+    }
+    return reply.toString();
+  }
+  
+  /**
+   * changes how the banker decides offers for the rest of the game. the
+   * game's winnings are then not recorded on the high score
+   * @param spec the banker, as read by BankerStrategy.parse
+   * @return the reply to send
+   */
+  public synchronized String banker(String spec) {
+    if (finished)
+      return "ERR game is over";
+    try {
+      game.setBanker(BankerStrategy.parse(spec, game.getVariant().getOfferMultiplier()));
+    }
+    catch (IllegalArgumentException e) {
+      return "ERR " + e.getMessage();
+    }
+    return "OK BANKER " + spec;
+  }
+  
+  /**
+   * accepts the banker's offer, ending the game
+   * @return the reply to send
+   */
+  public synchronized String deal() {
+    if (finished || awaitingSwap || !game.hasPlayerChosenBox() || !game.isEndOfRound())
+      return "ERR there is no offer to accept";
+    double offer = game.getCurrentOffer();
+    game.dealDecided(true);
+    return finish(offer, game.getPlayerBoxValue());
+  }
+  
+  /**
+   * refuses the banker's offer and moves to the next round, or to the
+   * keep-or-swap decision after the last round
+   * @return the reply to send
+   */
+  public synchronized String noDeal() {
+    if (finished || awaitingSwap || !game.hasPlayerChosenBox() || !game.isEndOfRound())
+      return "ERR there is no offer to refuse";
+    game.dealDecided(false);
+    if (game.getRound() == game.getVariant().getNumRounds() - 1) {
+      awaitingSwap = true;
+      return "OK LAST answer with KEEP or SWAP";
+    }
+    game.startNextRound();
+    return "OK ROUND " + game.getRound() + " " + game.getBoxesRemainingToOpenThisRound();
+  }
+  
+  /**
+   * keeps the player's box or swaps it for the last one, ending the game
+   * @param swap whether to swap
+   * @return the reply to send
+   */
+  public synchronized String keepOrSwap(boolean swap) {
+    if (!awaitingSwap || finished)
+      return "ERR there is nothing to swap";
+    
+    game.swapDecided(swap);
+    double playerValue = game.getPlayerBoxValue();
+    double otherValue = game.getValueInBox(game.getLastBoxIndex());
+    return swap ? finish(otherValue, playerValue) : finish(playerValue, otherValue);
+  }
+  
+  /**
+   * ends the game, recording the winnings on the leaderboard
+   * @param winnings what the player walks away with
+   * @param otherValue the value of the box the player gave up
+   * @return the reply to send
+   */
+  private String finish(double winnings, double otherValue) {
+    finished = true;
+    boolean highScore = game.isNewHighScore(winnings);
+    return "OK WON " + winnings + " OTHER " + otherValue + (highScore ? " HIGHSCORE" : "");
+  }
+  
+  /**
+   * describes the state of the game
+   * @return the reply to send
+   */
+  public synchronized String state() {
+    return "OK STATE round=" + game.getRound() + " opened=" + game.getTotalBoxesOpened() +
+      " remaining=" + game.getBoxesRemainingToOpenThisRound() +
+      " player=" + (game.hasPlayerChosenBox() ? game.getPlayerIndex() : -1) +
+      " finished=" + finished;
+  }
+}
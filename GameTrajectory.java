@@ -0,0 +1,133 @@
+import java.util.Arrays;
+/**
+ * the rows of one or more games' trajectories, held in growable primitive
+ * columns until they are handed to a TrajectoryWriter. each game's rows
+ * end with a call to endGame. after reset a buffer can be used for the next
+ * batch, so recording trajectories does not allocate once the columns are
+ * long enough. rounds are stored in a byte, so games with more than
+ * MAX_ROUND rounds cannot be recorded
+ */
+public class GameTrajectory {
+
+  /** This is the highest round a row can record */
+  public static final int MAX_ROUND = Byte.MAX_VALUE;
+
+  /** the columns of the rows recorded so far */
+  private byte[] rounds = new byte[64], events = new byte[64];
+  private int[] boxes = new int[64], ordinals = new int[64];
+  private double[] amounts = new double[64];
+  
+  /** the number of rows recorded */
+  private int size;
+  
+  /** the row after the last row of each ended game */
+  private int[] gameEnds = new int[4];
+  
+  /** the number of ended games */
+  private int games;
+  
+  /** empties the buffer for the next games */
+  public void reset() {
+    size = 0;
+    games = 0;
+  }
+  
+  /** ends the game whose rows were recorded since the last game ended */
+  public void endGame() {
+    if (games == gameEnds.length)
+      gameEnds = Arrays.copyOf(gameEnds, games * 2);
+    gameEnds[games++] = size;
+  }
+  
+  /**
+   * records a row
+   * @param round the round the event happened in
+   * @param event the event, one of the TrajectoryWriter event codes
+   * @param box the box index, or -1 if the event has no box
+   * @param ordinal the ordinal of the box's value, or -1
+   * @param amount the value revealed, the offer or the winnings, or 0
+   * @throws IllegalArgumentException if the round is above MAX_ROUND
+   */
+  public void add(int round, byte event, int box, int ordinal, double amount) {
+    if (round > MAX_ROUND)
+      throw new IllegalArgumentException("Round " + round + " is past the last recordable round " + MAX_ROUND);
+    if (size == rounds.length) {
+      int capacity = size * 2;
+      rounds = Arrays.copyOf(rounds, capacity);
+      events = Arrays.copyOf(events, capacity);
+      boxes = Arrays.copyOf(boxes, capacity);
+      ordinals = Arrays.copyOf(ordinals, capacity);
+      amounts = Arrays.copyOf(amounts, capacity);
+    }
+    rounds[size] = (byte) round;
+    events[size] = event;
+    boxes[size] = box;
+    ordinals[size] = ordinal;
+    amounts[size] = amount;
+    ++size;
+  }
+  
+  /** @return the number of rows */
+  public int size() {
+    return size;
+  }
+  
+  /** @return the number of ended games */
+  public int getGameCount() {
+    return games;
+  }
+  
+  /**
+   * gets where a game's rows end
+   * @param game the game, counting from 0
+   * @return the row after the game's last row
+   */
+  public int getGameEnd(int game) {
+    return gameEnds[game];
+  }
+  
+  /**
+   * gets the round of a row
+   * @param row the row
+   * @return the round
+   */
+  public byte getRound(int row) {
+    return rounds[row];
+  }
+  
+  /**
+   * gets the event of a row
+   * @param row the row
+   * @return the event code
+   */
+  public byte getEvent(int row) {
+    return events[row];
+  }
+  
+  /**
+   * gets the box of a row
+   * @param row the row
+   * @return the box index, or -1
+   */
+  public int getBox(int row) {
+    return boxes[row];
+  }
+  
+  /**
+   * gets the value ordinal of a row
+   * @param row the row
+   * @return the ordinal, or -1
+   */
+  public int getOrdinal(int row) {
+    return ordinals[row];
+  }
+  
+  /**
+   * gets the amount of a row
+   * @param row the row
+   * @return the amount
+   */
+  public double getAmount(int row) {
+    return amounts[row];
+  }
+}
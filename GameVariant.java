@@ -0,0 +1,266 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Properties;
+/**
+ * the rules of a version of the game: the value in each box, how many boxes
+ * are opened in each round and the share of the average remaining value the
+ * banker offers per round. the variant used by new games is loaded once at
+ * startup from the properties file named by -Ddealgame.variant, or is the
+ * standard game if none is given.
+ *
+ * a variant file sets either values, a comma separated list, or boxes,
+ * minValue and maxValue for a geometric ladder of that many values. it may
+ * set rounds, the comma separated number of boxes opened in each round,
+ * which must leave exactly two boxes closed; without it each round opens a
+ * quarter of the boxes left. offerMultiplier defaults to 0.1, the banker
+ * offering a tenth of the average per round number
+ */
+public class GameVariant {
+
+  /** This is the system property naming the variant file */
+  public static final String VARIANT_PROPERTY = "dealgame.variant";
+  
+  /** This is the share of the average value offered per round in the standard game */
+  public static final double STANDARD_OFFER_MULTIPLIER = 0.1;
+  
+  /** This is the game as it has always been played */
+  public static final GameVariant STANDARD =
+    new GameVariant("standard", DealGame.BOX_VALUES, DealGame.BOXES_IN_ROUND, STANDARD_OFFER_MULTIPLIER);
+  
+  /** the variant's name */
+  private final String name;
+  
+  /** the value in each box */
+  private final double[] values;
+  
+  /** the number of boxes opened in each round, with round 0 unused */
+  private final int[] boxesInRound;
+  
+  /** the share of the average remaining value offered per round number */
+  private final double offerMultiplier;
+  
+  /** the banker offering that share */
+  private final BankerStrategy banker;
+  
+  /**
+   * creates a variant
+   * @param name the variant's name
+   * @param values the value in each box
+   * @param boxesInRound the number of boxes opened in each round, starting
+   *        with an unused entry for round 0 and ending with an unused entry
+   *        after the last round, like DealGame.BOXES_IN_ROUND
+   * @param offerMultiplier the share of the average offered per round number
+   * @throws IllegalArgumentException if a value is negative, not finite or
+   *         repeated, or the rounds do not leave two boxes
+   */
+  public GameVariant(String name, double[] values, int[] boxesInRound, double offerMultiplier) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    for (int i = 0; i < sorted.length; ++i) {
+      if (!(sorted[i] >= 0) || Double.isInfinite(sorted[i]))
+        throw new IllegalArgumentException("The values of " + name + " must be finite and not negative, not " + sorted[i]);
+      if (i > 0 && sorted[i] == sorted[i - 1])
+        throw new IllegalArgumentException("The values of " + name + " hold " + sorted[i] + " more than once");
+    }
+    this.name = name;
+    this.values = values.clone();
+    this.boxesInRound = boxesInRound.clone();
+    this.offerMultiplier = offerMultiplier;
+    banker = BankerStrategy.averageShare(offerMultiplier);
+    
+    long opened = 0;
+    for (int round = 1; round < getNumRounds(); ++round) {
+      if (boxesInRound[round] < 1)
+        throw new IllegalArgumentException("Round " + round + " must open at least one box");
+      opened += boxesInRound[round];
+    }
+    if (values.length < 3 || opened != values.length - 2)
+      throw new IllegalArgumentException("The rounds of " + name + " open " + opened + " boxes but must open " +
+                                         (values.length - 2) + " to leave the player's box and one other");
+  }
+  
+  /** @return the variant's name */
+  public String getName() {
+    return name;
+  }
+  
+  /** @return whether the variant has the standard game's values, rounds and offers */
+  public boolean isStandard() {
+    return Arrays.equals(values, STANDARD.values) && Arrays.equals(boxesInRound, STANDARD.boxesInRound) &&
+      offerMultiplier == STANDARD.offerMultiplier;
+  }
+  
+  /** @return a checksum of the values, rounds and offers, the same in every JVM for the same rules */
+  public long getChecksum() {
+    long checksum = Arrays.hashCode(values);
+    checksum = checksum * 31 + Arrays.hashCode(boxesInRound);
+    return checksum * 31 + Double.hashCode(offerMultiplier);
+  }
+  
+  /** @return the number of boxes */
+  public int getNumBoxes() {
+    return values.length;
+  }
+  
+  /** @return a copy of the box values */
+  public double[] getValues() {
+    return values.clone();
+  }
+  
+  /**
+   * creates a board holding this variant's values in order
+   * @return the board
+   */
+  public BoxList newBoxList() {
+    return new BoxList(values);
+  }
+  
+  /** @return the number of rounds, counted as in DealGame.NUM_ROUNDS */
+  public int getNumRounds() {
+    return boxesInRound.length - 1;
+  }
+  
+  /**
+   * gets the number of boxes opened in a round
+   * @param round the round number
+   * @return number of boxes
+   */
+  public int getBoxesInRound(int round) {
+    return boxesInRound[round];
+  }
+  
+  /** @return the share of the average offered per round number */
+  public double getOfferMultiplier() {
+    return offerMultiplier;
+  }
+  
+  /** @return the banker offering the variant's share of the average, used unless a game picks another */
+  public BankerStrategy getBanker() {
+    return banker;
+  }
+  
+  /**
+   * calculates the banker's offer from the average value still in play
+   * @param average the average value of the unopened boxes
+   * @param round the round number
+   * @return the offer
+   */
+  public double calculateOffer(double average, int round) {
+    return average * round * offerMultiplier;
+  }
+  
+  /**
+   * reads a variant from a properties file
+   * @param fileName the file
+   * @return the variant
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException naming the file if it does not describe a variant
+   */
+  public static GameVariant load(String fileName) throws IOException {
+    Properties props = new Properties();
+    try (Reader in = Files.newBufferedReader(Paths.get(fileName))) {
+      props.load(in);
+    }
+    try {
+      return fromProperties(props, fileName);
+    }
+    catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Bad variant file " + fileName + ": " + e.getMessage(), e);
+    }
+  }
+  
+  /**
+   * builds a variant from the properties of a variant file
+   * @param props the properties
+   * @param fileName the file, the variant's name if it has none
+   * @return the variant
+   * @throws IllegalArgumentException if the properties do not describe a variant
+   */
+  private static GameVariant fromProperties(Properties props, String fileName) {
+    if (!props.containsKey("values") && !props.containsKey("boxes"))
+      throw new IllegalArgumentException("neither values nor boxes are given");
+    
+    double[] values;
+    if (props.containsKey("values")) {
+      values = Arrays.stream(props.getProperty("values").split(",")).mapToDouble(v -> Double.parseDouble(v.trim())).toArray();
+    }
+    else {
+      int boxes = Integer.parseInt(props.getProperty("boxes").trim());
+      if (boxes < 3)
+        throw new IllegalArgumentException("there must be at least 3 boxes, not " + boxes);
+      double min = Double.parseDouble(props.getProperty("minValue", "0.01").trim());
+      double max = Double.parseDouble(props.getProperty("maxValue", "1000000").trim());
+      values = new double[boxes];
+      // where rounding to the cent would repeat a value the ladder steps up a cent instead
+      for (int i = 0; i < boxes; ++i) {
+        values[i] = Math.round(min * Math.pow(max / min, (double) i / (boxes - 1)) * 100) / 100.0;
+        if (i > 0 && values[i] <= values[i - 1])
+          values[i] = Math.round(values[i - 1] * 100 + 1) / 100.0;
+      }
+    }
+    
+    int[] rounds;
+    if (props.containsKey("rounds")) {
+      int[] opened = Arrays.stream(props.getProperty("rounds").split(",")).mapToInt(r -> Integer.parseInt(r.trim())).toArray();
+      rounds = new int[opened.length + 2];
+      System.arraycopy(opened, 0, rounds, 1, opened.length);
+      rounds[rounds.length - 1] = 1;
+    }
+    else {
+      rounds = quarterSchedule(values.length);
+    }
+    
+    double multiplier = Double.parseDouble(props.getProperty("offerMultiplier", "" + STANDARD_OFFER_MULTIPLIER).trim());
+    return new GameVariant(props.getProperty("name", fileName), values, rounds, multiplier);
+  }
+  
+  /**
+   * builds a round schedule that opens a quarter of the other closed boxes
+   * each round, at least one, until the player's box and one other are left
+   * @param boxes the number of boxes
+   * @return the schedule, in the form of DealGame.BOXES_IN_ROUND
+   */
+  private static int[] quarterSchedule(int boxes) {
+    int[] rounds = new int[boxes + 1];
+    int count = 1;
+    for (int others = boxes - 1; others > 1; ++count) {
+      rounds[count] = Math.max(1, Math.min(others - 1, others / 4));
+      others -= rounds[count];
+    }
+    rounds[count] = 1;
+    return Arrays.copyOf(rounds, count + 1);
+  }
+  
+  /**
+   * gets the variant new games use, loading it on first use
+   * @return the current variant
+   */
+  public static GameVariant current() {
+    return Current.VARIANT;
+  }
+  
+  /** holds the variant chosen at startup */
+  private static class Current {
+    /** the variant named by the system property, or the standard game */
+    static final GameVariant VARIANT;
+    
+    static {
+      String fileName = System.getProperty(VARIANT_PROPERTY);
+      try {
+        VARIANT = fileName == null ? STANDARD : load(fileName);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException("Could not load game variant " + fileName, e);
+      }
+    }
+  }
+  
+  /**
+   * describes the variant
+   * @return the description
+   */
+  public String toString() {
+    return name + ": " + values.length + " boxes over " + (getNumRounds() - 1) + " rounds";
+  }
+}
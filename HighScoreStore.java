@@ -0,0 +1,42 @@
+/**
+ * keeps the best score reached across games
+ */
+public interface HighScoreStore {
+
+  /**
+   * gets the current high score
+   * @return the high score, or 0 if none has been recorded
+   */
+  double getHighScore();
+  
+  /**
+   * records a score if it beats the current high score
+   * @param score the score of a finished game
+   * @return whether the score was a new high score
+   */
+  boolean submit(double score);
+  
+  /**
+   * records a score from a known game if it beats the current high score
+   * @param score the score of a finished game
+   * @param gameId the game the score came from
+   * @return whether the score was a new high score
+   */
+  default boolean submit(double score, long gameId) {
+    return submit(score);
+  }
+  
+  /** makes sure every recorded high score has reached permanent storage */
+  default void flush() {
+  }
+  
+  /**
+   * gets the store shared by every game on this host, which is the
+   * leaderboard kept in the default leaderboard file, with its high score
+   * in the default high score record
+   * @return the shared store
+   */
+  static HighScoreStore shared() {
+    return Leaderboard.Shared.INSTANCE;
+  }
+}
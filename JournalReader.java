@@ -0,0 +1,340 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+/**
+ * reads the records of a GameJournal in order, one segment at a time, and
+ * rebuilds games from them. every record's checksum is checked, and reading
+ * stops at the first damaged record, such as one torn by a crash
+ */
+public class JournalReader implements Closeable {
+
+  /** the journal directory */
+  private final Path directory;
+  
+  /** the rules of the journaled games, which the snapshots do not record */
+  private final GameVariant variant;
+  
+  /** the segment being read, or null if the journal has no segments */
+  private MappedByteBuffer segment;
+  
+  /** a view of the segment to checksum records through */
+  private ByteBuffer checksummed;
+  
+  /** checks each record's checksum */
+  private final CRC32C checksum = new CRC32C();
+  
+  /** whether reading stopped at a damaged record */
+  private boolean damaged;
+  
+  /** the number of the segment being read, or -1 if the journal has no segments */
+  private int segmentNumber = -1;
+  
+  /** the offset of the current record and of the record after it */
+  private int recordStart, position;
+  
+  /** the fields of the current record */
+  private byte type, flag;
+  private long gameId;
+  
+  /**
+   * opens a journal of games of the current variant for reading,
+   * positioned before the first record
+   * @param directoryName the journal directory
+   * @throws IOException if the first segment cannot be mapped
+   */
+  public JournalReader(String directoryName) throws IOException {
+    this(directoryName, GameVariant.current());
+  }
+  
+  /**
+   * opens a journal for reading, positioned before the first record
+   * @param directoryName the journal directory
+   * @param variant the rules the journaled games were played by
+   * @throws IOException if the first segment cannot be mapped
+   */
+  public JournalReader(String directoryName, GameVariant variant) throws IOException {
+    directory = Paths.get(directoryName);
+    this.variant = variant;
+    openSegment(0, 0);
+  }
+  
+  /**
+   * maps a segment for reading if it exists
+   * @param number the segment number
+   * @param offset where to start reading
+   * @return whether the segment exists
+   * @throws IOException if the segment cannot be mapped
+   */
+  private boolean openSegment(int number, int offset) throws IOException {
+    Path path = GameJournal.segmentPath(directory, number);
+    if (!Files.exists(path))
+      return false;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    segment.order(ByteOrder.nativeOrder());
+    checksummed = segment.duplicate();
+    segmentNumber = number;
+    position = offset;
+    return true;
+  }
+  
+  /**
+   * moves to the next record
+   * @return false at the end of the journal or at a damaged record, which
+   *         isDamaged tells apart
+   */
+  public boolean next() {
+    while (true) {
+      if (segment == null || damaged)
+        return false;
+      int length = position + Integer.BYTES <= segment.limit() ? segment.getInt(position) : 0;
+      if (length != 0) {
+        if (!isIntact(position, length)) {
+          damaged = true;
+          return false;
+        }
+        recordStart = position;
+        type = segment.get(position + 4);
+        flag = segment.get(position + 5);
+        gameId = segment.getLong(position + 8);
+        position += length;
+        return true;
+      }
+      
+      try {
+        if (!openSegment(segmentNumber + 1, 0))
+          return false;
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException("Could not map journal segment " + (segmentNumber + 1), e);
+      }
+    }
+  }
+  
+  /**
+   * checks that a record fits in the segment and matches its checksum
+   * @param start the offset of the record
+   * @param length the length the record claims
+   * @return whether the record is whole
+   */
+  private boolean isIntact(int start, int length) {
+    if (length < GameJournal.HEADER_SIZE + GameJournal.CHECKSUM_SIZE || length > segment.limit() - start)
+      return false;
+    int end = start + length - GameJournal.CHECKSUM_SIZE;
+    checksummed.limit(end).position(start);
+    checksum.reset();
+    checksum.update(checksummed);
+    return (int) checksum.getValue() == segment.getInt(end);
+  }
+  
+  /** @return whether reading stopped at a damaged record rather than the end of the journal */
+  public boolean isDamaged() {
+    return damaged;
+  }
+  
+  /** @return the type of the current record */
+  public byte getType() {
+    return type;
+  }
+  
+  /** @return the game the current record belongs to */
+  public long getGameId() {
+    return gameId;
+  }
+  
+  /** @return the yes or no answer of a DEAL or SWAP record */
+  public boolean getFlag() {
+    return flag != 0;
+  }
+  
+  /** @return the box index of a SELECT record */
+  public int getIndex() {
+    return segment.getInt(recordStart + GameJournal.HEADER_SIZE);
+  }
+  
+  /** @return the offer of an OFFER record */
+  public double getOffer() {
+    return segment.getDouble(recordStart + GameJournal.HEADER_SIZE);
+  }
+  
+  /**
+   * loads the snapshot of a START record into a game
+   * @param game the game to overwrite
+   * @throws IllegalStateException if the snapshot is of a board of another size
+   * @throws UncheckedIOException if the board in the snapshot is damaged
+   */
+  public void readSnapshot(DealGame game) {
+    int length = segment.getInt(recordStart) - GameJournal.HEADER_SIZE - GameJournal.CHECKSUM_SIZE;
+    if (length != game.snapshotSize())
+      throw new IllegalStateException("Snapshot of " + length + " bytes does not fit a game of " +
+                                      game.getVariant().getNumBoxes() + " boxes");
+    segment.position(recordStart + GameJournal.HEADER_SIZE);
+    try {
+      game.readFrom(segment);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Damaged snapshot in journal segment " + (segmentNumber + 1), e);
+    }
+  }
+  
+  /** @return the number of the segment being read, or -1 if there are none */
+  public int getSegmentNumber() {
+    return segmentNumber;
+  }
+  
+  /** @return the offset after the current record */
+  public int getPosition() {
+    return position;
+  }
+  
+  /**
+   * moves to the last checkpoint at or before a game, so the next record
+   * is that game's START
+   * @param gameNumber the number of the game, counting from 0
+   * @return the number of the game at the checkpoint
+   * @throws IOException if the index cannot be read
+   */
+  public long seekToCheckpoint(long gameNumber) throws IOException {
+    Path indexPath = directory.resolve(GameJournal.INDEX_FILE);
+    damaged = false;
+    long found = 0;
+    int foundSegment = 0, foundOffset = 0;
+    
+    if (Files.exists(indexPath)) {
+      try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+        int count = (int) (channel.size() / GameJournal.CHECKPOINT_SIZE);
+        if (count > 0) {
+          MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * GameJournal.CHECKPOINT_SIZE);
+          index.order(ByteOrder.nativeOrder());
+          
+          int lo = 0, hi = count - 1;
+          while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (index.getLong(mid * GameJournal.CHECKPOINT_SIZE) <= gameNumber)
+              lo = mid;
+            else
+              hi = mid - 1;
+          }
+          int at = lo * GameJournal.CHECKPOINT_SIZE;
+          found = index.getLong(at);
+          foundSegment = index.getInt(at + 8);
+          foundOffset = index.getInt(at + 12);
+        }
+      }
+    }
+    
+    if (!openSegment(foundSegment, foundOffset)) {
+      segment = null;
+      segmentNumber = -1;
+    }
+    return found;
+  }
+  
+  /**
+   * moves to the START record of a game
+   * @param gameNumber the number of the game, counting from 0
+   * @return false if the journal has fewer games
+   * @throws IOException if the index cannot be read
+   */
+  public boolean seekToGame(long gameNumber) throws IOException {
+    long game = seekToCheckpoint(gameNumber) - 1;
+    while (next()) {
+      if (type == GameJournal.START && ++game == gameNumber)
+        return true;
+    }
+    return false;
+  }
+  
+  /**
+   * applies the current record to a game
+   * @param game the game the record belongs to
+   * @return whether the record ended the game
+   */
+  public boolean apply(DealGame game) {
+    switch (type) {
+      case GameJournal.START:
+        readSnapshot(game);
+        return false;
+      case GameJournal.SELECT:
+        game.selectBox(getIndex());
+        return false;
+      case GameJournal.NEXT_ROUND:
+        game.startNextRound();
+        return false;
+      case GameJournal.DEAL:
+        return getFlag();
+      case GameJournal.SWAP:
+        return true;
+      default:
+        return false;
+    }
+  }
+  
+  /**
+   * creates a game of the journal's variant to replay records into, which
+   * never touches the high score file
+   * @return the game
+   */
+  DealGame newReplayGame() {
+    return new DealGame(variant, null, new MemoryHighScoreStore());
+  }
+  
+  /**
+   * rebuilds one game from its start to its last record
+   * @param gameNumber the number of the game, counting from 0
+   * @return the game, or null if the journal has fewer games
+   * @throws IOException if the index cannot be read
+   */
+  public DealGame replayGame(long gameNumber) throws IOException {
+    if (!seekToGame(gameNumber))
+      return null;
+    
+    DealGame game = newReplayGame();
+    long id = gameId;
+    boolean over = apply(game);
+    while (!over && next()) {
+      if (gameId == id)
+        over = apply(game);
+    }
+    return game;
+  }
+  
+  /**
+   * rebuilds every game in the journal, from the current position on, up
+   * to the end of the journal or its first damaged record
+   * @param finished called with each game when its last record is applied
+   * @param unfinished called once reading stops with each game that has no
+   *        last record, in the order the games started
+   * @return the number of records read
+   */
+  public long replayAll(Consumer<DealGame> finished, Consumer<DealGame> unfinished) {
+    LinkedHashMap<Long, DealGame> games = new LinkedHashMap<>();
+    long records = 0;
+    
+    while (next()) {
+      ++records;
+      DealGame game = type == GameJournal.START ? newReplayGame() : games.get(gameId);
+      if (game == null)
+        continue;
+      if (type == GameJournal.START)
+        games.put(gameId, game);
+      if (apply(game)) {
+        games.remove(gameId);
+        finished.accept(game);
+      }
+    }
+    games.values().forEach(unfinished);
+    return records;
+  }
+  
+  /** releases the current segment */
+  public void close() {
+    segment = null;
+  }
+}
@@ -0,0 +1,267 @@
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+/**
+ * keeps the best scores ever reached, each with the time it was set and the
+ * game it came from, in a fixed-size memory-mapped file sorted from best to
+ * worst. the lowest score on a full board is also kept in memory, so the
+ * common case of a score that does not qualify costs one comparison and no I/O.
+ * the high score itself is kept in a MappedHighScoreStore, so finding out
+ * whether a score is the new best never waits on the file lock, which is
+ * only taken to insert a score that makes the board
+ */
+public class Leaderboard implements HighScoreStore, Closeable {
+
+  /** This is the number of entries on a new leaderboard */
+  public static final int DEFAULT_CAPACITY = 10;
+  
+  /** This marks a leaderboard file that has been initialized ("LEADERBD") */
+  private static final long MAGIC = 0x4c45414445524244L;
+  
+  /** These are the byte offsets of the header fields and the size of the header */
+  private static final int MAGIC_OFFSET = 0, CAPACITY_OFFSET = 8, COUNT_OFFSET = 12, HEADER_SIZE = 16;
+  
+  /** These are the byte offsets of the fields in an entry and the size of an entry */
+  private static final int SCORE_OFFSET = 0, TIME_OFFSET = 8, GAME_OFFSET = 16, ENTRY_SIZE = 24;
+  
+  /** the leaderboard file */
+  private final FileChannel channel;
+  
+  /** the mapped leaderboard */
+  private final MappedByteBuffer board;
+  
+  /** the high score, raised without the file lock */
+  private final MappedHighScoreStore highScore;
+  
+  /** the number of entries the board holds */
+  private final int capacity;
+  
+  /** the score a new entry must beat, the lowest score once the board is full */
+  private volatile double threshold;
+  
+  /**
+   * maps a leaderboard file and a high score record, creating them if
+   * needed. a new board or record starts with the score in the text high
+   * score file, if there is one
+   * @param fileName name of the leaderboard file
+   * @param recordFileName name of the high score record file
+   * @param capacity number of entries on a new board
+   * @param seedFileName name of a text high score file to start from
+   */
+  public Leaderboard(String fileName, String recordFileName, int capacity, String seedFileName) {
+    highScore = new MappedHighScoreStore(recordFileName, seedFileName);
+    try {
+      channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                                 StandardOpenOption.READ, StandardOpenOption.WRITE);
+      
+      FileLock lock = channel.lock();
+      try {
+        boolean initialized = channel.size() >= HEADER_SIZE;
+        if (initialized) {
+          MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+          header.order(ByteOrder.nativeOrder());
+          initialized = header.getLong(MAGIC_OFFSET) == MAGIC;
+          if (initialized)
+            capacity = header.getInt(CAPACITY_OFFSET);
+        }
+        
+        this.capacity = capacity;
+        board = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * ENTRY_SIZE);
+        board.order(ByteOrder.nativeOrder());
+        
+        if (!initialized) {
+          board.putInt(CAPACITY_OFFSET, capacity);
+          board.putInt(COUNT_OFFSET, 0);
+          Path seed = Paths.get(seedFileName);
+          double seedScore = FileHighScoreStore.read(seed);
+          if (seedScore > 0)
+            insert(seedScore, Files.getLastModifiedTime(seed).toMillis(), 0);
+          board.putLong(MAGIC_OFFSET, MAGIC);
+          board.force();
+        }
+        updateThreshold();
+      }
+      finally {
+        lock.release();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not map leaderboard " + fileName, e);
+    }
+  }
+  
+  /** @return the high score, which is the best score on the board once the board has been written */
+  public double getHighScore() {
+    return highScore.getHighScore();
+  }
+  
+  /**
+   * checks whether a score would make the board, without any I/O
+   * @param score the score
+   * @return whether the score beats the lowest entry or the board has room
+   */
+  public boolean wouldQualify(double score) {
+    return score > threshold;
+  }
+  
+  /**
+   * records a score from an unknown game
+   * @param score the score of a finished game
+   * @return whether the score was a new high score
+   */
+  public boolean submit(double score) {
+    return submit(score, 0);
+  }
+  
+  /**
+   * records a score on the board if it qualifies. whether it is a new high
+   * score is settled by the high score record, not by where it lands on the board
+   * @param score the score of a finished game
+   * @param gameId the game the score came from
+   * @return whether the score was a new high score
+   */
+  public boolean submit(double score, long gameId) {
+    boolean best = highScore.submit(score);
+    if (!wouldQualify(score))
+      return best;
+    
+    synchronized (this) {
+      try {
+        FileLock lock = channel.lock();
+        try {
+          // another process may have raised the board since the threshold was read
+          updateThreshold();
+          if (wouldQualify(score)) {
+            insert(score, System.currentTimeMillis(), gameId);
+            updateThreshold();
+          }
+        }
+        finally {
+          lock.release();
+        }
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException("Could not lock leaderboard", e);
+      }
+    }
+    return best;
+  }
+  
+  /**
+   * inserts an entry in sorted position, dropping the lowest entry if the
+   * board is full. the caller must hold the file lock
+   * @param score the score
+   * @param time when the score was set, in epoch milliseconds
+   * @param gameId the game the score came from
+   * @return the rank the entry was inserted at
+   */
+  private int insert(double score, long time, long gameId) {
+    int count = board.getInt(COUNT_OFFSET);
+    int rank = count;
+    while (rank > 0 && getScore(rank - 1) < score)
+      --rank;
+    
+    // shift the lower entries down one place, starting from the bottom
+    for (int i = Math.min(count, capacity - 1); i > rank; --i) {
+      int from = entryOffset(i - 1), to = entryOffset(i);
+      board.putLong(to + GAME_OFFSET, board.getLong(from + GAME_OFFSET));
+      board.putLong(to + TIME_OFFSET, board.getLong(from + TIME_OFFSET));
+      board.putDouble(to + SCORE_OFFSET, board.getDouble(from + SCORE_OFFSET));
+    }
+    
+    int at = entryOffset(rank);
+    board.putLong(at + GAME_OFFSET, gameId);
+    board.putLong(at + TIME_OFFSET, time);
+    board.putDouble(at + SCORE_OFFSET, score);
+    if (count < capacity)
+      board.putInt(COUNT_OFFSET, count + 1);
+    return rank;
+  }
+  
+  /** refreshes the in-memory threshold from the mapped board */
+  private void updateThreshold() {
+    int count = size();
+    threshold = count < capacity ? Double.NEGATIVE_INFINITY : getScore(count - 1);
+  }
+  
+  /**
+   * gets the byte offset of an entry
+   * @param rank the entry's rank
+   * @return the offset
+   */
+  private static int entryOffset(int rank) {
+    return HEADER_SIZE + rank * ENTRY_SIZE;
+  }
+  
+  /** @return the number of entries on the board */
+  public int size() {
+    return board.getInt(COUNT_OFFSET);
+  }
+  
+  /** @return the number of entries the board can hold */
+  public int getCapacity() {
+    return capacity;
+  }
+  
+  /**
+   * gets the score at a rank
+   * @param rank the rank, 0 for the best score
+   * @return the score
+   */
+  public double getScore(int rank) {
+    return board.getDouble(entryOffset(rank) + SCORE_OFFSET);
+  }
+  
+  /**
+   * gets when the score at a rank was set
+   * @param rank the rank, 0 for the best score
+   * @return the time in epoch milliseconds
+   */
+  public long getTimestamp(int rank) {
+    return board.getLong(entryOffset(rank) + TIME_OFFSET);
+  }
+  
+  /**
+   * gets the game the score at a rank came from
+   * @param rank the rank, 0 for the best score
+   * @return the game id
+   */
+  public long getGameId(int rank) {
+    return board.getLong(entryOffset(rank) + GAME_OFFSET);
+  }
+  
+  /** writes the mapped board and high score record back to their files */
+  public void flush() {
+    board.force();
+    highScore.flush();
+  }
+  
+  /** flushes the board and closes the files */
+  public void close() throws IOException {
+    flush();
+    channel.close();
+    highScore.close();
+  }
+  
+  /**
+   * writes out every entry on the board
+   * @return the string of entries
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < size(); ++i)
+      sb.append(i + 1).append(". ").append(getScore(i)).append(" game ").append(getGameId(i))
+        .append(" at ").append(java.time.Instant.ofEpochMilli(getTimestamp(i))).append("\n");
+    return sb.toString();
+  }
+  
+  /** holds the leaderboard for the default file, created on first use */
+  static class Shared {
+    /** the shared leaderboard, started from the text high score file */
+    static final Leaderboard INSTANCE = new Leaderboard(DealGame.LEADERBOARD_FILE, DealGame.HIGH_SCORE_RECORD_FILE,
+                                                        DEFAULT_CAPACITY, DealGame.HIGH_SCORE_FILE);
+  }
+}
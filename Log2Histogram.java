@@ -0,0 +1,56 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ * a lock-free histogram of non-negative values with one bucket per power of
+ * two, so recording is a couple of instructions and an atomic increment
+ */
+public class Log2Histogram {
+
+  /** bucket i counts values v with 2^(i-1) <= v < 2^i, bucket 0 counts zero */
+  private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+  
+  /** the number and total of the recorded values */
+  private final LongAdder count = new LongAdder(), sum = new LongAdder();
+  
+  /**
+   * records a value
+   * @param value the value, negative values count as zero
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+    count.increment();
+    sum.add(value);
+  }
+  
+  /** @return the number of recorded values */
+  public long getCount() {
+    return count.sum();
+  }
+  
+  /** @return the mean of the recorded values */
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+  
+  /**
+   * estimates a percentile as the upper bound of the bucket it falls in
+   * @param p the share of values at or below the result, from 0 to 1
+   * @return the estimate, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double p) {
+    long n = 0;
+    for (int i = 0; i < buckets.length(); ++i)
+      n += buckets.get(i);
+    long target = (long) Math.ceil(p * n);
+    
+    long seen = 0;
+    for (int i = 0; i < buckets.length(); ++i) {
+      seen += buckets.get(i);
+      if (seen >= target && seen > 0)
+        return i == 0 ? 0 : i >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,159 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+/**
+ * keeps the high score in a small memory-mapped record shared by every
+ * thread and process on the host. a new high score is posted with a
+ * compare-and-max loop directly on the mapped memory, so concurrent
+ * writers never lose an update and never wait on a file rewrite. if the
+ * platform cannot compare and set mapped memory, a file lock is taken as
+ * well, and the score is still raised with compare and set under it
+ * wherever the platform allows, so a writer holding the lock never
+ * overwrites one that does not
+ */
+public class MappedHighScoreStore implements HighScoreStore, Closeable {
+
+  /** This marks a record that has been initialized ("HSRECORD") */
+  private static final long MAGIC = 0x48535245434f5244L;
+  
+  /** These are the byte offsets of the fields in the record */
+  private static final int MAGIC_OFFSET = 0, VERSION_OFFSET = 8, SCORE_OFFSET = 16, RECORD_SIZE = 24;
+  
+  /** view of the mapped record as longs, supporting atomic access */
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+  
+  /** the record file */
+  private final FileChannel channel;
+  
+  /** the mapped record */
+  private final MappedByteBuffer record;
+  
+  /** whether updates must take the file lock because atomic access failed */
+  private volatile boolean useLock;
+  
+  /**
+   * maps a record file, creating it if needed. a new record starts from the
+   * score in the text high score file, if there is one
+   * @param fileName name of the record file
+   * @param seedFileName name of a text high score file to start from
+   */
+  public MappedHighScoreStore(String fileName, String seedFileName) {
+    try {
+      channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                                 StandardOpenOption.READ, StandardOpenOption.WRITE);
+      record = channel.map(FileChannel.MapMode.READ_WRITE, 0, RECORD_SIZE);
+      record.order(ByteOrder.nativeOrder());
+      
+      FileLock lock = channel.lock();
+      try {
+        if (record.getLong(MAGIC_OFFSET) != MAGIC) {
+          record.putLong(VERSION_OFFSET, 0);
+          record.putDouble(SCORE_OFFSET, FileHighScoreStore.read(Paths.get(seedFileName)));
+          record.putLong(MAGIC_OFFSET, MAGIC);
+          record.force();
+        }
+      }
+      finally {
+        lock.release();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not map high score record " + fileName, e);
+    }
+  }
+  
+  /** @return the high score in the record */
+  public double getHighScore() {
+    return Double.longBitsToDouble((long) LONGS.getVolatile(record, SCORE_OFFSET));
+  }
+  
+  /**
+   * gets the number of high scores posted to the record since it was created
+   * @return the version
+   */
+  public long getVersion() {
+    return (long) LONGS.getVolatile(record, VERSION_OFFSET);
+  }
+  
+  /**
+   * raises the high score in the record if the given score beats it
+   * @param score the score of a finished game
+   * @return whether the score was a new high score
+   */
+  public boolean submit(double score) {
+    if (!useLock) {
+      try {
+        return compareAndMax(score);
+      }
+      catch (UnsupportedOperationException | IllegalStateException e) {
+        useLock = true;
+      }
+    }
+    return lockAndMax(score);
+  }
+  
+  /**
+   * raises the score with compare and set on the mapped memory
+   * @param score the new score
+   * @return whether it was raised
+   */
+  private boolean compareAndMax(double score) {
+    long newBits = Double.doubleToLongBits(score);
+    long current = (long) LONGS.getVolatile(record, SCORE_OFFSET);
+    
+    while (score > Double.longBitsToDouble(current)) {
+      long witness = (long) LONGS.compareAndExchange(record, SCORE_OFFSET, current, newBits);
+      if (witness == current) {
+        LONGS.getAndAdd(record, VERSION_OFFSET, 1L);
+        return true;
+      }
+      current = witness;
+    }
+    return false;
+  }
+  
+  /**
+   * raises the score while holding the file lock
+   * @param score the new score
+   * @return whether it was raised
+   */
+  private synchronized boolean lockAndMax(double score) {
+    try {
+      FileLock lock = channel.lock();
+      try {
+        // a writer in another process may not hold the lock, so the lock alone does not make a plain write safe
+        return compareAndMax(score);
+      }
+      catch (UnsupportedOperationException | IllegalStateException e) {
+        // no writer on this platform can compare and set, so every one of them holds the lock
+        if (score <= record.getDouble(SCORE_OFFSET))
+          return false;
+        record.putDouble(SCORE_OFFSET, score);
+        record.putLong(VERSION_OFFSET, record.getLong(VERSION_OFFSET) + 1);
+        return true;
+      }
+      finally {
+        lock.release();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not lock high score record", e);
+    }
+  }
+  
+  /** writes the mapped record back to the file */
+  public void flush() {
+    record.force();
+  }
+  
+  /** flushes the record and closes the file */
+  public void close() throws IOException {
+    flush();
+    channel.close();
+  }
+}
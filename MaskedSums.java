@@ -0,0 +1,321 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+/**
+ * kernels that total the values of the closed boxes of a board straight
+ * from its open mask, and that price many candidate sets of boxes to open
+ * in one pass. each has a scalar form, which visits only the closed boxes,
+ * and an unrolled form, which runs branch free over every value in four
+ * independent lanes so the processor can keep several additions in flight.
+ * the unrolled forms win once at least half the boxes are closed or there
+ * are many candidates, and are chosen then unless -Ddealgame.kernel=scalar
+ * is given. the Maven build also compiles MaskedSumsVector, which totals
+ * closed boxes and prices candidates with the incubating vector API; it
+ * takes the place of the unrolled kernels when the JVM runs with
+ * --add-modules jdk.incubator.vector, unless -Ddealgame.kernel=unrolled is
+ * given
+ */
+public final class MaskedSums {
+  
+  /** This is the system property that selects the kernels */
+  public static final String KERNEL_PROPERTY = "dealgame.kernel";
+  
+  /** whether the unrolled kernels are used */
+  public static final boolean UNROLLED = !"scalar".equals(System.getProperty(KERNEL_PROPERTY));
+  
+  /** MaskedSumsVector.closedSums, or null if it was not built or the vector module is missing */
+  private static final MethodHandle VECTOR_CLOSED_SUMS =
+    findVectorKernel("closedSums", MethodType.methodType(void.class, double[].class, long[].class, double[].class));
+  
+  /** MaskedSumsVector.offers, or null if it was not built or the vector module is missing */
+  private static final MethodHandle VECTOR_OFFERS =
+    findVectorKernel("offers", MethodType.methodType(void.class, double[].class, long.class, long[].class,
+                                                     double.class, double[].class));
+  
+  /** whether the vector API kernels are used in place of the unrolled ones */
+  public static final boolean VECTORIZED = UNROLLED && VECTOR_CLOSED_SUMS != null && VECTOR_OFFERS != null &&
+    !"unrolled".equals(System.getProperty(KERNEL_PROPERTY));
+  
+  /** These are the positions of the results of closedSums */
+  public static final int COUNT = 0, SUM = 1, SUM_OF_SQUARES = 2;
+  
+  /** This is the number of candidates below which offers walks bits instead of building tables */
+  private static final int TABLE_CANDIDATES = 256;
+  
+  /** the weight of each of four boxes, 0 or 1, for every nibble of a closed mask */
+  private static final double[] NIBBLE_WEIGHTS = new double[64];
+  
+  static {
+    for (int i = 0; i < NIBBLE_WEIGHTS.length; ++i)
+      NIBBLE_WEIGHTS[i] = (i >>> 2) >>> (i & 3) & 1;
+  }
+  
+  /** not instantiable */
+  private MaskedSums() {
+  }
+  
+  /**
+   * looks for a vector API kernel, which only the Maven build compiles and
+   * which only loads when the JVM has the incubator module
+   * @param name the name of the kernel in MaskedSumsVector
+   * @param type the kernel's type
+   * @return the kernel, or null
+   */
+  private static MethodHandle findVectorKernel(String name, MethodType type) {
+    try {
+      return MethodHandles.lookup().findStatic(Class.forName("MaskedSumsVector"), name, type);
+    }
+    catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+  
+  /**
+   * totals the closed boxes of a board with the kernel best suited to how
+   * many are closed
+   * @param values the value in each box
+   * @param openMask bit i of word i / 64 set while box i is open
+   * @param sums receives the count, sum and sum of squares of the closed
+   *        values at COUNT, SUM and SUM_OF_SQUARES
+   */
+  public static void closedSums(double[] values, long[] openMask, double[] sums) {
+    long closed = 0;
+    for (int word = 0; word < openMask.length; ++word)
+      closed += Long.bitCount(closedWord(values.length, openMask, word));
+    
+    if (VECTORIZED && closed * 2 >= values.length)
+      closedSumsVector(values, openMask, sums);
+    else if (UNROLLED && closed * 2 >= values.length)
+      closedSumsUnrolled(values, openMask, sums);
+    else
+      closedSumsScalar(values, openMask, sums);
+  }
+  
+  /**
+   * totals the closed boxes of a board with the vector API kernel
+   * @param values the value in each box
+   * @param openMask bit i of word i / 64 set while box i is open
+   * @param sums receives the count, sum and sum of squares
+   * @throws UnsupportedOperationException if the kernel was not built or
+   *         the JVM lacks the jdk.incubator.vector module
+   */
+  public static void closedSumsVector(double[] values, long[] openMask, double[] sums) {
+    if (VECTOR_CLOSED_SUMS == null)
+      throw new UnsupportedOperationException("The vector kernel needs the Maven build and jdk.incubator.vector");
+    try {
+      VECTOR_CLOSED_SUMS.invokeExact(values, openMask, sums);
+    }
+    catch (RuntimeException | Error e) {
+      throw e;
+    }
+    catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  /**
+   * totals the closed boxes of a board by visiting each one
+   * @param values the value in each box
+   * @param openMask bit i of word i / 64 set while box i is open
+   * @param sums receives the count, sum and sum of squares
+   */
+  public static void closedSumsScalar(double[] values, long[] openMask, double[] sums) {
+    long count = 0;
+    double sum = 0, sumOfSquares = 0;
+    for (int word = 0; word < openMask.length; ++word) {
+      long closed = closedWord(values.length, openMask, word);
+      count += Long.bitCount(closed);
+      for (; closed != 0; closed &= closed - 1) {
+        double value = values[(word << 6) + Long.numberOfTrailingZeros(closed)];
+        sum += value;
+        sumOfSquares += value * value;
+      }
+    }
+    sums[COUNT] = count;
+    sums[SUM] = sum;
+    sums[SUM_OF_SQUARES] = sumOfSquares;
+  }
+  
+  /**
+   * totals the closed boxes of a board branch free, turning each mask bit
+   * into a weight of 0 or 1
+   * @param values the value in each box
+   * @param openMask bit i of word i / 64 set while box i is open
+   * @param sums receives the count, sum and sum of squares
+   */
+  public static void closedSumsUnrolled(double[] values, long[] openMask, double[] sums) {
+    long count = 0;
+    double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+    double q0 = 0, q1 = 0, q2 = 0, q3 = 0;
+    int fullWords = values.length >>> 6;
+    
+    for (int word = 0; word < fullWords; ++word) {
+      long closed = ~openMask[word];
+      count += Long.bitCount(closed);
+      for (int bit = 0, base = word << 6; bit < 64; bit += 4) {
+        int w = (int) (closed >>> bit & 15) << 2;
+        double v0 = values[base + bit] * NIBBLE_WEIGHTS[w], v1 = values[base + bit + 1] * NIBBLE_WEIGHTS[w + 1];
+        double v2 = values[base + bit + 2] * NIBBLE_WEIGHTS[w + 2], v3 = values[base + bit + 3] * NIBBLE_WEIGHTS[w + 3];
+        s0 += v0;
+        s1 += v1;
+        s2 += v2;
+        s3 += v3;
+        q0 += v0 * v0;
+        q1 += v1 * v1;
+        q2 += v2 * v2;
+        q3 += v3 * v3;
+      }
+    }
+    
+    // the last partial word
+    if (fullWords < openMask.length) {
+      long closed = closedWord(values.length, openMask, fullWords);
+      count += Long.bitCount(closed);
+      for (; closed != 0; closed &= closed - 1) {
+        double value = values[(fullWords << 6) + Long.numberOfTrailingZeros(closed)];
+        s0 += value;
+        q0 += value * value;
+      }
+    }
+    sums[COUNT] = count;
+    sums[SUM] = (s0 + s1) + (s2 + s3);
+    sums[SUM_OF_SQUARES] = (q0 + q1) + (q2 + q3);
+  }
+  
+  /**
+   * gets the closed boxes of one word of a mask, leaving out the bits past
+   * the last box
+   * @param size the number of boxes
+   * @param openMask the open mask
+   * @param word the word
+   * @return bit set for each closed box in the word
+   */
+  static long closedWord(int size, long[] openMask, int word) {
+    int past = size - (word << 6);
+    long valid = past >= 64 ? -1L : (1L << past) - 1;
+    return ~openMask[word] & valid;
+  }
+  
+  /**
+   * prices many candidate sets of boxes to open on a board of at most 64
+   * boxes. the offer for a candidate is scale times the average of the
+   * closed boxes it leaves, and a candidate that leaves none is offered 0
+   * @param values the value in each box
+   * @param closed bit i set while box i is closed
+   * @param candidates bit i of each set while the candidate opens box i;
+   *        boxes already open are ignored
+   * @param scale the multiple of the average offered, the round number
+   *        times the variant's offer multiplier
+   * @param offers receives the offer for each candidate
+   * @param subsetSums scratch space of at least subsetTableSize(values.length)
+   *        entries, kept by the caller so pricing does not allocate
+   */
+  public static void offers(double[] values, long closed, long[] candidates, double scale, double[] offers,
+                            double[] subsetSums) {
+    if (VECTORIZED)
+      offersVector(values, closed, candidates, scale, offers);
+    else if (UNROLLED && candidates.length >= TABLE_CANDIDATES)
+      offersUnrolled(values, closed, candidates, scale, offers, subsetSums);
+    else
+      offersScalar(values, closed, candidates, scale, offers);
+  }
+  
+  /**
+   * gets the size of the scratch space offers needs
+   * @param boxes the number of boxes on the board
+   * @return the number of entries
+   */
+  public static int subsetTableSize(int boxes) {
+    return ((boxes + 7) >>> 3) << 8;
+  }
+  
+  /**
+   * prices candidates with the vector API kernel
+   * @param values the value in each box
+   * @param closed bit i set while box i is closed
+   * @param candidates bit i of each set while the candidate opens box i
+   * @param scale the multiple of the average offered
+   * @param offers receives the offer for each candidate
+   * @throws UnsupportedOperationException if the kernel was not built or
+   *         the JVM lacks the jdk.incubator.vector module
+   */
+  public static void offersVector(double[] values, long closed, long[] candidates, double scale, double[] offers) {
+    if (VECTOR_OFFERS == null)
+      throw new UnsupportedOperationException("The vector kernel needs the Maven build and jdk.incubator.vector");
+    try {
+      VECTOR_OFFERS.invokeExact(values, closed, candidates, scale, offers);
+    }
+    catch (RuntimeException | Error e) {
+      throw e;
+    }
+    catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  /**
+   * prices candidates by visiting each box they open
+   * @param values the value in each box
+   * @param closed bit i set while box i is closed
+   * @param candidates bit i of each set while the candidate opens box i
+   * @param scale the multiple of the average offered
+   * @param offers receives the offer for each candidate
+   */
+  public static void offersScalar(double[] values, long closed, long[] candidates, double scale, double[] offers) {
+    double total = 0;
+    for (long m = closed; m != 0; m &= m - 1)
+      total += values[Long.numberOfTrailingZeros(m)];
+    int count = Long.bitCount(closed);
+    
+    for (int c = 0; c < candidates.length; ++c) {
+      long removed = candidates[c] & closed;
+      double sum = total;
+      for (; removed != 0; removed &= removed - 1)
+        sum -= values[Long.numberOfTrailingZeros(removed)];
+      int left = count - Long.bitCount(candidates[c] & closed);
+      offers[c] = left == 0 ? 0 : scale * sum / left;
+    }
+  }
+  
+  /**
+   * prices candidates from tables of the sum of every subset of each byte
+   * of the board, so each candidate costs one lookup per eight boxes however
+   * many it opens
+   * @param values the value in each box
+   * @param closed bit i set while box i is closed
+   * @param candidates bit i of each set while the candidate opens box i
+   * @param scale the multiple of the average offered
+   * @param offers receives the offer for each candidate
+   * @param table scratch space of at least subsetTableSize(values.length)
+   *        entries, overwritten with the subset sums
+   */
+  public static void offersUnrolled(double[] values, long closed, long[] candidates, double scale, double[] offers,
+                                    double[] table) {
+    int bytes = (values.length + 7) >>> 3;
+    double total = 0;
+    for (int b = 0; b < bytes; ++b) {
+      // each subset adds its highest box to the subset without it
+      int base = b << 8;
+      table[base] = 0;
+      for (int subset = 1; subset < 256; ++subset) {
+        int high = 31 - Integer.numberOfLeadingZeros(subset);
+        int box = (b << 3) + high;
+        table[base + subset] = table[base + (subset & ~(1 << high))] + (box < values.length ? values[box] : 0);
+      }
+      total += table[base + (int) ((closed >>> (b << 3)) & 0xff)];
+    }
+    int count = Long.bitCount(closed);
+    
+    for (int c = 0; c < candidates.length; ++c) {
+      long removed = candidates[c] & closed;
+      double r0 = 0, r1 = 0;
+      for (int b = 0; b < bytes; b += 2) {
+        r0 += table[(b << 8) + (int) ((removed >>> (b << 3)) & 0xff)];
+        if (b + 1 < bytes)
+          r1 += table[((b + 1) << 8) + (int) ((removed >>> ((b + 1) << 3)) & 0xff)];
+      }
+      int left = count - Long.bitCount(removed);
+      offers[c] = left == 0 ? 0 : scale * (total - (r0 + r1)) / left;
+    }
+  }
+}
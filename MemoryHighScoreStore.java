@@ -0,0 +1,42 @@
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * keeps the high score in memory only, for tests and simulations
+ */
+public class MemoryHighScoreStore implements HighScoreStore {
+
+  /** the bits of the high score, so it can be raised with compare and set */
+  private final AtomicLong highScoreBits;
+  
+  /** creates a store with no high score */
+  public MemoryHighScoreStore() {
+    this(0);
+  }
+  
+  /**
+   * creates a store starting from a given high score
+   * @param highScore the starting high score
+   */
+  public MemoryHighScoreStore(double highScore) {
+    highScoreBits = new AtomicLong(Double.doubleToLongBits(highScore));
+  }
+  
+  /** @return the high score */
+  public double getHighScore() {
+    return Double.longBitsToDouble(highScoreBits.get());
+  }
+  
+  /**
+   * raises the high score if the given score beats it
+   * @param score the score of a finished game
+   * @return whether the score was a new high score
+   */
+  public boolean submit(double score) {
+    long current = highScoreBits.get();
+    while (score > Double.longBitsToDouble(current)) {
+      if (highScoreBits.compareAndSet(current, Double.doubleToLongBits(score)))
+        return true;
+      current = highScoreBits.get();
+    }
+    return false;
+  }
+}
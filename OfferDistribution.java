@@ -0,0 +1,187 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+/**
+ * the exact distribution of the banker's next offer. every set of boxes the
+ * next round can open is equally likely, so the distribution is found by
+ * enumerating all of them. the enumeration walks the choose/skip tree of the
+ * remaining values carrying the sum removed so far, so each subset costs a
+ * constant amount of work, and large subtrees are split across cores with
+ * fork/join. each subtree writes its offers into its own slice of the
+ * result, located with binomial coefficients, so nothing has to be merged
+ */
+public class OfferDistribution {
+
+  /** This is the number of subsets below which a subtree is enumerated on one thread */
+  private static final int SEQUENTIAL_SUBSETS = 1 << 12;
+  
+  /** This is the most subsets enumerated, about 32 megabytes of offers, which keeps a call to a few milliseconds */
+  public static final int MAX_OUTCOMES = 1 << 22;
+  
+  /** every possible next offer in ascending order, one per subset of opened boxes */
+  private final double[] offers;
+  
+  /** the offer the next offers are compared against */
+  private final double currentOffer;
+  
+  /**
+   * enumerates the next round's offers
+   * @param values the values of the unopened boxes, including the player's box,
+   *        whose value the player does not know
+   * @param opened the number of boxes the next round opens
+   * @param nextRound the number of the next round
+   * @param currentOffer the offer of the round that just ended
+   */
+  public OfferDistribution(double[] values, int opened, int nextRound, double currentOffer) {
+    this(values, opened, nextRound, currentOffer, GameVariant.STANDARD_OFFER_MULTIPLIER);
+  }
+  
+  /**
+   * enumerates the next round's offers for a banker offering a given share
+   * of the average per round number
+   * @param values the values of the unopened boxes, including the player's box
+   * @param opened the number of boxes the next round opens
+   * @param nextRound the number of the next round
+   * @param currentOffer the offer of the round that just ended
+   * @param offerMultiplier the share of the average offered per round number
+   * @throws IllegalArgumentException if there are more than MAX_OUTCOMES subsets
+   */
+  public OfferDistribution(double[] values, int opened, int nextRound, double currentOffer, double offerMultiplier) {
+    if (opened < 1 || opened >= values.length)
+      throw new IllegalArgumentException("Cannot open " + opened + " of " + values.length + " boxes");
+    this.currentOffer = currentOffer;
+    
+    double total = 0;
+    for (double value : values)
+      total += value;
+    
+    long count = binomial(values.length, opened);
+    if (count > MAX_OUTCOMES)
+      throw new IllegalArgumentException("Too many subsets to enumerate: " + count);
+    offers = new double[(int) count];
+    
+    // the offer is linear in the removed sum
+    double scale = nextRound * offerMultiplier / (values.length - opened);
+    ForkJoinPool.commonPool().invoke(new Enumerate(values, offers, 0, opened, 0, 0, total, scale));
+    Arrays.parallelSort(offers);
+  }
+  
+  /**
+   * calculates a binomial coefficient
+   * @param n number of items
+   * @param k number chosen
+   * @return n choose k, or Long.MAX_VALUE if it does not fit in a long
+   */
+  static long binomial(int n, int k) {
+    if (k < 0 || k > n)
+      return 0;
+    k = Math.min(k, n - k);
+    long result = 1;
+    try {
+      for (int i = 1; i <= k; ++i)
+        result = Math.multiplyExact(result, n - k + i) / i;
+    }
+    catch (ArithmeticException e) {
+      return Long.MAX_VALUE;
+    }
+    return result;
+  }
+  
+  /** enumerates the subsets of values from one point of the choose/skip tree */
+  private static class Enumerate extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    
+    private final double[] values, offers;
+    private final int next, needed, offset;
+    private final double removed, total, scale;
+    
+    Enumerate(double[] values, double[] offers, int next, int needed, int offset,
+              double removed, double total, double scale) {
+      this.values = values;
+      this.offers = offers;
+      this.next = next;
+      this.needed = needed;
+      this.offset = offset;
+      this.removed = removed;
+      this.total = total;
+      this.scale = scale;
+    }
+    
+    protected void compute() {
+      if (binomial(values.length - next, needed) <= SEQUENTIAL_SUBSETS) {
+        walk(next, needed, offset, removed);
+        return;
+      }
+      // subsets that open values[next] come first, then those that skip it
+      int withNext = (int) binomial(values.length - next - 1, needed - 1);
+      invokeAll(new Enumerate(values, offers, next + 1, needed - 1, offset, removed + values[next], total, scale),
+                new Enumerate(values, offers, next + 1, needed, offset + withNext, removed, total, scale));
+    }
+    
+    /**
+     * writes the offers of every subset below a point of the tree, in the same order compute splits them
+     * @param index the next value to choose or skip
+     * @param left how many more values to choose
+     * @param at where the first offer goes
+     * @param sum the sum of the values chosen so far
+     * @return where the offer after the last one goes
+     */
+    private int walk(int index, int left, int at, double sum) {
+      if (left == 0) {
+        offers[at] = (total - sum) * scale;
+        return at + 1;
+      }
+      for (int i = index; i <= values.length - left; ++i)
+        at = walk(i + 1, left - 1, at, sum + values[i]);
+      return at;
+    }
+  }
+  
+  /** @return the number of equally likely outcomes */
+  public int getOutcomes() {
+    return offers.length;
+  }
+  
+  /** @return the expected next offer */
+  public double getMean() {
+    double sum = 0;
+    for (double offer : offers)
+      sum += offer;
+    return sum / offers.length;
+  }
+  
+  /**
+   * gets the smallest offer that at least a given share of outcomes do not exceed
+   * @param p the share, from 0 to 1
+   * @return the quantile
+   */
+  public double getQuantile(double p) {
+    if (p < 0 || p > 1)
+      throw new IllegalArgumentException("Quantile must be between 0 and 1");
+    int index = (int) Math.ceil(p * offers.length) - 1;
+    return offers[Math.max(0, index)];
+  }
+  
+  /** @return the probability that the next offer is higher than the current one */
+  public double getProbabilityOfRise() {
+    int lo = 0, hi = offers.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (offers[mid] <= currentOffer)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return (double) (offers.length - lo) / offers.length;
+  }
+  
+  /**
+   * writes out a summary of the distribution
+   * @return the summary
+   */
+  public String toString() {
+    return String.format("%d outcomes: mean %.2f, p10 %.2f, median %.2f, p90 %.2f, P(rise) %.3f",
+                         offers.length, getMean(), getQuantile(0.1), getQuantile(0.5), getQuantile(0.9),
+                         getProbabilityOfRise());
+  }
+}
@@ -0,0 +1,111 @@
+import java.util.random.RandomGenerator;
+/**
+ * decides how a simulated player plays a game: which box to keep, the
+ * order boxes are opened in, and whether to take each offer.
+ * implementations are called once per move, so they should not allocate
+ */
+public interface PlayerPolicy {
+
+  /**
+   * picks the box the player keeps for the whole game
+   * @param boxes the board, with every box still closed
+   * @param rand source of randomness for this game
+   * @return index of the player's box
+   */
+  int chooseOwnBox(BoxList boxes, RandomGenerator rand);
+  
+  /**
+   * picks the next box to open
+   * @param boxes the board
+   * @param playerIndex index of the player's box, which must not be opened
+   * @param rand source of randomness for this game
+   * @return index of an unopened box other than the player's
+   */
+  int nextBoxToOpen(BoxList boxes, int playerIndex, RandomGenerator rand);
+  
+  /**
+   * decides whether to take the banker's offer at the end of a round
+   * @param offer the banker's offer
+   * @param round the round that just ended
+   * @param boxes the board
+   * @return true for deal, false for no deal
+   */
+  boolean acceptOffer(double offer, int round, BoxList boxes);
+  
+  /**
+   * decides, after refusing the last offer, whether to swap for the other box
+   * @param boxes the board, with only the player's box and one other closed
+   * @param playerIndex index of the player's box
+   * @param rand source of randomness for this game
+   * @return true to swap boxes
+   */
+  boolean swapLastBox(BoxList boxes, int playerIndex, RandomGenerator rand);
+  
+  /**
+   * a player who opens boxes at random and takes the first offer worth at
+   * least a given share of the remaining average, never swapping at the end
+   * @param ratio share of the average value that makes an offer acceptable
+   * @return the policy
+   */
+  static PlayerPolicy threshold(double ratio) {
+    return new PlayerPolicy() {
+      public int chooseOwnBox(BoxList boxes, RandomGenerator rand) {
+        return rand.nextInt(boxes.size());
+      }
+      
+      public int nextBoxToOpen(BoxList boxes, int playerIndex, RandomGenerator rand) {
+        // the player's box is still closed, so draw among the others and skip over it
+        int index = boxes.unopenedIndexAt(rand.nextInt(boxes.countOfUnopenedBoxes() - 1));
+        return index < playerIndex ? index : boxes.nextUnopened(index + 1);
+      }
+      
+      public boolean acceptOffer(double offer, int round, BoxList boxes) {
+        return offer >= ratio * boxes.averageValueOfUnopenedBoxes();
+      }
+      
+      public boolean swapLastBox(BoxList boxes, int playerIndex, RandomGenerator rand) {
+        return false;
+      }
+    };
+  }
+  
+  /**
+   * a player who opens boxes at random and takes exactly the offers the
+   * solver says are worth at least as much as playing on. the table is of
+   * the standard game with its own banker, so it cannot play any other
+   * @param solver the policy table
+   * @param variant the rules of the games to be played
+   * @return the policy
+   * @throws IllegalArgumentException if the variant is not the standard game
+   */
+  static PlayerPolicy optimal(PolicySolver solver, GameVariant variant) {
+    if (!variant.isStandard())
+      throw new IllegalArgumentException("A policy table only plays the standard game, not " + variant);
+    PlayerPolicy random = neverDeal();
+    return new PlayerPolicy() {
+      public int chooseOwnBox(BoxList boxes, RandomGenerator rand) {
+        return random.chooseOwnBox(boxes, rand);
+      }
+      
+      public int nextBoxToOpen(BoxList boxes, int playerIndex, RandomGenerator rand) {
+        return random.nextBoxToOpen(boxes, playerIndex, rand);
+      }
+      
+      public boolean acceptOffer(double offer, int round, BoxList boxes) {
+        return solver.shouldDeal((int) boxes.unopenedRankMask());
+      }
+      
+      public boolean swapLastBox(BoxList boxes, int playerIndex, RandomGenerator rand) {
+        return false;
+      }
+    };
+  }
+  
+  /**
+   * a player who never takes a deal and plays to the last box
+   * @return the policy
+   */
+  static PlayerPolicy neverDeal() {
+    return threshold(Double.POSITIVE_INFINITY);
+  }
+}
@@ -0,0 +1,279 @@
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.stream.IntStream;
+/**
+ * works out the best deal or no deal decision for every set of values that
+ * can remain at the end of a round. the state is the set of values still in
+ * play as a 26-bit mask over DealGame.BOX_VALUES, which also fixes the round.
+ * the player's box is equally likely to be any remaining box, so the boxes
+ * left after the next round are a uniformly random subset of the current ones.
+ *
+ * for each state the table holds the certainty equivalent of refusing the
+ * offer and playing on optimally, as a float in a memory-mapped file with
+ * one entry per mask. entries are solved on demand and shared by every
+ * thread; solveAll fills the whole table in parallel. once a table file has
+ * been built, a restarted process answers hints with a single lookup. the
+ * file starts with a header naming the risk aversion and rules it was solved
+ * for, and a table solved for anything else is thrown away and solved again.
+ * risk aversion uses constant relative risk aversion utility, 0 being a
+ * player who only cares about expected value. the table only describes the
+ * standard game and its banker, see GameVariant.isStandard
+ */
+public class PolicySolver implements Closeable {
+
+  /** This is the number of distinct states */
+  public static final int STATES = 1 << DealGame.NUM_BOXES;
+  
+  /** This marks a policy table file that has been initialized ("POLICYTB") */
+  private static final long MAGIC = 0x504f4c4943595442L;
+  
+  /** This is the layout of the table, changed whenever its entries change meaning */
+  private static final int FORMAT_VERSION = 1;
+  
+  /** These are the byte offsets of the header fields and the size of the header */
+  private static final int MAGIC_OFFSET = 0, FORMAT_OFFSET = 8, RISK_OFFSET = 16, CHECKSUM_OFFSET = 24,
+                           HEADER_SIZE = 32;
+  
+  /** the round whose offer is made when a given number of boxes remain, or 0 if none is */
+  private static final int[] ROUND_AT_REMAINING = new int[DealGame.NUM_BOXES + 1];
+  
+  static {
+    int remaining = DealGame.NUM_BOXES;
+    for (int round = 1; round < DealGame.NUM_ROUNDS; ++round) {
+      remaining -= DealGame.BOXES_IN_ROUND[round];
+      ROUND_AT_REMAINING[remaining] = round;
+    }
+  }
+  
+  /** the table file */
+  private final FileChannel channel;
+  
+  /** the solved continuation values, zero where a state has not been solved */
+  private final MappedByteBuffer table;
+  
+  /** the relative risk aversion of the player */
+  private final double riskAversion;
+  
+  /**
+   * maps a table file, creating an empty one if needed. a table solved for
+   * another risk aversion, other rules or an older layout is emptied
+   * @param fileName name of the table file, which should differ per risk aversion
+   * @param riskAversion the relative risk aversion, 0 for expected value
+   */
+  public PolicySolver(String fileName, double riskAversion) {
+    this.riskAversion = riskAversion;
+    try {
+      channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                                 StandardOpenOption.READ, StandardOpenOption.WRITE);
+      
+      FileLock lock = channel.lock();
+      try {
+        long checksum = GameVariant.STANDARD.getChecksum();
+        boolean matches = channel.size() >= HEADER_SIZE;
+        if (matches) {
+          MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+          header.order(ByteOrder.nativeOrder());
+          matches = header.getLong(MAGIC_OFFSET) == MAGIC && header.getInt(FORMAT_OFFSET) == FORMAT_VERSION &&
+            Double.compare(header.getDouble(RISK_OFFSET), riskAversion) == 0 &&
+            header.getLong(CHECKSUM_OFFSET) == checksum;
+        }
+        // solved entries are only valid for the header they were solved under
+        if (!matches)
+          channel.truncate(0);
+        
+        table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) STATES * Float.BYTES);
+        table.order(ByteOrder.nativeOrder());
+        
+        if (!matches) {
+          table.putInt(FORMAT_OFFSET, FORMAT_VERSION);
+          table.putDouble(RISK_OFFSET, riskAversion);
+          table.putLong(CHECKSUM_OFFSET, checksum);
+          table.putLong(MAGIC_OFFSET, MAGIC);
+          table.force();
+        }
+      }
+      finally {
+        lock.release();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not map policy table " + fileName, e);
+    }
+  }
+  
+  /**
+   * gets the round whose offer is made with a given set of values remaining
+   * @param mask the remaining value mask
+   * @return the round, or 0 if no offer is made with that many boxes left
+   */
+  public static int roundOf(int mask) {
+    return ROUND_AT_REMAINING[Integer.bitCount(mask)];
+  }
+  
+  /**
+   * calculates the banker's offer with a given set of values remaining
+   * @param mask the remaining value mask
+   * @return the offer
+   */
+  public static double offer(int mask) {
+    double sum = 0;
+    for (int m = mask; m != 0; m &= m - 1)
+      sum += DealGame.BOX_VALUES[Integer.numberOfTrailingZeros(m)];
+    return DealGame.calculateOffer(sum / Integer.bitCount(mask), roundOf(mask));
+  }
+  
+  /**
+   * decides whether the offer with a given set of values remaining should be taken
+   * @param mask the remaining value mask, which must be an end of round state
+   * @return true for deal
+   */
+  public boolean shouldDeal(int mask) {
+    return offer(mask) >= continuationValue(mask);
+  }
+  
+  /**
+   * gets the certainty equivalent of refusing the offer and playing on
+   * optimally, solving the state first if needed
+   * @param mask the remaining value mask, which must be an end of round state
+   * @return the value of no deal
+   */
+  public double continuationValue(int mask) {
+    float stored = table.getFloat(HEADER_SIZE + mask * Float.BYTES);
+    if (stored != 0)
+      return stored;
+    
+    float solved = (float) solve(mask);
+    table.putFloat(HEADER_SIZE + mask * Float.BYTES, solved);
+    return solved;
+  }
+  
+  /**
+   * gets the certainty equivalent of the best decision in a state
+   * @param mask the remaining value mask
+   * @return the value of the state
+   */
+  public double value(int mask) {
+    return Math.max(offer(mask), continuationValue(mask));
+  }
+  
+  /**
+   * works out the value of refusing the offer in a state from the states
+   * the next round can lead to
+   * @param mask the remaining value mask
+   * @return the certainty equivalent of no deal
+   */
+  private double solve(int mask) {
+    int round = roundOf(mask);
+    if (round == 0)
+      throw new IllegalArgumentException("No offer is made with " + Integer.bitCount(mask) + " boxes left");
+    
+    int remaining = Integer.bitCount(mask);
+    int[] bits = new int[remaining];
+    for (int i = 0, m = mask; m != 0; m &= m - 1)
+      bits[i++] = Integer.numberOfTrailingZeros(m);
+    
+    // after the last round the player keeps or swaps one of the two boxes blind
+    if (round == DealGame.NUM_ROUNDS - 1) {
+      double expected = 0;
+      for (int bit : bits)
+        expected += utility(DealGame.BOX_VALUES[bit]);
+      return certaintyEquivalent(expected / remaining);
+    }
+    
+    // every way of choosing the boxes opened next round is equally likely
+    int opened = DealGame.BOXES_IN_ROUND[round + 1];
+    double expected = 0;
+    long outcomes = 0;
+    for (int choice = (1 << opened) - 1; choice < 1 << remaining; choice = nextCombination(choice)) {
+      int next = mask;
+      for (int c = choice; c != 0; c &= c - 1)
+        next &= ~(1 << bits[Integer.numberOfTrailingZeros(c)]);
+      expected += utility(value(next));
+      ++outcomes;
+    }
+    return certaintyEquivalent(expected / outcomes);
+  }
+  
+  /**
+   * steps to the next larger number with the same number of set bits
+   * @param c the current combination
+   * @return the next combination
+   */
+  private static int nextCombination(int c) {
+    int lowest = c & -c;
+    int ripple = c + lowest;
+    return ripple | (((c ^ ripple) >>> 2) / lowest);
+  }
+  
+  /**
+   * the player's utility for an amount of money
+   * @param amount the amount
+   * @return the utility
+   */
+  private double utility(double amount) {
+    if (riskAversion == 0)
+      return amount;
+    if (riskAversion == 1)
+      return Math.log(amount);
+    return Math.pow(amount, 1 - riskAversion) / (1 - riskAversion);
+  }
+  
+  /**
+   * the amount of money with a given utility
+   * @param utility the utility
+   * @return the amount
+   */
+  private double certaintyEquivalent(double utility) {
+    if (riskAversion == 0)
+      return utility;
+    if (riskAversion == 1)
+      return Math.exp(utility);
+    return Math.pow(utility * (1 - riskAversion), 1 / (1 - riskAversion));
+  }
+  
+  /**
+   * solves every end of round state, smallest boards first so each level
+   * only reads states that are already solved, spreading each level across
+   * every core. this visits every mask, so it takes a while
+   */
+  public void solveAll() {
+    for (int remaining = 2; remaining < DealGame.NUM_BOXES; ++remaining) {
+      if (ROUND_AT_REMAINING[remaining] == 0)
+        continue;
+      int level = remaining;
+      IntStream.range(0, STATES).parallel()
+        .filter(mask -> Integer.bitCount(mask) == level)
+        .forEach(this::continuationValue);
+    }
+    flush();
+  }
+  
+  /** writes the table back to its file */
+  public void flush() {
+    table.force();
+  }
+  
+  /** flushes the table and closes its file */
+  public void close() throws IOException {
+    flush();
+    channel.close();
+  }
+  
+  /**
+   * solves the whole table for a risk aversion from the command line
+   * @param args table file name and optional risk aversion
+   * @throws IOException if the table cannot be closed
+   */
+  public static void main(String[] args) throws IOException {
+    double riskAversion = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+    try (PolicySolver solver = new PolicySolver(args[0], riskAversion)) {
+      long start = System.nanoTime();
+      solver.solveAll();
+      System.out.printf("Solved in %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+import java.io.*;
+/**
+ * a mergeable sketch of a distribution of non-negative amounts, in the style
+ * of DDSketch: each value is counted in a bucket whose bounds grow by a
+ * fixed ratio, so every quantile it reports is within a set relative error
+ * of a value actually recorded. memory depends only on the range of the
+ * values, never on how many are recorded, and two sketches merge by adding
+ * bucket counts. a sketch is not thread safe; give each worker its own and
+ * merge them when the workers are done
+ */
+public class QuantileSketch {
+  
+  /** This is the relative error of the reported quantiles */
+  public static final double RELATIVE_ACCURACY = 0.01;
+  
+  /** This is the smallest amount given its own bucket, smaller ones are counted as zero */
+  public static final double MIN_AMOUNT = 0.005;
+  
+  /** the ratio between the bounds of consecutive buckets */
+  private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+  
+  /** the natural log of GAMMA */
+  private static final double LOG_GAMMA = Math.log(GAMMA);
+  
+  /** the lowest and highest bucket indices a finite amount can fall in */
+  private static final int MIN_INDEX = (int) Math.ceil(Math.log(MIN_AMOUNT) / LOG_GAMMA),
+                           MAX_INDEX = (int) Math.ceil(Math.log(Double.MAX_VALUE) / LOG_GAMMA);
+  
+  /** bucket offset + i counts values v with GAMMA^(i-1) < v <= GAMMA^i, grown as values arrive */
+  private long[] buckets = new long[0];
+  
+  /** the bucket index of buckets[0] */
+  private int offset;
+  
+  /** the number of values counted as zero, and of every value */
+  private long zeros, count;
+  
+  /** the smallest and largest values recorded */
+  private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+  
+  /**
+   * records a value
+   * @param value the amount, negative amounts count as zero
+   */
+  public void record(double value) {
+    ++count;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    if (value < MIN_AMOUNT) {
+      ++zeros;
+      return;
+    }
+    int index = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    if (index < offset || index >= offset + buckets.length)
+      cover(index, index);
+    ++buckets[index - offset];
+  }
+  
+  /**
+   * grows the buckets to cover a range of indices, by at least half again
+   * on the side that grows so values arriving in order do not copy every time,
+   * but never past the indices a finite amount can fall in
+   * @param low the lowest index
+   * @param high the highest index
+   */
+  private void cover(int low, int high) {
+    if (buckets.length == 0) {
+      buckets = new long[high - low + 1];
+      offset = low;
+      return;
+    }
+    int end = offset + buckets.length;
+    int newOffset = low < offset ? Math.max(MIN_INDEX, Math.min(low, offset - buckets.length / 2)) : offset;
+    int newEnd = high >= end ? Math.min(MAX_INDEX + 1, Math.max(high + 1, end + buckets.length / 2)) : end;
+    long[] grown = new long[newEnd - newOffset];
+    System.arraycopy(buckets, 0, grown, offset - newOffset, buckets.length);
+    buckets = grown;
+    offset = newOffset;
+  }
+  
+  /**
+   * adds another sketch's values into this one
+   * @param other the sketch to add
+   * @return this sketch
+   */
+  public QuantileSketch merge(QuantileSketch other) {
+    if (other.buckets.length > 0) {
+      cover(other.offset, other.offset + other.buckets.length - 1);
+      for (int i = 0; i < other.buckets.length; ++i)
+        buckets[other.offset - offset + i] += other.buckets[i];
+    }
+    zeros += other.zeros;
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    return this;
+  }
+  
+  /** @return the number of recorded values */
+  public long getCount() {
+    return count;
+  }
+  
+  /** @return the smallest recorded value, exactly */
+  public double getMin() {
+    return min;
+  }
+  
+  /** @return the largest recorded value, exactly */
+  public double getMax() {
+    return max;
+  }
+  
+  /**
+   * estimates a quantile
+   * @param q the share of values at or below the result, from 0 to 1
+   * @return the estimate, within RELATIVE_ACCURACY of a recorded value,
+   *         or NaN if nothing has been recorded
+   */
+  public double getQuantile(double q) {
+    if (count == 0)
+      return Double.NaN;
+    if (q <= 0)
+      return min;
+    if (q >= 1)
+      return max;
+    
+    long rank = (long) Math.ceil(q * count);
+    if (rank <= zeros)
+      return Math.max(min, 0);
+    long seen = zeros;
+    for (int i = 0; i < buckets.length; ++i) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        // the point of the bucket with equal relative error to both bounds
+        double estimate = 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+        return Math.max(min, Math.min(max, estimate));
+      }
+    }
+    return max;
+  }
+  
+  /**
+   * writes the sketch to a stream, so it can be merged in another process
+   * @param out the stream
+   * @throws IOException if the stream fails
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeLong(count);
+    out.writeLong(zeros);
+    out.writeDouble(min);
+    out.writeDouble(max);
+    out.writeInt(offset);
+    out.writeInt(buckets.length);
+    for (long bucket : buckets)
+      out.writeLong(bucket);
+  }
+  
+  /**
+   * reads a sketch written by writeTo
+   * @param in the stream
+   * @return the sketch
+   * @throws IOException if the stream fails or its buckets are out of range
+   */
+  public static QuantileSketch readFrom(DataInput in) throws IOException {
+    QuantileSketch sketch = new QuantileSketch();
+    sketch.count = in.readLong();
+    sketch.zeros = in.readLong();
+    sketch.min = in.readDouble();
+    sketch.max = in.readDouble();
+    sketch.offset = in.readInt();
+    int length = in.readInt();
+    // the length comes from another process, so it is checked before anything is allocated
+    if (length < 0 || length > 0 && (sketch.offset < MIN_INDEX || (long) sketch.offset + length > MAX_INDEX + 1L))
+      throw new IOException("Sketch buckets " + sketch.offset + " to " + ((long) sketch.offset + length) + " out of range");
+    sketch.buckets = new long[length];
+    for (int i = 0; i < sketch.buckets.length; ++i)
+      sketch.buckets[i] = in.readLong();
+    return sketch;
+  }
+  
+  /** @return the number of buckets in use, which bounds the sketch's memory */
+  public int getBucketCount() {
+    return buckets.length;
+  }
+  
+  /**
+   * describes the main quantiles
+   * @return the description
+   */
+  public String toString() {
+    if (count == 0)
+      return "no values";
+    return String.format("p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+                         getQuantile(0.5), getQuantile(0.9), getQuantile(0.99), getQuantile(0.999), max);
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * read-only view of the values still in play on a board, answered from
+ * running totals and trees without allocating
+ */
+public interface RemainingValues {
+
+  /** @return the number of boxes that are still closed */
+  int countOfUnopenedBoxes();
+  
+  /** @return the total value of the unopened boxes */
+  double sumOfUnopenedBoxes();
+  
+  /** @return the average value of the unopened boxes */
+  double averageValueOfUnopenedBoxes();
+  
+  /** @return the population variance of the unopened values */
+  double varianceOfUnopenedBoxes();
+  
+  /**
+   * finds the k-th smallest value among the unopened boxes
+   * @param k position in ascending order, starting at 1
+   * @return the value
+   */
+  double kthSmallestUnopenedValue(int k);
+  
+  /** @return the smallest value still in play */
+  double minUnopenedValue();
+  
+  /** @return the largest value still in play */
+  double maxUnopenedValue();
+  
+  /** @return the median of the unopened values */
+  double medianUnopenedValue();
+  
+  /**
+   * counts the unopened boxes holding more than a given amount
+   * @param amount the threshold
+   * @return number of unopened boxes with a value above amount
+   */
+  int countOfUnopenedAbove(double amount);
+}
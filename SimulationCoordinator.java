@@ -0,0 +1,418 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+/**
+ * spreads a simulation sweep over several worker processes. every point of a
+ * grid of bankers and player thresholds is split into shards of a fixed
+ * number of games, each with its own seed drawn from the root seed, so the
+ * result does not depend on which worker plays which shard. workers attach
+ * over a socket, either started here or by hand on other hosts, and are
+ * handed one shard at a time. the coordinator listens on the loopback
+ * interface unless given another address, and turns away workers playing a
+ * different variant. results are merged per grid point as they arrive. if
+ * a worker dies, goes quiet for too long or fails a shard, the shard goes
+ * back in the queue for the others, and the sweep fails once a shard has
+ * failed MAX_SHARD_FAILURES times or every worker started here has exited
+ */
+public class SimulationCoordinator implements Closeable {
+  
+  /** This is the port the coordinator listens on by default */
+  public static final int DEFAULT_PORT = 7117;
+  
+  /** This is the version of the protocol spoken with workers */
+  public static final int PROTOCOL_VERSION = 2;
+  
+  /** These are the replies to a worker instead of a shard: the sweep is done, or the worker is turned away */
+  public static final int DONE = -1, REJECTED = -2;
+  
+  /** This is how many times a shard may fail on a worker before the sweep fails */
+  public static final int MAX_SHARD_FAILURES = 3;
+  
+  /** This is the number of games in each shard by default */
+  public static final long DEFAULT_SHARD_GAMES = 1000000;
+  
+  /** This is how long a worker may take over one shard, in milliseconds */
+  public static final int SHARD_TIMEOUT_MILLIS = 10 * 60 * 1000;
+  
+  /** one slice of the sweep */
+  private static class Shard {
+    /** the shard's number, which is also its place in shards */
+    final int id;
+    
+    /** the grid point the shard belongs to */
+    final int point;
+    
+    /** the number of games and the seed they are dealt from */
+    final long games, seed;
+    
+    /**
+     * creates a shard
+     * @param id the shard's number
+     * @param point the grid point
+     * @param games the number of games
+     * @param seed the seed
+     */
+    Shard(int id, int point, long games, long seed) {
+      this.id = id;
+      this.point = point;
+      this.games = games;
+      this.seed = seed;
+    }
+  }
+  
+  /** the listening socket */
+  private final ServerSocket serverSocket;
+  
+  /** the bankers of the grid, as read by BankerStrategy.parse */
+  private final String[] bankers;
+  
+  /** the player thresholds of the grid */
+  private final double[] thresholds;
+  
+  /** every shard of the sweep */
+  private final List<Shard> shards = new ArrayList<>();
+  
+  /** the shards not yet handed to a worker, including those of workers that died */
+  private final LinkedBlockingDeque<Shard> pending = new LinkedBlockingDeque<>();
+  
+  /** whether each shard's result has been merged, so a late duplicate is ignored */
+  private final boolean[] done;
+  
+  /** the number of times each shard has failed on a worker */
+  private final int[] failures;
+  
+  /** why the sweep failed, or null while it can still finish */
+  private volatile String failure;
+  
+  /** the number of workers attached */
+  private final AtomicInteger links = new AtomicInteger();
+  
+  /** the variant the workers must play */
+  private final GameVariant variant = GameVariant.current();
+  
+  /** the merged result of each grid point, indexed by bankers.length * threshold + banker */
+  private final SimulationResult[] results;
+  
+  /** counts down as shards complete */
+  private final CountDownLatch remaining;
+  
+  /** runs one task per attached worker */
+  private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "simulation-worker-link");
+    t.setDaemon(true);
+    return t;
+  });
+  
+  /** the worker processes started here */
+  private final List<Process> processes = new CopyOnWriteArrayList<>();
+  
+  /**
+   * creates a coordinator for a sweep and starts accepting workers on the
+   * loopback interface
+   * @param port the port to listen on, or 0 for any free port
+   * @param bankers the bankers of the grid
+   * @param thresholds the player thresholds of the grid
+   * @param games the number of games at each grid point
+   * @param shardGames the number of games in each shard
+   * @param seed the root seed
+   * @throws IOException if the port cannot be opened
+   * @throws IllegalArgumentException if a banker is not understood
+   */
+  public SimulationCoordinator(int port, String[] bankers, double[] thresholds, long games, long shardGames, long seed)
+    throws IOException {
+    this(null, port, bankers, thresholds, games, shardGames, seed);
+  }
+  
+  /**
+   * creates a coordinator for a sweep and starts accepting workers
+   * @param address the address to listen on, or null for the loopback interface
+   * @param port the port to listen on, or 0 for any free port
+   * @param bankers the bankers of the grid
+   * @param thresholds the player thresholds of the grid
+   * @param games the number of games at each grid point
+   * @param shardGames the number of games in each shard
+   * @param seed the root seed
+   * @throws IOException if the port cannot be opened
+   * @throws IllegalArgumentException if a banker is not understood
+   */
+  public SimulationCoordinator(InetAddress address, int port, String[] bankers, double[] thresholds, long games,
+                               long shardGames, long seed) throws IOException {
+    // a banker the workers cannot read would fail every shard of its grid point
+    for (String banker : bankers)
+      BankerStrategy.parse(banker, variant.getOfferMultiplier());
+    this.bankers = bankers.clone();
+    this.thresholds = thresholds.clone();
+    results = new SimulationResult[bankers.length * thresholds.length];
+    
+    // the seeds depend only on the root seed and the shard's place in the sweep
+    SplittableRandom seeds = new SplittableRandom(seed);
+    for (int point = 0; point < results.length; ++point) {
+      results[point] = new SimulationResult(variant.getNumRounds());
+      for (long start = 0; start < games; start += shardGames)
+        shards.add(new Shard(shards.size(), point, Math.min(shardGames, games - start), seeds.nextLong()));
+    }
+    pending.addAll(shards);
+    done = new boolean[shards.size()];
+    failures = new int[shards.size()];
+    remaining = new CountDownLatch(shards.size());
+    
+    serverSocket = new ServerSocket(port, 50, address == null ? InetAddress.getLoopbackAddress() : address);
+    Thread acceptor = new Thread(this::acceptWorkers, "simulation-coordinator");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+  
+  /** @return the port the coordinator is listening on */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+  
+  /**
+   * starts worker processes on this host, running this JVM's class path
+   * @param count the number of workers
+   * @throws IOException if a process cannot be started
+   */
+  public void launchWorkers(int count) throws IOException {
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    for (int i = 0; i < count; ++i) {
+      List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path")));
+      String variant = System.getProperty(GameVariant.VARIANT_PROPERTY);
+      if (variant != null)
+        command.add("-D" + GameVariant.VARIANT_PROPERTY + "=" + variant);
+      InetAddress bound = serverSocket.getInetAddress();
+      String host = bound.isAnyLocalAddress() ? "127.0.0.1" : bound.getHostAddress();
+      command.addAll(List.of("SimulationWorker", host, Integer.toString(getPort())));
+      processes.add(new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+    }
+  }
+  
+  /** accepts workers until the coordinator is closed */
+  private void acceptWorkers() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        links.incrementAndGet();
+        workers.execute(() -> {
+          try {
+            feed(socket);
+          }
+          finally {
+            links.decrementAndGet();
+          }
+        });
+      }
+      catch (IOException e) {
+        if (!serverSocket.isClosed())
+          System.err.println("Error accepting worker " + e);
+      }
+    }
+  }
+  
+  /**
+   * hands shards to one worker and merges its results until the sweep is
+   * done or the worker is lost, in which case its shard is queued again. a
+   * shard the worker reports failing is queued again too, and the worker
+   * kept on
+   * @param socket the worker's connection
+   */
+  private void feed(Socket socket) {
+    Shard shard = null;
+    try (socket;
+         DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(SHARD_TIMEOUT_MILLIS);
+      int version = in.readInt();
+      if (version != PROTOCOL_VERSION) {
+        reject(out, "Worker speaks protocol " + version + ", not " + PROTOCOL_VERSION);
+        return;
+      }
+      // the worker's core count, which every shard uses through SimulationEngine.run
+      in.readInt();
+      String variantName = in.readUTF();
+      if (in.readLong() != variant.getChecksum()) {
+        reject(out, "Worker plays variant " + variantName + ", not " + variant);
+        return;
+      }
+      
+      while ((shard = nextShard()) != null) {
+        out.writeInt(shard.id);
+        out.writeUTF(bankers[shard.point % bankers.length]);
+        out.writeDouble(thresholds[shard.point / bankers.length]);
+        out.writeLong(shard.games);
+        out.writeLong(shard.seed);
+        out.flush();
+        
+        if (in.readInt() != shard.id)
+          throw new IOException("Worker answered for the wrong shard");
+        if (in.readBoolean())
+          complete(shard, SimulationResult.readFrom(in));
+        else
+          failed(shard, in.readUTF());
+        shard = null;
+      }
+      out.writeInt(DONE);
+      out.flush();
+    }
+    catch (IOException | RuntimeException e) {
+      if (shard != null) {
+        System.err.println("Worker lost, requeueing shard " + shard.id + ": " + e);
+        pending.addFirst(shard);
+      }
+    }
+  }
+  
+  /**
+   * turns a worker away
+   * @param out the stream to the worker
+   * @param reason why
+   * @throws IOException if the reply cannot be sent
+   */
+  private static void reject(DataOutputStream out, String reason) throws IOException {
+    System.err.println(reason);
+    out.writeInt(REJECTED);
+    out.writeUTF(reason);
+    out.flush();
+  }
+  
+  /**
+   * queues a shard a worker failed to play again, or fails the sweep once
+   * the shard has failed too often
+   * @param shard the shard
+   * @param error the worker's description of the failure
+   */
+  private synchronized void failed(Shard shard, String error) {
+    if (done[shard.id])
+      return;
+    System.err.println("Shard " + shard.id + " failed: " + error);
+    if (++failures[shard.id] >= MAX_SHARD_FAILURES)
+      failure = "shard " + shard.id + " failed " + failures[shard.id] + " times, last with " + error;
+    else
+      pending.addLast(shard);
+  }  
+  /**
+   * waits for a shard to hand out
+   * @return the shard, or null once every shard is done or the sweep has failed
+   */
+  private Shard nextShard() {
+    try {
+      while (remaining.getCount() > 0 && failure == null) {
+        Shard shard = pending.poll(100, TimeUnit.MILLISECONDS);
+        if (shard != null)
+          return shard;
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+  
+  /**
+   * merges a shard's result into its grid point, once
+   * @param shard the shard
+   * @param result its result
+   */
+  private synchronized void complete(Shard shard, SimulationResult result) {
+    if (done[shard.id])
+      return;
+    results[shard.point].merge(result);
+    done[shard.id] = true;
+    remaining.countDown();
+  }
+  
+  /**
+   * waits for every shard to be played
+   * @param timeout how long to wait
+   * @param unit the unit of timeout
+   * @return whether the sweep finished in time
+   * @throws InterruptedException if interrupted while waiting
+   * @throws IllegalStateException if the sweep has failed
+   */
+  public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      long left = deadline - System.nanoTime();
+      if (remaining.await(Math.max(0, Math.min(left, TimeUnit.MILLISECONDS.toNanos(100))), TimeUnit.NANOSECONDS))
+        return true;
+      // workers started by hand may still attach, but those started here are all there will be
+      if (failure == null && !processes.isEmpty() && links.get() == 0 && processes.stream().noneMatch(Process::isAlive))
+        failure = "every worker started here has exited";
+      if (failure != null)
+        throw new IllegalStateException("Sweep failed: " + failure);
+      if (left <= 0)
+        return false;
+    }
+  }
+  
+  /** @return the number of shards not yet played */
+  public long getRemainingShards() {
+    return remaining.getCount();
+  }
+  
+  /**
+   * gets the merged result of a grid point
+   * @param banker the banker's place in the grid
+   * @param threshold the threshold's place in the grid
+   * @return the result
+   */
+  public synchronized SimulationResult getResult(int banker, int threshold) {
+    return results[threshold * bankers.length + banker];
+  }
+  
+  /** @return the worker processes started here, so a caller can watch or stop them */
+  public List<Process> getProcesses() {
+    return processes;
+  }
+  
+  /** stops accepting workers and stops the processes started here */
+  public void close() throws IOException {
+    serverSocket.close();
+    workers.shutdownNow();
+    for (Process process : processes)
+      process.destroy();
+  }
+  
+  /**
+   * runs a sweep from the command line
+   * @param args the number of workers to start here, the games per grid
+   *        point, the seed, the bankers separated by semicolons, the
+   *        player thresholds separated by commas and the address to listen
+   *        on, by default loopback. with 0 workers the coordinator waits
+   *        for workers started by hand on port 7117
+   * @throws Exception if the sweep cannot run
+   */
+  public static void main(String[] args) throws Exception {
+    int workerCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    long games = args.length > 1 ? Long.parseLong(args[1]) : 10000000;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+    String[] bankers = args.length > 3 ? args[3].split(";") : new String[] {"average"};
+    double[] thresholds = args.length > 4
+      ? Arrays.stream(args[4].split(",")).mapToDouble(Double::parseDouble).toArray() : new double[] {0.8};
+    
+    InetAddress address = args.length > 5 ? InetAddress.getByName(args[5]) : null;
+    
+    try (SimulationCoordinator coordinator = new SimulationCoordinator(address, DEFAULT_PORT, bankers, thresholds,
+                                                                       games, DEFAULT_SHARD_GAMES, seed)) {
+      coordinator.launchWorkers(workerCount);
+      long start = System.nanoTime();
+      while (!coordinator.await(5, TimeUnit.SECONDS))
+        System.out.println(coordinator.getRemainingShards() + " shards left");
+      
+      for (int t = 0; t < thresholds.length; ++t) {
+        for (int b = 0; b < bankers.length; ++b) {
+          SimulationResult result = coordinator.getResult(b, t);
+          result.setElapsedNanos(System.nanoTime() - start);
+          System.out.println("Banker " + bankers[b] + ", threshold " + thresholds[t]);
+          System.out.print(result);
+        }
+      }
+    }
+  }
+}
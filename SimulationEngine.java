@@ -0,0 +1,267 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+/**
+ * plays complete games without a GUI or high score file, spreading them
+ * across every core. each worker reuses one board for all of its games,
+ * so the game loop itself does not allocate
+ */
+public class SimulationEngine {
+
+  /** This is the number of games each parallel task plays */
+  public static final int GAMES_PER_TASK = 10000;
+  
+  /** the policy every simulated player follows */
+  private PlayerPolicy policy;
+  
+  /** the rules every simulated game is played by */
+  private GameVariant variant;
+  
+  /** decides the offers in every simulated game */
+  private BankerStrategy banker;
+  
+  /** receives every game's trajectory, or null if they are not kept */
+  private TrajectoryWriter trajectories;
+  
+  /**
+   * hands each task's trajectories to the writer in task order, whichever
+   * task finishes first, and hands written buffers out again to later tasks
+   */
+  private static class TaskOrder {
+    /** the writer */
+    private final TrajectoryWriter writer;
+    
+    /** the trajectories of finished tasks waiting for an earlier one, by task number */
+    private final HashMap<Integer, GameTrajectory> finished = new HashMap<>();
+    
+    /** the buffers already written, emptied for the next tasks */
+    private final ArrayDeque<GameTrajectory> spare = new ArrayDeque<>();
+    
+    /** the task whose trajectories are written next */
+    private int next;
+    
+    /**
+     * creates an ordering for one run
+     * @param writer the writer
+     */
+    TaskOrder(TrajectoryWriter writer) {
+      this.writer = writer;
+    }
+    
+    /**
+     * hands over a finished task, writing it and any tasks it was holding up
+     * @param task the task number
+     * @param trajectory every game of the task
+     */
+    synchronized void finish(int task, GameTrajectory trajectory) {
+      finished.put(task, trajectory);
+      for (GameTrajectory ready; (ready = finished.remove(next)) != null; ++next) {
+        writer.append(ready);
+        ready.reset();
+        spare.push(ready);
+      }
+    }
+    
+    /** @return an empty buffer for a task, one already written if there is one */
+    synchronized GameTrajectory take() {
+      GameTrajectory trajectory = spare.poll();
+      return trajectory == null ? new GameTrajectory() : trajectory;
+    }
+  }
+  
+  /**
+   * creates an engine for a given player policy playing the standard game
+   * @param policy how the simulated players play
+   */
+  public SimulationEngine(PlayerPolicy policy) {
+    this(policy, GameVariant.STANDARD);
+  }
+  
+  /**
+   * creates an engine for a given player policy and variant
+   * @param policy how the simulated players play
+   * @param variant the rules of the games
+   */
+  public SimulationEngine(PlayerPolicy policy, GameVariant variant) {
+    this(policy, variant, variant.getBanker());
+  }
+  
+  /**
+   * creates an engine for a given player policy, variant and banker
+   * @param policy how the simulated players play
+   * @param variant the rules of the games
+   * @param banker how the offers are decided
+   */
+  public SimulationEngine(PlayerPolicy policy, GameVariant variant, BankerStrategy banker) {
+    this.policy = policy;
+    this.variant = variant;
+    this.banker = banker;
+  }
+  
+  /**
+   * sets where the trajectory of every game played from now on is written
+   * @param trajectories the writer, or null to stop writing trajectories
+   * @throws IllegalArgumentException if the variant has more rounds than a trajectory can record
+   */
+  public void setTrajectoryWriter(TrajectoryWriter trajectories) {
+    if (trajectories != null && variant.getNumRounds() - 1 > GameTrajectory.MAX_ROUND)
+      throw new IllegalArgumentException(variant.getName() + " has too many rounds to record trajectories");
+    this.trajectories = trajectories;
+  }
+  
+  /**
+   * plays a number of games in parallel. the games are split into fixed
+   * tasks with their own generators, so a seed always gives the same result
+   * no matter how many cores run it. each task buffers its trajectories and
+   * they are written in task order, so the games in a trajectory directory
+   * are in the same order however many cores played them
+   * @param games number of games to play
+   * @param seed the root seed for every board and random choice
+   * @return the aggregate outcome
+   */
+  public SimulationResult run(long games, long seed) {
+    int tasks = (int) ((games + GAMES_PER_TASK - 1) / GAMES_PER_TASK);
+    List<RandomGenerator> generators = DealGame.independentGenerators(seed).limit(tasks).collect(Collectors.toList());
+    // tasks are claimed in order, so few finished ones wait on an earlier one to be written
+    AtomicInteger nextTask = new AtomicInteger();
+    TaskOrder order = trajectories == null ? null : new TaskOrder(trajectories);
+    
+    long start = System.nanoTime();
+    SimulationResult result = IntStream.range(0, tasks).parallel()
+      .mapToObj(i -> {
+        int t = nextTask.getAndIncrement();
+        long taskGames = Math.min(GAMES_PER_TASK, games - (long) t * GAMES_PER_TASK);
+        if (order == null)
+          return play(taskGames, generators.get(t), null);
+        GameTrajectory trajectory = order.take();
+        SimulationResult taskResult = play(taskGames, generators.get(t), trajectory);
+        order.finish(t, trajectory);
+        return taskResult;
+      })
+      .reduce(SimulationResult::merge)
+      .orElseGet(() -> new SimulationResult(variant.getNumRounds()));
+    result.setElapsedNanos(System.nanoTime() - start);
+    return result;
+  }
+  
+  /**
+   * plays a number of games one after another on the calling thread
+   * @param games number of games to play
+   * @param rand source of randomness for the boards and the player
+   * @return the aggregate outcome
+   */
+  public SimulationResult play(long games, RandomGenerator rand) {
+    GameTrajectory trajectory = trajectories == null ? null : new GameTrajectory();
+    SimulationResult result = play(games, rand, trajectory);
+    if (trajectory != null)
+      trajectories.append(trajectory);
+    return result;
+  }
+  
+  /**
+   * plays a number of games one after another on the calling thread
+   * @param games number of games to play
+   * @param rand source of randomness for the boards and the player
+   * @param trajectory receives every game's rows, or null
+   * @return the aggregate outcome
+   */
+  private SimulationResult play(long games, RandomGenerator rand, GameTrajectory trajectory) {
+    SimulationResult result = new SimulationResult(variant.getNumRounds());
+    BoxList boxes = variant.newBoxList();
+    
+    for (long g = 0; g < games; ++g) {
+      boxes.reset();
+      boxes.shuffle(rand);
+      playGame(boxes, rand, result, trajectory);
+      if (trajectory != null)
+        trajectory.endGame();
+    }
+    return result;
+  }
+  
+  /**
+   * plays one game to the end on a freshly shuffled board
+   * @param boxes the board
+   * @param rand source of randomness for the player
+   * @param result where the outcome is recorded
+   * @param trajectory receives the game's events, or null
+   * @return the winnings
+   */
+  double playGame(BoxList boxes, RandomGenerator rand, SimulationResult result, GameTrajectory trajectory) {
+    int playerIndex = policy.chooseOwnBox(boxes, rand);
+    if (trajectory != null)
+      trajectory.add(1, TrajectoryWriter.CHOOSE, playerIndex, -1, 0);
+    
+    for (int round = 1; round < variant.getNumRounds(); ++round) {
+      for (int i = variant.getBoxesInRound(round); i > 0; --i) {
+        int index = policy.nextBoxToOpen(boxes, playerIndex, rand);
+        boxes.open(index);
+        if (trajectory != null)
+          trajectory.add(round, TrajectoryWriter.OPEN, index, boxes.getRank(index), boxes.getValue(index));
+      }
+      
+      double offer = banker.offer(boxes, round);
+      boolean accepted = policy.acceptOffer(offer, round, boxes);
+      if (trajectory != null) {
+        trajectory.add(round, TrajectoryWriter.OFFER, -1, -1, offer);
+        trajectory.add(round, accepted ? TrajectoryWriter.DEAL : TrajectoryWriter.NO_DEAL, -1, -1, offer);
+      }
+      if (accepted) {
+        if (trajectory != null)
+          trajectory.add(round, TrajectoryWriter.FINAL, playerIndex, boxes.getRank(playerIndex), offer);
+        result.record(offer, round, false, boxes.getValue(playerIndex));
+        return offer;
+      }
+    }
+    
+    int otherIndex = boxes.nextUnopened(0);
+    if (otherIndex == playerIndex)
+      otherIndex = boxes.nextUnopened(playerIndex + 1);
+    
+    double boxValue = boxes.getValue(playerIndex);
+    boolean swapped = policy.swapLastBox(boxes, playerIndex, rand);
+    int taken = swapped ? otherIndex : playerIndex;
+    if (trajectory != null) {
+      int round = variant.getNumRounds();
+      trajectory.add(round, swapped ? TrajectoryWriter.SWAP : TrajectoryWriter.KEEP, taken, boxes.getRank(taken),
+                     boxes.getValue(taken));
+      trajectory.add(round, TrajectoryWriter.FINAL, taken, boxes.getRank(taken), boxes.getValue(taken));
+    }
+    result.record(boxes.getValue(taken), 0, swapped, boxValue);
+    return boxes.getValue(taken);
+  }
+  
+  /**
+   * runs a simulation from the command line
+   * @param args optional number of games, seed and deal threshold ratio,
+   *        or the name of a policy table to play optimally, and a directory
+   *        to write every game's trajectory to. the games are of the
+   *        variant named by -Ddealgame.variant
+   */
+  public static void main(String[] args) {
+    long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+    PlayerPolicy policy;
+    if (args.length > 2 && args[2].matches("[0-9.]+"))
+      policy = PlayerPolicy.threshold(Double.parseDouble(args[2]));
+    else if (args.length > 2)
+      policy = PlayerPolicy.optimal(new PolicySolver(args[2], 0), GameVariant.current());
+    else
+      policy = PlayerPolicy.threshold(0.8);
+    
+    SimulationEngine engine = new SimulationEngine(policy, GameVariant.current());
+    System.out.println("Cores: " + Runtime.getRuntime().availableProcessors() + ", variant " + GameVariant.current());
+    if (args.length > 3) {
+      try (TrajectoryWriter trajectories = new TrajectoryWriter(args[3])) {
+        engine.setTrajectoryWriter(trajectories);
+        System.out.print(engine.run(games, seed));
+      }
+    }
+    else
+      System.out.print(engine.run(games, seed));
+  }
+}
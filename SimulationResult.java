@@ -0,0 +1,353 @@
+import java.io.*;
+import java.util.Arrays;
+/**
+ * aggregate outcome of a batch of simulated games. the winnings are kept as
+ * quantile sketches, overall, by the round a deal was taken in and by the
+ * order of magnitude of the player's box, so the memory used stays the same
+ * however many games are played. results from different workers are
+ * combined with merge
+ */
+public class SimulationResult {
+  
+  /** This is the number of orders of magnitude of the player's box the winnings are split by, from $0.01 up */
+  public static final int BOX_VALUE_DECADES = 12;
+  
+  /** This is the most rounds or sketches readFrom accepts in one array */
+  public static final int MAX_ARRAY_LENGTH = 1 << 16;
+
+  /** number of games played */
+  private long games;
+  
+  /** total and sum of squares of the winnings over all games */
+  private double totalWinnings, totalWinningsSquared;
+  
+  /** the smallest and largest amount won in a single game */
+  private double minWinnings = Double.POSITIVE_INFINITY, maxWinnings = Double.NEGATIVE_INFINITY;
+  
+  /** number of deals accepted in each round, indexed by round number */
+  private long[] dealsInRound;
+  
+  /** the winnings of every game */
+  private QuantileSketch winnings = new QuantileSketch();
+  
+  /** the winnings by the round a deal was accepted in, with 0 for no deal, each created on first use */
+  private QuantileSketch[] winningsByDealRound;
+  
+  /** the winnings by decade of the player's box value, each created on first use */
+  private QuantileSketch[] winningsByBoxDecade = new QuantileSketch[BOX_VALUE_DECADES];
+  
+  /** number of games that went to the end and swapped boxes */
+  private long swaps;
+  
+  /** wall clock time spent producing this result */
+  private long elapsedNanos;
+  
+  /** creates an empty result for the standard game */
+  public SimulationResult() {
+    this(DealGame.NUM_ROUNDS);
+  }
+  
+  /**
+   * creates an empty result
+   * @param rounds the number of rounds in the games, counted as in DealGame.NUM_ROUNDS
+   */
+  public SimulationResult(int rounds) {
+    dealsInRound = new long[rounds];
+    winningsByDealRound = new QuantileSketch[rounds];
+  }
+  
+  /**
+   * records the outcome of one game
+   * @param winnings the amount the player walked away with
+   * @param dealRound the round a deal was accepted in, or 0 for no deal
+   * @param swapped whether the player swapped boxes at the end
+   * @param boxValue the value in the player's box
+   */
+  public void record(double winnings, int dealRound, boolean swapped, double boxValue) {
+    ++games;
+    totalWinnings += winnings;
+    totalWinningsSquared += winnings * winnings;
+    minWinnings = Math.min(minWinnings, winnings);
+    maxWinnings = Math.max(maxWinnings, winnings);
+    ++dealsInRound[dealRound];
+    if (swapped)
+      ++swaps;
+    
+    this.winnings.record(winnings);
+    sketch(winningsByDealRound, dealRound).record(winnings);
+    sketch(winningsByBoxDecade, boxDecade(boxValue)).record(winnings);
+  }
+  
+  /**
+   * gets a sketch from an array, creating it if needed
+   * @param sketches the sketches
+   * @param i the position
+   * @return the sketch
+   */
+  private static QuantileSketch sketch(QuantileSketch[] sketches, int i) {
+    if (sketches[i] == null)
+      sketches[i] = new QuantileSketch();
+    return sketches[i];
+  }
+  
+  /**
+   * finds the decade of a box value, 0 for cents up to 11 for billions
+   * @param boxValue the value
+   * @return the decade
+   */
+  public static int boxDecade(double boxValue) {
+    int decade = (int) Math.floor(Math.log10(Math.max(boxValue, 0.01))) + 2;
+    return Math.max(0, Math.min(BOX_VALUE_DECADES - 1, decade));
+  }
+  
+  /**
+   * adds the sketches of one array into another
+   * @param into the sketches added to
+   * @param from the sketches to add
+   */
+  private static void mergeSketches(QuantileSketch[] into, QuantileSketch[] from) {
+    for (int i = 0; i < from.length; ++i) {
+      if (from[i] != null)
+        sketch(into, i).merge(from[i]);
+    }
+  }
+  
+  /**
+   * adds another result into this one. the other result is checked before
+   * anything is added, so one that cannot be merged leaves this one as it was
+   * @param other the result to add
+   * @return this result
+   * @throws IllegalArgumentException if the other result's sketches do not
+   *         match its rounds or box value decades
+   */
+  public SimulationResult merge(SimulationResult other) {
+    if (other.winningsByDealRound.length != other.dealsInRound.length ||
+        other.winningsByBoxDecade.length != BOX_VALUE_DECADES)
+      throw new IllegalArgumentException("Result has " + other.winningsByDealRound.length + " deal round sketches for " +
+                                         other.dealsInRound.length + " rounds and " +
+                                         other.winningsByBoxDecade.length + " box value sketches");
+    games += other.games;
+    totalWinnings += other.totalWinnings;
+    totalWinningsSquared += other.totalWinningsSquared;
+    minWinnings = Math.min(minWinnings, other.minWinnings);
+    maxWinnings = Math.max(maxWinnings, other.maxWinnings);
+    if (other.dealsInRound.length > dealsInRound.length) {
+      dealsInRound = Arrays.copyOf(dealsInRound, other.dealsInRound.length);
+      winningsByDealRound = Arrays.copyOf(winningsByDealRound, other.dealsInRound.length);
+    }
+    for (int i = 0; i < other.dealsInRound.length; ++i)
+      dealsInRound[i] += other.dealsInRound[i];
+    swaps += other.swaps;
+    winnings.merge(other.winnings);
+    mergeSketches(winningsByDealRound, other.winningsByDealRound);
+    mergeSketches(winningsByBoxDecade, other.winningsByBoxDecade);
+    return this;
+  }
+  
+  /**
+   * writes the result to a stream, so it can be merged in another process
+   * @param out the stream
+   * @throws IOException if the stream fails
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeLong(games);
+    out.writeDouble(totalWinnings);
+    out.writeDouble(totalWinningsSquared);
+    out.writeDouble(minWinnings);
+    out.writeDouble(maxWinnings);
+    out.writeLong(swaps);
+    out.writeLong(elapsedNanos);
+    out.writeInt(dealsInRound.length);
+    for (long deals : dealsInRound)
+      out.writeLong(deals);
+    winnings.writeTo(out);
+    writeSketches(out, winningsByDealRound);
+    writeSketches(out, winningsByBoxDecade);
+  }
+  
+  /**
+   * reads a result written by writeTo
+   * @param in the stream
+   * @return the result
+   * @throws IOException if the stream fails, holds an array longer than
+   *         MAX_ARRAY_LENGTH, or its sketches do not match its rounds or
+   *         BOX_VALUE_DECADES
+   */
+  public static SimulationResult readFrom(DataInput in) throws IOException {
+    SimulationResult result = new SimulationResult(0);
+    result.games = in.readLong();
+    result.totalWinnings = in.readDouble();
+    result.totalWinningsSquared = in.readDouble();
+    result.minWinnings = in.readDouble();
+    result.maxWinnings = in.readDouble();
+    result.swaps = in.readLong();
+    result.elapsedNanos = in.readLong();
+    result.dealsInRound = new long[readLength(in)];
+    for (int i = 0; i < result.dealsInRound.length; ++i)
+      result.dealsInRound[i] = in.readLong();
+    result.winnings = QuantileSketch.readFrom(in);
+    result.winningsByDealRound = readSketches(in);
+    if (result.winningsByDealRound.length != result.dealsInRound.length)
+      throw new IOException(result.winningsByDealRound.length + " deal round sketches for " +
+                            result.dealsInRound.length + " rounds");
+    result.winningsByBoxDecade = readSketches(in);
+    if (result.winningsByBoxDecade.length != BOX_VALUE_DECADES)
+      throw new IOException(result.winningsByBoxDecade.length + " box value sketches instead of " + BOX_VALUE_DECADES);
+    return result;
+  }
+  
+  /**
+   * writes an array of sketches, any of which may be missing
+   * @param out the stream
+   * @param sketches the sketches
+   * @throws IOException if the stream fails
+   */
+  private static void writeSketches(DataOutput out, QuantileSketch[] sketches) throws IOException {
+    out.writeInt(sketches.length);
+    for (QuantileSketch sketch : sketches) {
+      out.writeBoolean(sketch != null);
+      if (sketch != null)
+        sketch.writeTo(out);
+    }
+  }
+  
+  /**
+   * reads an array of sketches written by writeSketches
+   * @param in the stream
+   * @return the sketches
+   * @throws IOException if the stream fails
+   */
+  private static QuantileSketch[] readSketches(DataInput in) throws IOException {
+    QuantileSketch[] sketches = new QuantileSketch[readLength(in)];
+    for (int i = 0; i < sketches.length; ++i)
+      sketches[i] = in.readBoolean() ? QuantileSketch.readFrom(in) : null;
+    return sketches;
+  }
+  
+  /**
+   * reads the length of an array, which must be at most MAX_ARRAY_LENGTH
+   * @param in the stream
+   * @return the length
+   * @throws IOException if the stream fails or the length is out of range
+   */
+  private static int readLength(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_ARRAY_LENGTH)
+      throw new IOException("Array length " + length + " out of range");
+    return length;
+  }
+  
+  /**
+   * sets the wall clock time spent producing this result
+   * @param nanos elapsed time in nanoseconds
+   */
+  public void setElapsedNanos(long nanos) {
+    elapsedNanos = nanos;
+  }
+  
+  /** @return number of games played */
+  public long getGames() {
+    return games;
+  }
+  
+  /** @return average winnings per game */
+  public double getAverageWinnings() {
+    return totalWinnings / games;
+  }
+  
+  /** @return standard deviation of the winnings */
+  public double getStandardDeviation() {
+    double mean = getAverageWinnings();
+    return Math.sqrt(Math.max(0, totalWinningsSquared / games - mean * mean));
+  }
+  
+  /** @return the smallest amount won */
+  public double getMinWinnings() {
+    return minWinnings;
+  }
+  
+  /** @return the largest amount won */
+  public double getMaxWinnings() {
+    return maxWinnings;
+  }
+  
+  /**
+   * gets the number of deals accepted in a round
+   * @param round the round number, or 0 for games with no deal
+   * @return number of deals
+   */
+  public long getDealsInRound(int round) {
+    return dealsInRound[round];
+  }
+  
+  /**
+   * estimates a quantile of the winnings
+   * @param q the share of games winning at most the result, from 0 to 1
+   * @return the estimate, within 1% of an amount actually won
+   */
+  public double getWinningsQuantile(double q) {
+    return winnings.getQuantile(q);
+  }
+  
+  /**
+   * gets the distribution of the winnings of games with a deal in a round
+   * @param round the round number, or 0 for games with no deal
+   * @return the sketch, empty if no game ended that way
+   */
+  public QuantileSketch getWinningsInDealRound(int round) {
+    QuantileSketch sketch = round < winningsByDealRound.length ? winningsByDealRound[round] : null;
+    return sketch == null ? new QuantileSketch() : sketch;
+  }
+  
+  /**
+   * gets the distribution of the winnings of games whose player's box held
+   * a value in a decade
+   * @param decade the decade, as found by boxDecade
+   * @return the sketch, empty if no game's box was in the decade
+   */
+  public QuantileSketch getWinningsByBoxDecade(int decade) {
+    QuantileSketch sketch = winningsByBoxDecade[decade];
+    return sketch == null ? new QuantileSketch() : sketch;
+  }
+  
+  /** @return number of games where the player swapped boxes */
+  public long getSwaps() {
+    return swaps;
+  }
+  
+  /** @return wall clock time in nanoseconds */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+  
+  /** @return games played per second of wall clock time */
+  public double getGamesPerSecond() {
+    return games * 1e9 / elapsedNanos;
+  }
+  
+  /**
+   * writes out a summary of the results
+   * @return the summary
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Games: %d in %.3f s (%.0f games/s)%n", games, elapsedNanos / 1e9, getGamesPerSecond()));
+    sb.append(String.format("Winnings: avg %.2f, std dev %.2f, min %.2f, max %.2f%n",
+                            getAverageWinnings(), getStandardDeviation(), minWinnings, maxWinnings));
+    sb.append("Deals by round:");
+    for (int i = 1; i < dealsInRound.length; ++i)
+      sb.append(' ').append(i).append('=').append(dealsInRound[i]);
+    sb.append(String.format("%nNo deal: %d (swapped %d)%n", dealsInRound[0], swaps));
+    sb.append("Winnings: ").append(winnings).append(String.format("%n"));
+    for (int i = 0; i < winningsByDealRound.length; ++i) {
+      if (winningsByDealRound[i] != null)
+        sb.append(String.format("  %-8s %s%n", i == 0 ? "no deal" : "round " + i, winningsByDealRound[i]));
+    }
+    sb.append("Winnings by player's box:").append(String.format("%n"));
+    for (int i = 0; i < BOX_VALUE_DECADES; ++i) {
+      if (winningsByBoxDecade[i] != null)
+        sb.append(String.format("  >= %-12s %s%n", String.format("%.2f", Math.pow(10, i - 2)), winningsByBoxDecade[i]));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,79 @@
+import java.io.*;
+import java.net.Socket;
+/**
+ * a simulation process that attaches to a SimulationCoordinator, plays the
+ * shards it is sent on every core and streams each shard's result back, or
+ * the error a shard failed with. workers are started by the coordinator on
+ * one host, or by hand on others pointing at the coordinator's address.
+ * games are of the variant named by -Ddealgame.variant, which must match
+ * the coordinator's or the worker is turned away
+ */
+public class SimulationWorker {
+  
+  /**
+   * plays shards until the coordinator says to stop or goes away
+   * @param host the coordinator's host
+   * @param port the coordinator's port
+   * @throws IOException if the connection fails or the coordinator turns the worker away
+   */
+  public static void serve(String host, int port) throws IOException {
+    GameVariant variant = GameVariant.current();
+    try (Socket socket = new Socket(host, port);
+         DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+      socket.setTcpNoDelay(true);
+      out.writeInt(SimulationCoordinator.PROTOCOL_VERSION);
+      out.writeInt(Runtime.getRuntime().availableProcessors());
+      out.writeUTF(variant.getName());
+      out.writeLong(variant.getChecksum());
+      out.flush();
+      
+      while (true) {
+        int shard = in.readInt();
+        if (shard == SimulationCoordinator.REJECTED)
+          throw new IOException("Turned away: " + in.readUTF());
+        if (shard < 0)
+          return;
+        String banker = in.readUTF();
+        double threshold = in.readDouble();
+        long games = in.readLong();
+        long seed = in.readLong();
+        
+        SimulationResult result;
+        try {
+          SimulationEngine engine = new SimulationEngine(PlayerPolicy.threshold(threshold), variant,
+                                                         BankerStrategy.parse(banker, variant.getOfferMultiplier()));
+          result = engine.run(games, seed);
+        }
+        catch (RuntimeException e) {
+          // the coordinator decides whether to try the shard elsewhere
+          out.writeInt(shard);
+          out.writeBoolean(false);
+          out.writeUTF(String.valueOf(e));
+          out.flush();
+          continue;
+        }
+        out.writeInt(shard);
+        out.writeBoolean(true);
+        result.writeTo(out);
+        out.flush();
+      }
+    }
+  }
+  
+  /**
+   * starts a worker from the command line
+   * @param args the coordinator's host and port
+   * @throws IOException if the connection fails
+   */
+  public static void main(String[] args) throws IOException {
+    String host = args.length > 0 ? args[0] : "127.0.0.1";
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : SimulationCoordinator.DEFAULT_PORT;
+    try {
+      serve(host, port);
+    }
+    catch (EOFException e) {
+      // the coordinator finished without saying goodbye
+    }
+  }
+}
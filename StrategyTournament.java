@@ -0,0 +1,411 @@
+import java.util.*;
+import java.util.random.RandomGenerator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+/**
+ * ranks player and banker strategies against each other with common random
+ * numbers. every game is dealt from its own seed, and every strategy plays
+ * it on the same board with the same random choices, so the difference in
+ * winnings between two strategies on a game is the difference the strategies
+ * make and nothing else. the games are played in batches spread across every
+ * core, and after each batch every pair not yet decided is checked with a
+ * mixture sequential probability ratio test on its differences. the test's
+ * error rate holds however often it is checked, so the tournament stops as
+ * soon as every pair is separated or the game limit is reached. a strategy
+ * stops playing once every pair it is in is decided
+ */
+public class StrategyTournament {
+
+  /** This is the number of games played between checks */
+  public static final int BATCH_GAMES = 20000;
+  
+  /** This is the number of games each parallel task of a batch plays */
+  public static final int TASK_GAMES = 1000;
+  
+  /** This is the chance of any pair being ranked the wrong way round by default */
+  public static final double DEFAULT_ALPHA = 0.05;
+  
+  /** This is the size of difference the test is tuned for, as a share of the standard deviation of the differences */
+  public static final double MIXING_EFFECT = 0.01;
+  
+  /** the mean and spread of a stream of values, kept with Welford's method so they merge exactly */
+  private static class Moments {
+    /** the number of values */
+    long count;
+    
+    /** their mean and the sum of squared distances from it */
+    double mean, m2;
+    
+    /**
+     * adds a value
+     * @param x the value
+     */
+    void add(double x) {
+      double delta = x - mean;
+      mean += delta / ++count;
+      m2 += delta * (x - mean);
+    }
+    
+    /**
+     * adds the values of another stream
+     * @param other the other stream
+     */
+    void merge(Moments other) {
+      if (other.count == 0)
+        return;
+      long total = count + other.count;
+      double delta = other.mean - mean;
+      mean += delta * other.count / total;
+      m2 += other.m2 + delta * delta * count * other.count / total;
+      count = total;
+    }
+    
+    /** @return the sample variance */
+    double variance() {
+      return count > 1 ? m2 / (count - 1) : 0;
+    }
+  }
+  
+  /** what one task of a batch found */
+  private static class TaskResult {
+    /** the outcome for each strategy */
+    final SimulationResult[] results;
+    
+    /** the differences in winnings of each pair, [i][j] for i < j */
+    final Moments[][] differences;
+    
+    /**
+     * creates an empty task result
+     * @param entrants the number of strategies
+     * @param rounds the number of rounds in the games
+     */
+    TaskResult(int entrants, int rounds) {
+      results = new SimulationResult[entrants];
+      differences = new Moments[entrants][entrants];
+      for (int i = 0; i < entrants; ++i) {
+        results[i] = new SimulationResult(rounds);
+        for (int j = i + 1; j < entrants; ++j)
+          differences[i][j] = new Moments();
+      }
+    }
+  }
+  
+  /** the rules every game is played by */
+  private final GameVariant variant;
+  
+  /** the names of the strategies */
+  private final List<String> names = new ArrayList<>();
+  
+  /** plays the games of each strategy */
+  private final List<SimulationEngine> engines = new ArrayList<>();
+  
+  /** the outcome for each strategy, once run */
+  private SimulationResult[] results;
+  
+  /** the differences in winnings of each pair, [i][j] for i < j, once run */
+  private Moments[][] differences;
+  
+  /** the games played when each pair was decided, or 0 if it was not */
+  private long[][] decidedAt;
+  
+  /** the games played in every batch */
+  private long games;
+  
+  /**
+   * creates an empty tournament
+   * @param variant the rules of the games
+   */
+  public StrategyTournament(GameVariant variant) {
+    this.variant = variant;
+  }
+  
+  /**
+   * enters a strategy
+   * @param name what to call it in the standings
+   * @param policy how the player plays
+   * @param banker how the offers are decided
+   */
+  public void addEntrant(String name, PlayerPolicy policy, BankerStrategy banker) {
+    names.add(name);
+    engines.add(new SimulationEngine(policy, variant, banker));
+  }
+  
+  /**
+   * plays games until every pair of strategies is ranked or the limit is
+   * reached. the same seed always gives the same standings, on any number of cores
+   * @param maxGames the most games to play
+   * @param seed the root seed the boards are dealt from
+   * @param alpha the chance of any pair being ranked the wrong way round
+   * @throws IllegalStateException if there are fewer than two strategies
+   */
+  public void run(long maxGames, long seed, double alpha) {
+    int n = names.size();
+    if (n < 2)
+      throw new IllegalStateException("A tournament needs at least two strategies, not " + n);
+    int rounds = variant.getNumRounds();
+    results = new SimulationResult[n];
+    differences = new Moments[n][n];
+    decidedAt = new long[n][n];
+    for (int i = 0; i < n; ++i) {
+      results[i] = new SimulationResult(rounds);
+      for (int j = i + 1; j < n; ++j)
+        differences[i][j] = new Moments();
+    }
+    games = 0;
+    
+    // every pair is tested at alpha over the number of pairs, so all of them hold together
+    double threshold = Math.log(n * (n - 1) / 2 / alpha);
+    boolean[] active = new boolean[n];
+    Arrays.fill(active, true);
+    Iterator<RandomGenerator> generators = DealGame.independentGenerators(seed).iterator();
+    long start = System.nanoTime();
+    
+    while (games < maxGames) {
+      long batch = Math.min(BATCH_GAMES, maxGames - games);
+      int tasks = (int) ((batch + TASK_GAMES - 1) / TASK_GAMES);
+      List<RandomGenerator> taskGenerators = new ArrayList<>();
+      for (int t = 0; t < tasks; ++t)
+        taskGenerators.add(generators.next());
+      
+      boolean[] playing = active.clone();
+      List<TaskResult> taskResults = IntStream.range(0, tasks).parallel()
+        .mapToObj(t -> play(Math.min(TASK_GAMES, batch - (long) t * TASK_GAMES), taskGenerators.get(t), playing))
+        .collect(Collectors.toList());
+      // merged in task order, so the sums do not depend on which core finished first
+      for (TaskResult task : taskResults) {
+        for (int i = 0; i < n; ++i) {
+          results[i].merge(task.results[i]);
+          for (int j = i + 1; j < n; ++j)
+            differences[i][j].merge(task.differences[i][j]);
+        }
+      }
+      games += batch;
+      
+      Arrays.fill(active, false);
+      for (int i = 0; i < n; ++i) {
+        for (int j = i + 1; j < n; ++j) {
+          if (decidedAt[i][j] == 0 && logLikelihoodRatio(differences[i][j]) >= threshold)
+            decidedAt[i][j] = games;
+          if (decidedAt[i][j] == 0)
+            active[i] = active[j] = true;
+        }
+      }
+      if (!contains(active))
+        break;
+    }
+    
+    for (SimulationResult result : results)
+      result.setElapsedNanos(System.nanoTime() - start);
+  }
+  
+  /**
+   * checks whether any strategy is still playing
+   * @param active whether each strategy is playing
+   * @return whether any is
+   */
+  private static boolean contains(boolean[] active) {
+    for (boolean a : active) {
+      if (a)
+        return true;
+    }
+    return false;
+  }
+  
+  /**
+   * plays a number of games with every strategy still playing, each game
+   * dealt from its own seed so every strategy sees the same board and choices
+   * @param count the number of games
+   * @param rand the source of the games' seeds
+   * @param playing whether each strategy is still playing
+   * @return the outcome
+   */
+  private TaskResult play(long count, RandomGenerator rand, boolean[] playing) {
+    int n = names.size();
+    TaskResult task = new TaskResult(n, variant.getNumRounds());
+    // a shuffle starts from the board's last order, so each strategy keeps a
+    // board of its own and every board is shuffled the same way every game
+    BoxList[] boards = new BoxList[n];
+    for (int e = 0; e < n; ++e)
+      boards[e] = variant.newBoxList();
+    double[] winnings = new double[n];
+    
+    for (long g = 0; g < count; ++g) {
+      long gameSeed = rand.nextLong();
+      for (int e = 0; e < n; ++e) {
+        SplittableRandom gameRand = new SplittableRandom(gameSeed);
+        boards[e].reset();
+        boards[e].shuffle(gameRand);
+        if (playing[e])
+          winnings[e] = engines.get(e).playGame(boards[e], gameRand, task.results[e], null);
+      }
+      for (int i = 0; i < n; ++i) {
+        for (int j = i + 1; j < n; ++j) {
+          if (playing[i] && playing[j] && decidedAt[i][j] == 0)
+            task.differences[i][j].add(winnings[i] - winnings[j]);
+        }
+      }
+    }
+    return task;
+  }
+  
+  /**
+   * works out the log of the mixture likelihood ratio that the mean
+   * difference is not zero, mixing over normal alternatives with a standard
+   * deviation of MIXING_EFFECT times that of the differences
+   * @param d the differences
+   * @return the log likelihood ratio, compared against log(1 / alpha)
+   */
+  static double logLikelihoodRatio(Moments d) {
+    double variance = d.variance();
+    if (variance == 0)
+      return d.mean == 0 ? 0 : Double.POSITIVE_INFINITY;
+    double nk = d.count * MIXING_EFFECT * MIXING_EFFECT;
+    double z2 = d.mean * d.mean * d.count / variance;
+    return z2 * nk / (2 * (1 + nk)) - 0.5 * Math.log1p(nk);
+  }
+  
+  /** @return the games played in the batches, the most any strategy played */
+  public long getGames() {
+    return games;
+  }
+  
+  /**
+   * gets a strategy's outcome over the games it played
+   * @param entrant the strategy's place in the order entered
+   * @return the outcome
+   */
+  public SimulationResult getResult(int entrant) {
+    return results[entrant];
+  }
+  
+  /**
+   * gets how much more one strategy won than another, on the games both played
+   * @param a one strategy's place
+   * @param b the other's
+   * @return the mean difference in winnings per game
+   */
+  public double getMeanDifference(int a, int b) {
+    return a < b ? differences[a][b].mean : -differences[b][a].mean;
+  }
+  
+  /**
+   * gets how many games it took to rank a pair
+   * @param a one strategy's place
+   * @param b the other's
+   * @return the games played when the pair was ranked, or 0 if it was not
+   */
+  public long getDecidedAt(int a, int b) {
+    return decidedAt[Math.min(a, b)][Math.max(a, b)];
+  }
+  
+  /**
+   * gets how many strategies one was shown to beat on the games they both played
+   * @param entrant the strategy's place
+   * @return the pairs it was ranked ahead in
+   */
+  public int getWins(int entrant) {
+    int wins = 0;
+    for (int other = 0; other < names.size(); ++other) {
+      if (other != entrant && getDecidedAt(entrant, other) > 0 && getMeanDifference(entrant, other) > 0)
+        ++wins;
+    }
+    return wins;
+  }
+  
+  /**
+   * gets how much more a strategy won on average than each of the others,
+   * every difference taken on the games the pair both played
+   * @param entrant the strategy's place
+   * @return the mean of its paired differences
+   */
+  public double getMeanPairedDifference(int entrant) {
+    double total = 0;
+    for (int other = 0; other < names.size(); ++other) {
+      if (other != entrant)
+        total += getMeanDifference(entrant, other);
+    }
+    return names.size() < 2 ? 0 : total / (names.size() - 1);
+  }
+  
+  /**
+   * gets how many times fewer games the paired comparison of two strategies
+   * needs than comparing independent samples of the same spread
+   * @param a one strategy's place
+   * @param b the other's
+   * @return the variance of the independent difference over that of the paired one
+   */
+  public double getVarianceReduction(int a, int b) {
+    double sa = results[a].getStandardDeviation(), sb = results[b].getStandardDeviation();
+    return (sa * sa + sb * sb) / differences[Math.min(a, b)][Math.max(a, b)].variance();
+  }
+  
+  /**
+   * describes the standings and each pair's comparison. strategies are
+   * ranked by how many others they were shown to beat, then by their mean
+   * paired difference, never by averages taken over different games, which
+   * a strategy that stopped early would have fewer of
+   * @return the description
+   */
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    Integer[] order = new Integer[names.size()];
+    for (int i = 0; i < order.length; ++i)
+      order[i] = i;
+    Arrays.sort(order, (a, b) -> getWins(a) != getWins(b) ? Integer.compare(getWins(b), getWins(a))
+                : Double.compare(getMeanPairedDifference(b), getMeanPairedDifference(a)));
+    
+    s.append(String.format("Games: %d in %.3f s%n", games, results[0].getElapsedNanos() / 1e9));
+    for (int rank = 0; rank < order.length; ++rank) {
+      SimulationResult result = results[order[rank]];
+      s.append(String.format("%d. %-24s beats %d, paired %+.2f, avg %.2f over %d games%n", rank + 1,
+                             names.get(order[rank]), getWins(order[rank]), getMeanPairedDifference(order[rank]),
+                             result.getAverageWinnings(), result.getGames()));
+    }
+    for (int x = 0; x < order.length; ++x) {
+      for (int y = x + 1; y < order.length; ++y) {
+        int a = order[x], b = order[y];
+        Moments d = differences[Math.min(a, b)][Math.max(a, b)];
+        long decided = getDecidedAt(a, b);
+        if (d.variance() == 0 && d.mean == 0)
+          s.append(String.format("  %s - %s: identical on %d games%n", names.get(a), names.get(b), d.count));
+        else
+          s.append(String.format("  %s - %s: %.2f +/- %.2f, %s, paired variance %.1fx smaller%n", names.get(a),
+                                 names.get(b), getMeanDifference(a, b), 1.96 * Math.sqrt(d.variance() / d.count),
+                                 decided > 0 ? "ranked after " + decided + " games" : "not separated",
+                                 getVarianceReduction(a, b)));
+      }
+    }
+    return s.toString();
+  }
+  
+  /**
+   * runs a tournament from the command line
+   * @param args the most games, the seed and the strategies, each a deal
+   *        threshold ratio or the name of a policy table, a ratio optionally
+   *        followed by @ and a banker as read by BankerStrategy.parse.
+   *        the games are of the variant named by -Ddealgame.variant
+   */
+  public static void main(String[] args) {
+    long maxGames = args.length > 0 ? Long.parseLong(args[0]) : 10000000;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+    String[] entrants = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : new String[] {"0.7", "0.8", "0.9"};
+    
+    GameVariant variant = GameVariant.current();
+    StrategyTournament tournament = new StrategyTournament(variant);
+    for (String entrant : entrants) {
+      String[] parts = entrant.split("@", 2);
+      boolean table = !parts[0].matches("[0-9.]+");
+      if (table && parts.length > 1)
+        throw new IllegalArgumentException("A policy table only plays against the standard banker: " + entrant);
+      PlayerPolicy policy = table ? PlayerPolicy.optimal(new PolicySolver(parts[0], 0), variant)
+        : PlayerPolicy.threshold(Double.parseDouble(parts[0]));
+      BankerStrategy banker = parts.length > 1 ? BankerStrategy.parse(parts[1], variant.getOfferMultiplier())
+        : variant.getBanker();
+      tournament.addEntrant(entrant, policy, banker);
+    }
+    
+    System.out.println("Cores: " + Runtime.getRuntime().availableProcessors() + ", variant " + variant);
+    tournament.run(maxGames, seed, DEFAULT_ALPHA);
+    System.out.print(tournament);
+  }
+}
@@ -0,0 +1,150 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * maps the segments written by a TrajectoryWriter and hands out their
+ * columns as buffers, so a scan of one column reads only that column's
+ * bytes and never builds a row object. a segment's rows are as many as its
+ * footer said when the reader was opened; rows appended later are not seen
+ */
+public class TrajectoryReader implements Closeable {
+
+  /** the mapped segments, in order */
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  
+  /** the published rows of each segment */
+  private final List<Integer> rowCounts = new ArrayList<>();
+  
+  /** where each column starts in each segment */
+  private final List<long[]> columnOffsets = new ArrayList<>();
+  
+  /**
+   * opens a trajectory directory and maps every segment in it
+   * @param directoryName the trajectory directory
+   * @throws IOException if a segment cannot be mapped or its footer is not valid
+   */
+  public TrajectoryReader(String directoryName) throws IOException {
+    Path directory = Paths.get(directoryName);
+    for (int number = 0; ; ++number) {
+      Path path = TrajectoryWriter.segmentPath(directory, number);
+      if (!Files.exists(path))
+        break;
+      MappedByteBuffer segment;
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      segment.order(ByteOrder.nativeOrder());
+      
+      int footer = segment.capacity() - TrajectoryWriter.FOOTER_SIZE;
+      if (footer < 0 || segment.getInt(footer) != TrajectoryWriter.MAGIC)
+        throw new IOException("Not a trajectory segment " + path);
+      long[] offsets = new long[TrajectoryWriter.COLUMN_WIDTHS.length];
+      for (int c = 0; c < offsets.length; ++c)
+        offsets[c] = segment.getLong(footer + Integer.BYTES + (2 + c) * Long.BYTES);
+      
+      segments.add(segment);
+      rowCounts.add((int) segment.getLong(footer + Integer.BYTES));
+      columnOffsets.add(offsets);
+    }
+  }
+  
+  /** @return the number of segments */
+  public int getSegmentCount() {
+    return segments.size();
+  }
+  
+  /**
+   * gets the number of rows in a segment
+   * @param segment the segment number
+   * @return the rows
+   */
+  public int getRowCount(int segment) {
+    return rowCounts.get(segment);
+  }
+  
+  /** @return the number of rows in every segment */
+  public long getRowCount() {
+    long rows = 0;
+    for (int count : rowCounts)
+      rows += count;
+    return rows;
+  }
+  
+  /** @return the number of games, which is one more than the last game's number */
+  public long getGameCount() {
+    for (int s = segments.size() - 1; s >= 0; --s) {
+      int rows = rowCounts.get(s);
+      if (rows > 0)
+        return segments.get(s).getLong((int) columnOffsets.get(s)[TrajectoryWriter.GAME] + (rows - 1) * Long.BYTES) + 1;
+    }
+    return 0;
+  }
+  
+  /**
+   * gets one column of a segment, in native byte order and limited to the
+   * segment's rows. view it with asLongBuffer, asIntBuffer or asDoubleBuffer
+   * for the wider columns
+   * @param segment the segment number
+   * @param column the column, one of the TrajectoryWriter column constants
+   * @return a read-only buffer over the column
+   */
+  public ByteBuffer column(int segment, int column) {
+    int start = (int) columnOffsets.get(segment)[column];
+    int length = rowCounts.get(segment) * TrajectoryWriter.COLUMN_WIDTHS[column];
+    return segments.get(segment).slice(start, length).order(ByteOrder.nativeOrder());
+  }
+  
+  /** releases the segments */
+  public void close() {
+    segments.clear();
+  }
+  
+  /**
+   * prints a summary of a trajectory directory: the mean offer in each round,
+   * how often each was taken and the mean winnings, each from its own columns
+   * @param args the trajectory directory
+   * @throws IOException if a segment cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    int rounds = GameVariant.current().getNumRounds() + 1;
+    double[] offerSums = new double[rounds];
+    long[] offers = new long[rounds], deals = new long[rounds];
+    double winnings = 0;
+    
+    try (TrajectoryReader reader = new TrajectoryReader(args.length > 0 ? args[0] : "trajectories")) {
+      for (int s = 0; s < reader.getSegmentCount(); ++s) {
+        ByteBuffer round = reader.column(s, TrajectoryWriter.ROUND);
+        ByteBuffer event = reader.column(s, TrajectoryWriter.EVENT);
+        DoubleBuffer amount = reader.column(s, TrajectoryWriter.AMOUNT).asDoubleBuffer();
+        for (int row = 0; row < reader.getRowCount(s); ++row) {
+          byte type = event.get(row);
+          int r = Math.min(round.get(row), rounds - 1);
+          if (type == TrajectoryWriter.OFFER) {
+            offerSums[r] += amount.get(row);
+            ++offers[r];
+          }
+          else if (type == TrajectoryWriter.DEAL)
+            ++deals[r];
+          else if (type == TrajectoryWriter.FINAL)
+            winnings += amount.get(row);
+        }
+      }
+      
+      long games = reader.getGameCount();
+      System.out.println(reader.getRowCount() + " rows, " + games + " games in " + reader.getSegmentCount() + " segments");
+      for (int r = 1; r < rounds; ++r) {
+        if (offers[r] > 0)
+          System.out.printf("Round %d: mean offer %.2f, deal rate %.4f%n", r, offerSums[r] / offers[r],
+                            (double) deals[r] / offers[r]);
+      }
+      if (games > 0)
+        System.out.printf("Mean winnings %.2f%n", winnings / games);
+    }
+  }
+}
@@ -0,0 +1,289 @@
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.HashMap;
+/**
+ * appends game trajectories to memory-mapped segment files as fixed-width
+ * columns, one row per event: the game number, round, event, box index,
+ * value ordinal and amount. each segment holds a region per column, so a
+ * reader can scan one column without touching the others, and ends with a
+ * footer giving the number of rows, the capacity and where each column
+ * starts. a game never straddles two segments, and the row count in the
+ * footer only moves on after a whole game is written, so a reader never
+ * sees half a game. only one process may write to a trajectory directory
+ * at a time
+ */
+public class TrajectoryWriter implements Closeable {
+
+  /** These are the event codes */
+  public static final byte CHOOSE = 1, OPEN = 2, OFFER = 3, DEAL = 4, NO_DEAL = 5, KEEP = 6, SWAP = 7, FINAL = 8;
+  
+  /** These are the columns, in the order their regions appear in a segment */
+  public static final int GAME = 0, ROUND = 1, EVENT = 2, BOX = 3, ORDINAL = 4, AMOUNT = 5;
+  
+  /** This is the width in bytes of each column */
+  static final int[] COLUMN_WIDTHS = {Long.BYTES, Byte.BYTES, Byte.BYTES, Integer.BYTES, Integer.BYTES, Double.BYTES};
+  
+  /** This is the number of rows in a new segment file */
+  public static final int DEFAULT_SEGMENT_ROWS = 1 << 22;
+  
+  /** This marks a segment footer */
+  static final int MAGIC = 0x44545231;
+  
+  /** This is the size of a footer: magic, row count, capacity and the offset of each column */
+  static final int FOOTER_SIZE = Integer.BYTES + 2 * Long.BYTES + COLUMN_WIDTHS.length * Long.BYTES;
+  
+  /** the trajectory directory */
+  private final Path directory;
+  
+  /** the number of rows in each new segment */
+  private final int segmentRows;
+  
+  /** the segment being appended to, or null before the first row */
+  private MappedByteBuffer segment;
+  
+  /** where each column of the current segment starts */
+  private final long[] columnOffsets = new long[COLUMN_WIDTHS.length];
+  
+  /** the number of the segment being appended to */
+  private int segmentNumber;
+  
+  /** the rows written to the current segment and published in its footer */
+  private int rows;
+  
+  /** the number the next game is written under */
+  private long nextGame;
+  
+  /**
+   * opens a trajectory directory for appending, creating it if needed
+   * @param directoryName the directory
+   */
+  public TrajectoryWriter(String directoryName) {
+    this(directoryName, DEFAULT_SEGMENT_ROWS);
+  }
+  
+  /**
+   * opens a trajectory directory for appending, creating it if needed, and
+   * continues in a new segment after those already in it
+   * @param directoryName the directory
+   * @param segmentRows the number of rows in each new segment
+   */
+  public TrajectoryWriter(String directoryName, int segmentRows) {
+    directory = Paths.get(directoryName);
+    this.segmentRows = segmentRows;
+    try {
+      Files.createDirectories(directory);
+      try (TrajectoryReader reader = new TrajectoryReader(directoryName)) {
+        segmentNumber = reader.getSegmentCount();
+        nextGame = reader.getGameCount();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Could not open trajectories " + directoryName, e);
+    }
+  }
+  
+  /**
+   * gets the path of a segment file
+   * @param directory the trajectory directory
+   * @param number the segment number
+   * @return the path
+   */
+  static Path segmentPath(Path directory, int number) {
+    return directory.resolve(String.format("trajectory-%06d.col", number));
+  }
+  
+  /**
+   * works out where each column of a segment starts, each on an eight byte boundary
+   * @param capacity the number of rows in the segment
+   * @param offsets receives the offset of each column
+   * @return the offset of the footer
+   */
+  static long layout(long capacity, long[] offsets) {
+    long offset = 0;
+    for (int c = 0; c < COLUMN_WIDTHS.length; ++c) {
+      offsets[c] = offset;
+      offset += (capacity * COLUMN_WIDTHS[c] + 7) & ~7L;
+    }
+    return offset;
+  }
+  
+  /**
+   * creates and maps the next segment, with an empty footer
+   * @throws IOException if the segment cannot be mapped
+   */
+  private void openSegment() throws IOException {
+    long footer = layout(segmentRows, columnOffsets);
+    try (FileChannel channel = FileChannel.open(segmentPath(directory, segmentNumber), StandardOpenOption.CREATE_NEW,
+                                                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, footer + FOOTER_SIZE);
+    }
+    segment.order(ByteOrder.nativeOrder());
+    rows = 0;
+    
+    int position = (int) footer;
+    segment.putInt(position, MAGIC);
+    segment.putLong(position + Integer.BYTES + Long.BYTES, segmentRows);
+    for (int c = 0; c < COLUMN_WIDTHS.length; ++c)
+      segment.putLong(position + Integer.BYTES + (2 + c) * Long.BYTES, columnOffsets[c]);
+    commit();
+  }
+  
+  /** publishes the rows written so far in the footer */
+  private void commit() {
+    segment.putLong(segment.capacity() - FOOTER_SIZE + Integer.BYTES, rows);
+  }
+  
+  /**
+   * appends every ended game of a trajectory buffer, numbered in order.
+   * rows after the last ended game are not written
+   * @param trajectory the games' rows
+   * @return the number the first game was written under
+   */
+  public synchronized long append(GameTrajectory trajectory) {
+    // nothing is written unless every game fits in a segment
+    for (int game = 0, start = 0; game < trajectory.getGameCount(); start = trajectory.getGameEnd(game++)) {
+      if (trajectory.getGameEnd(game) - start > segmentRows)
+        throw new IllegalArgumentException("Game of " + (trajectory.getGameEnd(game) - start) +
+                                           " rows does not fit in a segment");
+    }
+    
+    long first = nextGame;
+    for (int game = 0, start = 0; game < trajectory.getGameCount(); start = trajectory.getGameEnd(game++)) {
+      int end = trajectory.getGameEnd(game);
+      try {
+        // a game never straddles two segments, so the next one begins early if need be
+        if (segment == null || rows + end - start > segmentRows) {
+          if (segment != null) {
+            segment.force();
+            ++segmentNumber;
+          }
+          openSegment();
+        }
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException("Could not open trajectory segment " + segmentNumber, e);
+      }
+      
+      long number = nextGame++;
+      for (int row = start; row < end; ++row, ++rows) {
+        segment.putLong((int) columnOffsets[GAME] + rows * Long.BYTES, number);
+        segment.put((int) columnOffsets[ROUND] + rows, trajectory.getRound(row));
+        segment.put((int) columnOffsets[EVENT] + rows, trajectory.getEvent(row));
+        segment.putInt((int) columnOffsets[BOX] + rows * Integer.BYTES, trajectory.getBox(row));
+        segment.putInt((int) columnOffsets[ORDINAL] + rows * Integer.BYTES, trajectory.getOrdinal(row));
+        segment.putDouble((int) columnOffsets[AMOUNT] + rows * Double.BYTES, trajectory.getAmount(row));
+      }
+      commit();
+    }
+    return first;
+  }
+  
+  /**
+   * finds the offer a game's deal answered, as recorded rather than as the
+   * replayed game's banker would work it out
+   * @param trajectory the game's rows so far
+   * @return the amount of the last offer row, or 0 if there is none
+   */
+  private static double lastOffer(GameTrajectory trajectory) {
+    for (int row = trajectory.size() - 1; row >= 0; --row)
+      if (trajectory.getEvent(row) == OFFER)
+        return trajectory.getAmount(row);
+    return 0;
+  }
+  
+  /**
+   * converts the games of a journal into trajectories, as each one finishes
+   * @param journalDirectory the journal directory
+   * @return the number of games written
+   * @throws IOException if the journal cannot be read
+   */
+  public long appendJournal(String journalDirectory) throws IOException {
+    HashMap<Long, DealGame> games = new HashMap<>();
+    HashMap<Long, GameTrajectory> trajectories = new HashMap<>();
+    long written = 0;
+    
+    try (JournalReader reader = new JournalReader(journalDirectory)) {
+      while (reader.next()) {
+        long id = reader.getGameId();
+        if (reader.getType() == GameJournal.START) {
+          games.put(id, reader.newReplayGame());
+          trajectories.put(id, new GameTrajectory());
+        }
+        DealGame game = games.get(id);
+        if (game == null)
+          continue;
+        GameTrajectory trajectory = trajectories.get(id);
+        int round = game.getRound();
+        
+        switch (reader.getType()) {
+          case GameJournal.SELECT:
+            int box = reader.getIndex();
+            if (game.hasPlayerChosenBox())
+              trajectory.add(round, OPEN, box, game.getOrdinalInBox(box), game.getValueInBox(box));
+            else
+              trajectory.add(round, CHOOSE, box, -1, 0);
+            break;
+          case GameJournal.OFFER:
+            trajectory.add(round, OFFER, -1, -1, reader.getOffer());
+            break;
+          case GameJournal.DEAL:
+            double offer = lastOffer(trajectory);
+            trajectory.add(round, reader.getFlag() ? DEAL : NO_DEAL, -1, -1, offer);
+            if (reader.getFlag()) {
+              int player = game.getPlayerIndex();
+              trajectory.add(round, FINAL, player, game.getOrdinalInBox(player), offer);
+            }
+            break;
+          case GameJournal.SWAP:
+            int taken = reader.getFlag() ? game.getLastBoxIndex() : game.getPlayerIndex();
+            trajectory.add(round, reader.getFlag() ? SWAP : KEEP, taken, game.getOrdinalInBox(taken), game.getValueInBox(taken));
+            trajectory.add(round, FINAL, taken, game.getOrdinalInBox(taken), game.getValueInBox(taken));
+            break;
+          default:
+            break;
+        }
+        
+        if (reader.apply(game)) {
+          trajectory.endGame();
+          append(trajectory);
+          games.remove(id);
+          trajectories.remove(id);
+          ++written;
+        }
+      }
+    }
+    return written;
+  }
+  
+  /** @return the number of games written to the directory */
+  public synchronized long getGameCount() {
+    return nextGame;
+  }
+  
+  /** writes the current segment to disk */
+  public synchronized void flush() {
+    if (segment != null)
+      segment.force();
+  }
+  
+  /** flushes the last segment */
+  public synchronized void close() {
+    flush();
+  }
+  
+  /**
+   * converts a journal from the command line
+   * @param args the journal directory and the trajectory directory
+   * @throws IOException if the journal cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    String journal = args.length > 0 ? args[0] : DealGame.JOURNAL_DIRECTORY;
+    String trajectories = args.length > 1 ? args[1] : "trajectories";
+    try (TrajectoryWriter writer = new TrajectoryWriter(trajectories)) {
+      System.out.println("Wrote " + writer.appendJournal(journal) + " games to " + trajectories);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+import java.text.NumberFormat;
+import java.util.Arrays;
+/**
+ * the values of a game in ascending order, each with its text formatted
+ * once up front. a value's position in the catalog is its ordinal, the same
+ * number BoxList reports as a box's rank, so a display can go straight from
+ * a box to the text and label of its value
+ */
+public class ValueCatalog {
+
+  /** the values in ascending order */
+  private final double[] values;
+  
+  /** the formatted text of each value */
+  private final String[] labels;
+  
+  /**
+   * builds a catalog, formatting every value
+   * @param values the game's values
+   * @param format the format used to display values
+   */
+  public ValueCatalog(double[] values, NumberFormat format) {
+    this.values = values.clone();
+    Arrays.sort(this.values);
+    labels = new String[this.values.length];
+    for (int i = 0; i < labels.length; ++i)
+      labels[i] = format.format(this.values[i]);
+  }
+  
+  /** @return the number of values */
+  public int size() {
+    return values.length;
+  }
+  
+  /**
+   * gets the value with a given ordinal
+   * @param ordinal the ordinal
+   * @return the value
+   */
+  public double getValue(int ordinal) {
+    return values[ordinal];
+  }
+  
+  /**
+   * gets the formatted text of the value with a given ordinal
+   * @param ordinal the ordinal
+   * @return the text
+   */
+  public String getLabel(int ordinal) {
+    return labels[ordinal];
+  }
+  
+  /**
+   * finds the ordinal of a value
+   * @param value the value
+   * @return the ordinal
+   * @throws IllegalArgumentException if the value is not in the catalog
+   */
+  public int ordinalOf(double value) {
+    int ordinal = Arrays.binarySearch(values, value);
+    if (ordinal < 0)
+      throw new IllegalArgumentException("No box holds " + value);
+    return ordinal;
+  }
+}
@@ -0,0 +1,56 @@
+package dealgame.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * checks that a banker strategy costs no more than the offer rule written
+ * out inline: with the strategy inlined both should take the same few
+ * nanoseconds and allocate nothing, which the allocation profiler that
+ * BenchmarkRunner adds confirms
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BankerBenchmark {
+
+  /** the banker, as read by BankerStrategy.parse */
+  @Param({"average", "risk:0.1:0.000001", "table:0.05,0.1,0.15,0.25,0.35,0.5,0.6,0.7,0.8"})
+  private String spec;
+  
+  /** a shuffled board with the first round's boxes opened */
+  private Object boxes;
+  
+  /** the strategy */
+  private Object banker;
+  
+  /** the round the offers are made in */
+  private int round;
+  
+  /** builds the board and the strategy */
+  @Setup
+  public void setUp() throws Throwable {
+    boxes = (Object) Game.NEW_BOX_LIST.invokeExact(Game.BOX_VALUES);
+    Game.SHUFFLE.invokeExact(boxes, (java.util.random.RandomGenerator) new SplittableRandom(42));
+    for (int i = 0; i < 6; ++i)
+      Game.OPEN.invokeExact(boxes, i);
+    banker = (Object) Game.PARSE_BANKER.invokeExact(spec, 0.1);
+    round = 1;
+  }
+  
+  /** @return the offer made by the strategy */
+  @Benchmark
+  public double strategy() throws Throwable {
+    return (double) Game.BANKER_OFFER.invokeExact(banker, boxes, round);
+  }
+  
+  /** @return the standard offer computed inline, the cost a strategy should match */
+  @Benchmark
+  public double inlineRule() throws Throwable {
+    return (double) Game.AVERAGE.invokeExact(boxes) * round / 10;
+  }
+}
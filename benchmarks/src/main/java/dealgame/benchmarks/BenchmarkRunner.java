@@ -0,0 +1,39 @@
+package dealgame.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the benchmarks with allocation profiling and writes the results as
+ * JSON, so runs of two versions can be diffed. takes the usual JMH command
+ * line options, for example
+ * <pre>
+ *   mvn -B package
+ *   java -jar benchmarks/target/benchmarks.jar -rff baseline.json
+ *   java -jar benchmarks/target/benchmarks.jar BoxList -rff after.json
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+  /** This is the result file used when none is given */
+  public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+  
+  /**
+   * runs the benchmarks
+   * @param args JMH command line options
+   * @throws Exception if the options are invalid or a run fails
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cli = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class);
+    if (!cli.getResultFormat().hasValue())
+      options.resultFormat(ResultFormatType.JSON);
+    if (!cli.getResult().hasValue())
+      options.result(DEFAULT_RESULT_FILE);
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,51 @@
+package dealgame.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * measures building, shuffling and averaging a standard board
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoxListBenchmark {
+
+  /** a shuffled board with the first round's boxes opened */
+  private Object boxes;
+  
+  /** the generator used for shuffling */
+  private SplittableRandom rand;
+  
+  /** builds the board */
+  @Setup
+  public void setUp() throws Throwable {
+    rand = new SplittableRandom(42);
+    boxes = (Object) Game.NEW_BOX_LIST.invokeExact(Game.BOX_VALUES);
+    Game.SHUFFLE.invokeExact(boxes, (java.util.random.RandomGenerator) rand);
+    for (int i = 0; i < 6; ++i)
+      Game.OPEN.invokeExact(boxes, i);
+  }
+  
+  /** @return a new board */
+  @Benchmark
+  public Object construct() throws Throwable {
+    return (Object) Game.NEW_BOX_LIST.invokeExact(Game.BOX_VALUES);
+  }
+  
+  /** shuffles the board */
+  @Benchmark
+  public void shuffle() throws Throwable {
+    Game.SHUFFLE.invokeExact(boxes, (java.util.random.RandomGenerator) rand);
+  }
+  
+  /** @return the average of the unopened boxes */
+  @Benchmark
+  public double averageValueOfUnopenedBoxes() throws Throwable {
+    return (double) Game.AVERAGE.invokeExact(boxes);
+  }
+}
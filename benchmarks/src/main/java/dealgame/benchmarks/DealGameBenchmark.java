@@ -0,0 +1,104 @@
+package dealgame.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * measures starting a game, including reading the high score, making an
+ * offer and looking ahead on a copy of a game
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DealGameBenchmark {
+
+  /** a text high score file read on every call */
+  private Object fileStore;
+  
+  /** a leaderboard kept in temporary files, as the shared one is kept */
+  private Object leaderboard;
+  
+  /** a game at the end of its first round */
+  private Object game;
+  
+  /** the generator used for shuffling */
+  private RandomGenerator rand;
+  
+  /** the directory holding the temporary high score and leaderboard files */
+  private Path directory;
+  
+  /** creates the stores and a game to make offers from */
+  @Setup
+  public void setUp() throws Throwable {
+    rand = new SplittableRandom(42);
+    directory = Files.createTempDirectory("dealgame");
+    Path highScoreFile = Files.writeString(directory.resolve("highscore.txt"), "183882.125");
+    fileStore = (Object) Game.NEW_FILE_STORE.invokeExact(highScoreFile.toString());
+    leaderboard = (Object) Game.NEW_LEADERBOARD.invokeExact(directory.resolve("leaderboard.dat").toString(),
+                                                            directory.resolve("highscore.dat").toString(),
+                                                            10, highScoreFile.toString());
+    
+    game = (Object) Game.NEW_DEAL_GAME.invokeExact(rand, leaderboard);
+    for (int i = 0; i <= 6; ++i)
+      Game.SELECT_BOX.invokeExact(game, i);
+  }
+  
+  /** closes the leaderboard and removes the temporary files */
+  @TearDown
+  public void tearDown() throws IOException {
+    ((Closeable) leaderboard).close();
+    try (var files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+        Files.delete(file);
+    }
+  }
+  
+  /** @return the high score seen by a new game whose store reads the text file */
+  @Benchmark
+  public double constructWithFileStore() throws Throwable {
+    Object started = (Object) Game.NEW_DEAL_GAME.invokeExact(rand, fileStore);
+    return (double) Game.HIGH_SCORE.invokeExact(started);
+  }
+  
+  /** @return the high score seen by a new game using a mapped leaderboard */
+  @Benchmark
+  public double constructWithLeaderboard() throws Throwable {
+    Object started = (Object) Game.NEW_DEAL_GAME.invokeExact(rand, leaderboard);
+    return (double) Game.HIGH_SCORE.invokeExact(started);
+  }
+  
+  /** @return the banker's offer */
+  @Benchmark
+  public double getCurrentOffer() throws Throwable {
+    return (double) Game.CURRENT_OFFER.invokeExact(game);
+  }
+  
+  /** @return a copy of the game */
+  @Benchmark
+  public Object fork() throws Throwable {
+    return (Object) Game.FORK.invokeExact(game);
+  }
+  
+  /** @return the best offer one box ahead, trying every box in place; one operation per box tried */
+  @Benchmark
+  @OperationsPerInvocation(19)
+  public double lookAheadOneBox() throws Throwable {
+    double best = 0;
+    for (int i = 7; i < 26; ++i) {
+      Game.APPLY.invokeExact(game, i);
+      best = Math.max(best, (double) Game.CURRENT_OFFER.invokeExact(game));
+      Game.UNDO.invokeExact(game);
+    }
+    return best;
+  }
+}
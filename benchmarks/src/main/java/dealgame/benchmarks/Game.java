@@ -0,0 +1,161 @@
+package dealgame.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.random.RandomGenerator;
+
+/**
+ * handles on the game classes. the game lives in the unnamed package, which
+ * code in a named package cannot refer to, and JMH will not generate code
+ * for benchmarks in the unnamed package, so the benchmarks reach the game
+ * through method handles held in static finals, which the JIT compiles down
+ * to direct calls
+ */
+final class Game {
+
+  /** the values used in a standard game */
+  static final double[] BOX_VALUES;
+  
+  /** new BoxList(double[]) */
+  static final MethodHandle NEW_BOX_LIST;
+  
+  /** BoxList.shuffle(RandomGenerator) */
+  static final MethodHandle SHUFFLE;
+  
+  /** BoxList.open(int) */
+  static final MethodHandle OPEN;
+  
+  /** BoxList.averageValueOfUnopenedBoxes() */
+  static final MethodHandle AVERAGE;
+  
+  /** BankerStrategy.parse(String, double) */
+  static final MethodHandle PARSE_BANKER;
+  
+  /** BankerStrategy.offer(RemainingValues, int) */
+  static final MethodHandle BANKER_OFFER;
+  
+  /** MaskedSums.closedSumsScalar(double[], long[], double[]) */
+  static final MethodHandle CLOSED_SUMS_SCALAR;
+  
+  /** MaskedSums.closedSumsUnrolled(double[], long[], double[]) */
+  static final MethodHandle CLOSED_SUMS_UNROLLED;
+  
+  /** MaskedSums.closedSumsVector(double[], long[], double[]) */
+  static final MethodHandle CLOSED_SUMS_VECTOR;
+  
+  /** MaskedSums.offersScalar(double[], long, long[], double, double[]) */
+  static final MethodHandle OFFERS_SCALAR;
+  
+  /** MaskedSums.offersUnrolled(double[], long, long[], double, double[], double[]) */
+  static final MethodHandle OFFERS_UNROLLED;
+  
+  /** MaskedSums.offersVector(double[], long, long[], double, double[]) */
+  static final MethodHandle OFFERS_VECTOR;
+  
+  /** new DealGame(RandomGenerator, HighScoreStore) */
+  static final MethodHandle NEW_DEAL_GAME;
+  
+  /** DealGame.selectBox(int) */
+  static final MethodHandle SELECT_BOX;
+  
+  /** DealGame.getCurrentOffer() */
+  static final MethodHandle CURRENT_OFFER;
+  
+  /** DealGame.fork() */
+  static final MethodHandle FORK;
+  
+  /** DealGame.apply(int) */
+  static final MethodHandle APPLY;
+  
+  /** DealGame.undo() */
+  static final MethodHandle UNDO;
+  
+  /** DealGame.getHighScore() */
+  static final MethodHandle HIGH_SCORE;
+  
+  /** new FileHighScoreStore(String) */
+  static final MethodHandle NEW_FILE_STORE;
+  
+  /** new Leaderboard(String, String, int, String) */
+  static final MethodHandle NEW_LEADERBOARD;
+  
+  /** new SimulationEngine(PlayerPolicy.threshold(double)) */
+  static final MethodHandle NEW_ENGINE;
+  
+  /** SimulationEngine.play(long, RandomGenerator) */
+  static final MethodHandle PLAY;
+  
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> boxList = Class.forName("BoxList");
+      Class<?> dealGame = Class.forName("DealGame");
+      Class<?> store = Class.forName("HighScoreStore");
+      Class<?> policy = Class.forName("PlayerPolicy");
+      Class<?> engine = Class.forName("SimulationEngine");
+      Class<?> maskedSums = Class.forName("MaskedSums");
+      Class<?> banker = Class.forName("BankerStrategy");
+      Class<?> remaining = Class.forName("RemainingValues");
+      
+      BOX_VALUES = (double[]) dealGame.getField("BOX_VALUES").get(null);
+      NEW_BOX_LIST = lookup.findConstructor(boxList, MethodType.methodType(void.class, double[].class))
+        .asType(MethodType.methodType(Object.class, double[].class));
+      SHUFFLE = lookup.findVirtual(boxList, "shuffle", MethodType.methodType(void.class, RandomGenerator.class))
+        .asType(MethodType.methodType(void.class, Object.class, RandomGenerator.class));
+      OPEN = lookup.findVirtual(boxList, "open", MethodType.methodType(void.class, int.class))
+        .asType(MethodType.methodType(void.class, Object.class, int.class));
+      AVERAGE = lookup.findVirtual(boxList, "averageValueOfUnopenedBoxes", MethodType.methodType(double.class))
+        .asType(MethodType.methodType(double.class, Object.class));
+      
+      PARSE_BANKER = lookup.findStatic(banker, "parse", MethodType.methodType(banker, String.class, double.class))
+        .asType(MethodType.methodType(Object.class, String.class, double.class));
+      BANKER_OFFER = lookup.findVirtual(banker, "offer", MethodType.methodType(double.class, remaining, int.class))
+        .asType(MethodType.methodType(double.class, Object.class, Object.class, int.class));
+      
+      MethodType sums = MethodType.methodType(void.class, double[].class, long[].class, double[].class);
+      CLOSED_SUMS_SCALAR = lookup.findStatic(maskedSums, "closedSumsScalar", sums);
+      CLOSED_SUMS_UNROLLED = lookup.findStatic(maskedSums, "closedSumsUnrolled", sums);
+      CLOSED_SUMS_VECTOR = lookup.findStatic(maskedSums, "closedSumsVector", sums);
+      MethodType offers = MethodType.methodType(void.class, double[].class, long.class, long[].class, double.class, double[].class);
+      OFFERS_SCALAR = lookup.findStatic(maskedSums, "offersScalar", offers);
+      OFFERS_UNROLLED = lookup.findStatic(maskedSums, "offersUnrolled", offers.appendParameterTypes(double[].class));
+      OFFERS_VECTOR = lookup.findStatic(maskedSums, "offersVector", offers);
+      
+      NEW_DEAL_GAME = lookup.findConstructor(dealGame, MethodType.methodType(void.class, RandomGenerator.class, store))
+        .asType(MethodType.methodType(Object.class, RandomGenerator.class, Object.class));
+      SELECT_BOX = lookup.findVirtual(dealGame, "selectBox", MethodType.methodType(void.class, int.class))
+        .asType(MethodType.methodType(void.class, Object.class, int.class));
+      CURRENT_OFFER = lookup.findVirtual(dealGame, "getCurrentOffer", MethodType.methodType(double.class))
+        .asType(MethodType.methodType(double.class, Object.class));
+      FORK = lookup.findVirtual(dealGame, "fork", MethodType.methodType(dealGame))
+        .asType(MethodType.methodType(Object.class, Object.class));
+      APPLY = lookup.findVirtual(dealGame, "apply", MethodType.methodType(void.class, int.class))
+        .asType(MethodType.methodType(void.class, Object.class, int.class));
+      UNDO = lookup.findVirtual(dealGame, "undo", MethodType.methodType(void.class))
+        .asType(MethodType.methodType(void.class, Object.class));
+      HIGH_SCORE = lookup.findVirtual(dealGame, "getHighScore", MethodType.methodType(double.class))
+        .asType(MethodType.methodType(double.class, Object.class));
+      
+      NEW_FILE_STORE = lookup.findConstructor(Class.forName("FileHighScoreStore"), MethodType.methodType(void.class, String.class))
+        .asType(MethodType.methodType(Object.class, String.class));
+      NEW_LEADERBOARD = lookup.findConstructor(Class.forName("Leaderboard"),
+                                               MethodType.methodType(void.class, String.class, String.class, int.class, String.class))
+        .asType(MethodType.methodType(Object.class, String.class, String.class, int.class, String.class));
+      
+      MethodHandle threshold = lookup.findStatic(policy, "threshold", MethodType.methodType(policy, double.class));
+      MethodHandle newEngine = lookup.findConstructor(engine, MethodType.methodType(void.class, policy));
+      NEW_ENGINE = MethodHandles.filterArguments(newEngine, 0, threshold)
+        .asType(MethodType.methodType(Object.class, double.class));
+      PLAY = lookup.findVirtual(engine, "play", MethodType.methodType(Class.forName("SimulationResult"), long.class, RandomGenerator.class))
+        .asType(MethodType.methodType(Object.class, Object.class, long.class, RandomGenerator.class));
+    }
+    catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+  
+  /** not instantiable */
+  private Game() {
+  }
+}
@@ -0,0 +1,105 @@
+package dealgame.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * compares the scalar, unrolled and vector API kernels that total the closed
+ * boxes of a large board, and the kernels that price candidate sets of boxes
+ * to open on a standard one. the fork has the incubator module the vector
+ * kernels need
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class MaskedSumsBenchmark {
+
+  /** This is the number of boxes on the large board */
+  private static final int BOXES = 1 << 16;
+  
+  /** This is the number of candidates priced per call */
+  private static final int CANDIDATES = 4096;
+  
+  /** the percentage of the large board's boxes that are open */
+  @Param({"10", "50", "90"})
+  private int percentOpen;
+  
+  /** the large board's values and open mask */
+  private double[] values;
+  private long[] openMask;
+  
+  /** the standard board's values and the candidates priced on it */
+  private double[] standardValues;
+  private long[] candidates;
+  
+  /** where the results are written, and the unrolled pricing's scratch table */
+  private double[] sums, offers, subsetSums;
+  
+  /** builds the boards */
+  @Setup
+  public void setUp() {
+    SplittableRandom rand = new SplittableRandom(42);
+    values = new double[BOXES];
+    openMask = new long[BOXES / 64];
+    for (int i = 0; i < BOXES; ++i) {
+      values[i] = rand.nextInt(100000000) / 100.0;
+      if (rand.nextInt(100) < percentOpen)
+        openMask[i >>> 6] |= 1L << i;
+    }
+    
+    standardValues = Game.BOX_VALUES.clone();
+    candidates = new long[CANDIDATES];
+    for (int c = 0; c < CANDIDATES; ++c)
+      candidates[c] = rand.nextLong() & rand.nextLong() & rand.nextLong() & ((1L << standardValues.length) - 1);
+    sums = new double[3];
+    offers = new double[CANDIDATES];
+    subsetSums = new double[((standardValues.length + 7) >>> 3) << 8];
+  }
+  
+  /** @return the sum of the closed values, visiting each closed box */
+  @Benchmark
+  public double closedSumsScalar() throws Throwable {
+    Game.CLOSED_SUMS_SCALAR.invokeExact(values, openMask, sums);
+    return sums[1];
+  }
+  
+  /** @return the sum of the closed values, branch free over every box */
+  @Benchmark
+  public double closedSumsUnrolled() throws Throwable {
+    Game.CLOSED_SUMS_UNROLLED.invokeExact(values, openMask, sums);
+    return sums[1];
+  }
+  
+  /** @return the sum of the closed values, a vector of boxes at a time */
+  @Benchmark
+  public double closedSumsVector() throws Throwable {
+    Game.CLOSED_SUMS_VECTOR.invokeExact(values, openMask, sums);
+    return sums[1];
+  }
+  
+  /** @return the offers, walking the boxes each candidate opens */
+  @Benchmark
+  public double[] offersScalar() throws Throwable {
+    Game.OFFERS_SCALAR.invokeExact(standardValues, (1L << standardValues.length) - 1, candidates, 0.2, offers);
+    return offers;
+  }
+  
+  /** @return the offers, from per byte subset tables */
+  @Benchmark
+  public double[] offersUnrolled() throws Throwable {
+    Game.OFFERS_UNROLLED.invokeExact(standardValues, (1L << standardValues.length) - 1, candidates, 0.2, offers,
+                                     subsetSums);
+    return offers;
+  }
+  
+  /** @return the offers, a vector of candidates at a time */
+  @Benchmark
+  public double[] offersVector() throws Throwable {
+    Game.OFFERS_VECTOR.invokeExact(standardValues, (1L << standardValues.length) - 1, candidates, 0.2, offers);
+    return offers;
+  }
+}
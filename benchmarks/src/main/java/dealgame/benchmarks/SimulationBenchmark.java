@@ -0,0 +1,50 @@
+package dealgame.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * measures complete headless games per second on one thread and on every core
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+
+  /** This is the number of games played per benchmark call */
+  private static final int GAMES = 100;
+  
+  /** the engine, with a player who takes offers worth 80% of the average */
+  private Object engine;
+  
+  /** this thread's generator */
+  private RandomGenerator rand;
+  
+  /** creates the engine and this thread's generator */
+  @Setup
+  public void setUp() throws Throwable {
+    engine = (Object) Game.NEW_ENGINE.invokeExact(0.8);
+    rand = new SplittableRandom(Thread.currentThread().getId());
+  }
+  
+  /** @return the results of a batch of games on one thread */
+  @Benchmark
+  @Threads(1)
+  @OperationsPerInvocation(GAMES)
+  public Object gamesSingleThreaded() throws Throwable {
+    return (Object) Game.PLAY.invokeExact(engine, (long) GAMES, rand);
+  }
+  
+  /** @return the results of a batch of games on each of every core */
+  @Benchmark
+  @Threads(Threads.MAX)
+  @OperationsPerInvocation(GAMES)
+  public Object gamesAllThreads() throws Throwable {
+    return (Object) Game.PLAY.invokeExact(engine, (long) GAMES, rand);
+  }
+}
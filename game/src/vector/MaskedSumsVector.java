@@ -0,0 +1,113 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+/**
+ * the closed box totals and candidate pricing of MaskedSums written with the
+ * incubating vector API. the totals weight a whole register of values by 0
+ * or 1 from the bits of the open mask, and the pricing works on a register
+ * of candidates at once, one box at a time. only the Maven build compiles it, with
+ * --add-modules jdk.incubator.vector, so the game still builds with
+ * javac *.java, and MaskedSums finds it at run time
+ */
+final class MaskedSumsVector {
+  
+  /** the widest vector of doubles the processor handles well */
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+  
+  /** the vector of candidate masks as wide as SPECIES, so masks carry over lane for lane */
+  private static final VectorSpecies<Long> CANDIDATE_SPECIES = VectorSpecies.of(long.class, SPECIES.vectorShape());
+  
+  /** the weight of each lane, 0 or 1, for every pattern of closed bits across a vector, one vector per pattern */
+  private static final double[] LANE_WEIGHTS = new double[(1 << SPECIES.length()) * SPECIES.length()];
+  
+  static {
+    for (int i = 0; i < LANE_WEIGHTS.length; ++i)
+      LANE_WEIGHTS[i] = (i / SPECIES.length()) >>> (i % SPECIES.length()) & 1;
+  }
+  
+  /** not instantiable */
+  private MaskedSumsVector() {
+  }
+  
+  /**
+   * totals the closed boxes of a board branch free, a vector at a time.
+   * the weights are loaded rather than built as a lane mask, since mask
+   * conversions are not compiled to vector instructions on every JDK
+   * @param values the value in each box
+   * @param openMask bit i of word i / 64 set while box i is open
+   * @param sums receives the count, sum and sum of squares
+   */
+  static void closedSums(double[] values, long[] openMask, double[] sums) {
+    DoubleVector sum = DoubleVector.zero(SPECIES), squares = DoubleVector.zero(SPECIES);
+    int lanes = SPECIES.length();
+    long laneBits = (1L << lanes) - 1;
+    int vectorEnd = values.length - values.length % lanes;
+    long count = 0;
+    
+    // 64 is a multiple of the lanes, so a vector never straddles two words
+    for (int word = 0; word < openMask.length; ++word) {
+      long closed = MaskedSums.closedWord(values.length, openMask, word);
+      count += Long.bitCount(closed);
+      for (int bit = 0, base = word << 6; bit < 64 && base + bit < vectorEnd; bit += lanes) {
+        DoubleVector weights = DoubleVector.fromArray(SPECIES, LANE_WEIGHTS, (int) (closed >>> bit & laneBits) * lanes);
+        DoubleVector v = DoubleVector.fromArray(SPECIES, values, base + bit).mul(weights);
+        sum = sum.add(v);
+        squares = squares.add(v.mul(v));
+      }
+    }
+    
+    // the boxes after the last whole vector
+    double tail = 0, tailSquares = 0;
+    for (int box = vectorEnd; box < values.length; ++box) {
+      if ((openMask[box >>> 6] >>> box & 1) == 0) {
+        tail += values[box];
+        tailSquares += values[box] * values[box];
+      }
+    }
+    sums[MaskedSums.COUNT] = count;
+    sums[MaskedSums.SUM] = sum.reduceLanes(VectorOperators.ADD) + tail;
+    sums[MaskedSums.SUM_OF_SQUARES] = squares.reduceLanes(VectorOperators.ADD) + tailSquares;
+  }
+  
+  /**
+   * prices many candidate sets of boxes to open on a board of at most 64
+   * boxes, a vector of candidates at a time: each closed box is taken off
+   * the total and the count of every lane whose candidate opens it
+   * @param values the value in each box
+   * @param closed bit i set while box i is closed
+   * @param candidates bit i of each set while the candidate opens box i
+   * @param scale the multiple of the average offered
+   * @param offers receives the offer for each candidate
+   */
+  static void offers(double[] values, long closed, long[] candidates, double scale, double[] offers) {
+    double total = 0;
+    for (long m = closed; m != 0; m &= m - 1)
+      total += values[Long.numberOfTrailingZeros(m)];
+    int count = Long.bitCount(closed);
+    int vectorEnd = CANDIDATE_SPECIES.loopBound(candidates.length);
+    
+    for (int c = 0; c < vectorEnd; c += CANDIDATE_SPECIES.length()) {
+      LongVector opened = LongVector.fromArray(CANDIDATE_SPECIES, candidates, c);
+      DoubleVector sum = DoubleVector.broadcast(SPECIES, total), left = DoubleVector.broadcast(SPECIES, count);
+      for (long m = closed; m != 0; m &= m - 1) {
+        int box = Long.numberOfTrailingZeros(m);
+        VectorMask<Double> opens = opened.and(1L << box).compare(VectorOperators.NE, 0).cast(SPECIES);
+        sum = sum.lanewise(VectorOperators.SUB, values[box], opens);
+        left = left.lanewise(VectorOperators.SUB, 1, opens);
+      }
+      sum.mul(scale).div(left).blend(0, left.compare(VectorOperators.EQ, 0)).intoArray(offers, c);
+    }
+    
+    // the candidates after the last whole vector
+    for (int c = vectorEnd; c < candidates.length; ++c) {
+      long removed = candidates[c] & closed;
+      int left = count - Long.bitCount(removed);
+      double sum = total;
+      for (; removed != 0; removed &= removed - 1)
+        sum -= values[Long.numberOfTrailingZeros(removed)];
+      offers[c] = left == 0 ? 0 : scale * sum / left;
+    }
+  }
+}